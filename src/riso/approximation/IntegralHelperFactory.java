@@ -1,15 +1,32 @@
 package riso.approximation;
+import riso.distributions.*;
 import riso.numerical.*;
 
 public class IntegralHelperFactory
 {
+	/** If <tt>true</tt>, <tt>make_helper</tt> returns a randomized quasi Monte Carlo helper,
+	  * which adapts the number of points to the tolerances <tt>EPSABS</tt> and <tt>EPSREL</tt>,
+	  * instead of a quasi Monte Carlo helper with a fixed number of points.
+	  */
+	public static boolean ADAPTIVE_QMC = false;
+	public static double EPSABS = 1e-6, EPSREL = 1e-3;
+
+	/** If <tt>true</tt>, <tt>make_helper</tt> with weights chooses between sparse grid and
+	  * quasi Monte Carlo helpers by the number of integrand evaluations each would need.
+	  */
+	public static boolean CHOOSE_BY_COST = false;
+
 	/** Choose an appropriate kind of integral helper for computing integrals in RISO.
 	  * In one dimension, the helper is a QAGS helper (with <tt>limit=1</tt>, which means
 	  * only 21 function evaluations will be used).
-	  * Otherwise (in zero or in two or more dimensions), it's a quasi Monte Carlo helper.
+	  * Otherwise (in zero or in two or more dimensions), it's a quasi Monte Carlo helper;
+	  * it's a randomized, adaptive helper if <tt>ADAPTIVE_QMC</tt> is set.
 	  */
 	public static IntegralHelper make_helper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration )
 	{
+		if ( ADAPTIVE_QMC )
+			return make_helper( fn, a, b, is_discrete, skip_integration, EPSABS, EPSREL );
+
 		int n = a.length, nintegration = 0;
 		for ( int i = 0; i < n; i++ )
 			if ( !is_discrete[i] && !skip_integration[i] )
@@ -24,4 +41,92 @@ public class IntegralHelperFactory
 		else
 			return new QuasiMC_IntegralHelper( fn, a, b, is_discrete, skip_integration );
 	}
+
+	/** Like <tt>make_helper</tt> without tolerances, except that integrals in zero or
+	  * in two or more dimensions are computed by a randomized quasi Monte Carlo helper
+	  * which uses as many points as necessary (within its budget) to meet the given tolerances.
+	  */
+	public static IntegralHelper make_helper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration, double epsabs, double epsrel )
+	{
+		int n = a.length, nintegration = 0;
+		for ( int i = 0; i < n; i++ )
+			if ( !is_discrete[i] && !skip_integration[i] )
+				++nintegration;
+
+		if ( nintegration == 1 )
+		{
+			QAGS_IntegralHelper ih = new QAGS_IntegralHelper( fn, a, b, is_discrete, skip_integration );
+			ih.limit = 1;
+			return ih;
+		}
+		else
+		{
+			RandomizedQMC_IntegralHelper ih = new RandomizedQMC_IntegralHelper( fn, a, b, is_discrete, skip_integration );
+			ih.epsabs = epsabs;
+			ih.epsrel = epsrel;
+			return ih;
+		}
+	}
+
+	/** Choose a helper for an integrand which contains the densities <tt>weights[i]</tt>
+	  * of the variables as factors; <tt>weights[i]</tt> may be <tt>null</tt> if nothing
+	  * is known about the variable. Unless <tt>CHOOSE_BY_COST</tt> is set, this is the
+	  * same as <tt>make_helper</tt> without weights.
+	  *
+	  * <p> Otherwise, the number of evaluations for each assignment of the discrete
+	  * variables is estimated for each kind of helper, and the cheaper is chosen:
+	  * quasi Monte Carlo takes <tt>d^2*EVAL_PER_DIMENSION</tt> evaluations in <tt>d</tt>
+	  * dimensions, and a sparse grid takes the number given by
+	  * <tt>SparseGrid_IntegralHelper.count_points</tt>. A sparse grid is considered only
+	  * in 2 through 6 dimensions and only if every variable of integration has a Gaussian
+	  * weight, which is integrated by Gauss-Hermite rules; on the limits of integration
+	  * alone, a sparse grid of modest level is unreliable for the peaked integrands found in RISO.
+	  * (Nested QAGS isn't considered; it takes at least <tt>21^d</tt> evaluations, which is
+	  * more than quasi Monte Carlo takes in two or more dimensions.)
+	  */
+	public static IntegralHelper make_helper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration, Distribution[] weights ) throws Exception
+	{
+		if ( ! CHOOSE_BY_COST )
+			return make_helper( fn, a, b, is_discrete, skip_integration );
+
+		int n = a.length, d = 0;
+		boolean all_gaussian = true;
+		for ( int i = 0; i < n; i++ )
+			if ( !is_discrete[i] && !skip_integration[i] )
+			{
+				++d;
+				if ( ! is_gaussian_weight( weights[i] ) ) all_gaussian = false;
+			}
+
+		if ( d <= 1 )
+			return make_helper( fn, a, b, is_discrete, skip_integration );
+
+		double qmc_cost = (double) d*d*QuasiMC_IntegralHelper.EVAL_PER_DIMENSION;
+		double sparse_cost = Double.POSITIVE_INFINITY;
+		if ( d <= 6 && all_gaussian )
+			sparse_cost = SparseGrid_IntegralHelper.count_points( d, SparseGrid_IntegralHelper.LEVEL );
+
+		if ( sparse_cost <= qmc_cost )
+		{
+			SparseGrid_IntegralHelper ih = new SparseGrid_IntegralHelper( fn, a, b, is_discrete, skip_integration );
+			for ( int i = 0; i < n; i++ )
+				if ( !is_discrete[i] && !skip_integration[i] )
+					ih.set_gaussian_weight( i, weights[i].expected_value(), weights[i].sqrt_variance() );
+			return ih;
+		}
+		else
+			return make_helper( fn, a, b, is_discrete, skip_integration );
+	}
+
+	/** A one-dimensional Gaussian (or a mixture with just one component) can serve as the
+	  * weight of a Gauss-Hermite rule. A mixture of several Gaussians can't: the rule for the
+	  * Gaussian with the same mean and variance is not accurate for a multimodal weight.
+	  */
+	static boolean is_gaussian_weight( Distribution w ) throws Exception
+	{
+		if ( w == null || w instanceof Delta || w.ndimensions() != 1 ) return false;
+		if ( w instanceof MixGaussians && ((MixGaussians)w).ncomponents() != 1 ) return false;
+		if ( ! (w instanceof Gaussian) && ! (w instanceof MixGaussians) ) return false;
+		return w.sqrt_variance() > 0;
+	}
 }
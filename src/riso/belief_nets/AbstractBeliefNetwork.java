@@ -78,13 +78,26 @@ public interface AbstractBeliefNetwork extends Remote
 	  */
 	public void assign_evidence( AbstractVariable x, double a ) throws RemoteException;
 
-	/** Fire up a thread to carry out the lambda message computation, then
+	/** Assign the value <tt>a[i]</tt> to the variable <tt>x[i]</tt>, for each <tt>i</tt>.
+	  * This has the same effect as calling <tt>assign_evidence</tt> for each variable,
+	  * but messages are invalidated in one pass after all the values are assigned,
+	  * and observers are notified once instead of once per variable.
+	  */
+	public void assign_evidence( AbstractVariable[] x, double[] a ) throws RemoteException;
+
+	/** Clear the posterior of each variable in <tt>x</tt>. This has the same effect
+	  * as calling <tt>clear_posterior</tt> for each variable, but messages are invalidated
+	  * in one pass and observers are notified once instead of once per variable.
+	  */
+	public void clear_posterior( AbstractVariable[] x ) throws RemoteException;
+
+	/** Schedule the lambda message computation, then
 	  * return to the caller. The caller will be notified (via 
 	  * <tt>RemoteObservable.notify_observers</tt>) when the message is ready.
 	  */
 	public void request_lambda_message( RemoteObserver observer, AbstractVariable parent, AbstractVariable child ) throws RemoteException;
 
-	/** Fire up a thread to carry out the pi message computation, then
+	/** Schedule the pi message computation, then
 	  * return to the caller. The caller will be notified (via 
 	  * <tt>RemoteObservable.notify_observers</tt>) when the message is ready.
 	  */
@@ -94,6 +107,18 @@ public interface AbstractBeliefNetwork extends Remote
 
 	public Distribution compute_pi_message( AbstractVariable parent, AbstractVariable child ) throws RemoteException;
 
+	/** Compute the lambda message from <tt>children[i]</tt> to <tt>parents[i]</tt>
+	  * for each <tt>i</tt>, and return all the messages at once, in the same order.
+	  * If a message can't be computed, the corresponding element is <tt>null</tt>.
+	  */
+	public Distribution[] compute_lambda_messages( AbstractVariable[] parents, AbstractVariable[] children ) throws RemoteException;
+
+	/** Compute the pi message from <tt>parents[i]</tt> to <tt>children[i]</tt>
+	  * for each <tt>i</tt>, and return all the messages at once, in the same order.
+	  * If a message can't be computed, the corresponding element is <tt>null</tt>.
+	  */
+	public Distribution[] compute_pi_messages( AbstractVariable[] parents, AbstractVariable[] children ) throws RemoteException;
+
 	/** Compute the mutual information between variables <tt>x</tt> and
 	  * <tt>e</tt>, where <tt>e</tt> is an evidence node, given any other
 	  * evidence in the belief network. Note that a more general mutual
@@ -24,6 +24,8 @@ import java.rmi.*;
 import java.rmi.server.*;
 import java.rmi.registry.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import riso.distributions.*;
 import riso.remote_data.*;
 import riso.general.*;
@@ -60,6 +62,43 @@ public class BeliefNetwork extends RemoteObservableImpl implements AbstractBelie
 	  */
 	public BeliefNetworkContext belief_network_context = null;
 
+	/** Counts of pi and lambda messages which were found already computed and reused,
+	  * which had to be computed, and which were invalidated by changes of evidence.
+	  * These are updated by message computations for variables in this belief network.
+	  * @see reset_message_counters
+	  */
+	public final AtomicLong nmessages_reused = new AtomicLong(), nmessages_recomputed = new AtomicLong(), nmessages_invalidated = new AtomicLong();
+
+	/** If true, each helper is loaded once per variable, message slot, and list of
+	  * input classes, and reused until the class of some input changes.
+	  * @see compile_dispatch
+	  */
+	public boolean compiled_dispatch = false;
+
+	/** Counts of helpers loaded and of cached helpers reused, and the time spent loading helpers.
+	  */
+	public final AtomicLong nhelpers_loaded = new AtomicLong(), nhelpers_reused = new AtomicLong(), helper_load_nanos = new AtomicLong();
+
+	/** Nesting depth of <tt>begin_evidence_update</tt> calls. While this is positive,
+	  * changes of evidence are recorded in <tt>evidence_dirty_set</tt> and the
+	  * invalidation of messages is put off until the outermost <tt>end_evidence_update</tt>.
+	  */
+	int evidence_update_depth = 0;
+
+	/** Variables whose evidence has been assigned or cleared since the outermost
+	  * <tt>begin_evidence_update</tt>, in the order of the first change. The value for each
+	  * variable is its posterior before the first change, which may be <tt>null</tt>.
+	  */
+	LinkedHashMap evidence_dirty_set = new LinkedHashMap();
+
+	/** While evidence changes are being propagated by <tt>flush_evidence_updates</tt>,
+	  * pi, lambda, and posterior notifications from variables in this belief network
+	  * are collected here instead of being sent. The key is the variable, and the value
+	  * is a table of the most recent argument for each item of interest.
+	  * This is <tt>null</tt> when notifications are sent right away.
+	  */
+	LinkedHashMap deferred_notifications = null;
+
 	/** Create an empty belief network. The interesting initialization
 	  * occurs in <tt>pretty_input</tt>. A belief network can also be
 	  * built by creating new variables and linking them in
@@ -196,18 +235,7 @@ public class BeliefNetwork extends RemoteObservableImpl implements AbstractBelie
 		x.lambda = null;
 		x.posterior = null;
 
-		x.notify_observers( "pi", x.pi );
-		x.notify_observers( "lambda", x.lambda );
-		x.notify_observers( "posterior", x.posterior );
-
-		if ( p instanceof Delta ) // then this variable was evidence
-		{
-if (Global.debug > 1) System.err.println( "BeliefNetwork.clear_posterior: tell parents of "+x.get_name() );
-			x.notify_all_invalid_lambda_message();
-
-if (Global.debug > 1) System.err.println( "BeliefNetwork.clear_posterior: tell children of "+x.get_name() );
-			x.notify_all_invalid_pi_message();
-		}
+		evidence_changed( x, p );
 	}
 
 	/** Clear the posterior, pi, lambda, and pi and lambda messages received by
@@ -286,21 +314,287 @@ if (Global.debug > 1) System.err.println( "BeliefNetwork.clear_posterior: tell c
 			delta = new GaussianDelta( support_point ); 
 		}
 
+		Distribution p = x.posterior;
+
 		x.posterior = delta;
 		x.pi = delta;
 		x.lambda = delta;
 
-		int i;
+		evidence_changed( x, p );
+	}
+
+	/** Assign the value <tt>a[i]</tt> to the variable <tt>x[i]</tt>, for each <tt>i</tt>.
+	  * The messages which depend on any of the variables are invalidated in one
+	  * pass after all the values are assigned, and each observer of a variable in this
+	  * belief network is notified at most once per item of interest.
+	  * @see begin_evidence_update
+	  */
+	public void assign_evidence( AbstractVariable[] x, double[] a ) throws RemoteException
+	{
+		check_stale( "assign_evidence" );
+		if ( x.length != a.length )
+			throw new RemoteException( "BeliefNetwork.assign_evidence: "+x.length+" variables, but "+a.length+" values." );
+
+		begin_evidence_update();
+		try
+		{
+			for ( int i = 0; i < x.length; i++ )
+				assign_evidence( x[i], a[i] );
+		}
+		finally { end_evidence_update(); }
+	}
+
+	/** Clear the posterior of each variable in <tt>x</tt>, as <tt>clear_posterior</tt> does for one
+	  * variable. The messages which depend on any of the variables are invalidated in one
+	  * pass, and each observer is notified at most once per item of interest.
+	  */
+	public void clear_posterior( AbstractVariable[] x ) throws RemoteException
+	{
+		check_stale( "clear_posterior" );
+
+		begin_evidence_update();
+		try
+		{
+			for ( int i = 0; i < x.length; i++ )
+				clear_posterior( x[i] );
+		}
+		finally { end_evidence_update(); }
+	}
+
+	/** Start a group of evidence changes. Until the matching <tt>end_evidence_update</tt>,
+	  * <tt>assign_evidence</tt> and <tt>clear_posterior</tt> change only the variables they
+	  * are given; the messages which depend on those variables are invalidated
+	  * together at the end, and a variable whose evidence ends up the same as
+	  * it started causes no invalidation at all. Calls may be nested; only the
+	  * outermost <tt>end_evidence_update</tt> has any effect. A call to <tt>get_posterior</tt>
+	  * within the group invalidates the messages which depend on the changes so far,
+	  * so the posterior reflects them; later changes in the group are still put off
+	  * until the end of the group.
+	  */
+	public synchronized void begin_evidence_update()
+	{
+		++evidence_update_depth;
+	}
+
+	/** End a group of evidence changes started by <tt>begin_evidence_update</tt>.
+	  * If this is the outermost group, invalidate the messages which depend on
+	  * the variables whose evidence changed.
+	  */
+	public void end_evidence_update() throws RemoteException
+	{
+		synchronized (this)
+		{
+			if ( evidence_update_depth == 0 ) return;
+			if ( --evidence_update_depth > 0 ) return;
+		}
+
+		flush_evidence_updates();
+	}
+
+	/** Invalidate the messages which depend on the variables in <tt>evidence_dirty_set</tt>,
+	  * then empty the set. Invalidation stops at messages which are already invalid,
+	  * so messages reachable from more than one changed variable are visited just once.
+	  * Notifications from variables in this belief network are held back until the
+	  * invalidation is finished, then one is sent per variable and item of interest.
+	  */
+	void flush_evidence_updates() throws RemoteException
+	{
+		Map dirty;
+		synchronized (this)
+		{
+			if ( evidence_dirty_set.isEmpty() ) return;
+			dirty = evidence_dirty_set;
+			evidence_dirty_set = new LinkedHashMap();
+			deferred_notifications = new LinkedHashMap();
+		}
+
+		try
+		{
+			for ( Iterator it = dirty.entrySet().iterator(); it.hasNext(); )
+			{
+				Map.Entry e = (Map.Entry) it.next();
+				Variable x = (Variable) e.getKey();
+				Distribution p = (Distribution) e.getValue();
+
+				if ( same_evidence( p, x.posterior ) ) continue;
+				propagate_evidence_change( x, p );
+			}
+		}
+		finally { send_deferred_notifications(); }
+	}
+
+	/** If notifications are being held back, record this one and return <tt>true</tt>;
+	  * a later notification for the same variable and item of interest replaces it.
+	  * Only pi, lambda, and posterior notifications are held back; others (such as
+	  * message notifications) must be delivered right away, so return <tt>false</tt> for those.
+	  */
+	synchronized boolean defer_notification( Variable x, Object of_interest, Object arg )
+	{
+		if ( deferred_notifications == null ) return false;
+		if ( !("pi".equals(of_interest) || "lambda".equals(of_interest) || "posterior".equals(of_interest)) ) return false;
+
+		LinkedHashMap m = (LinkedHashMap) deferred_notifications.get(x);
+		if ( m == null ) deferred_notifications.put( x, m = new LinkedHashMap() );
+		m.put( of_interest, arg );
+		return true;
+	}
+
+	/** Stop holding back notifications, and send the ones which were held back.
+	  */
+	void send_deferred_notifications()
+	{
+		Map deferred;
+		synchronized (this)
+		{
+			deferred = deferred_notifications;
+			deferred_notifications = null;
+		}
+
+		if ( deferred == null ) return;
+
+		for ( Iterator it = deferred.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry e = (Map.Entry) it.next();
+			Variable x = (Variable) e.getKey();
+
+			for ( Iterator it2 = ((Map)e.getValue()).entrySet().iterator(); it2.hasNext(); )
+			{
+				Map.Entry e2 = (Map.Entry) it2.next();
+				x.notify_observers( e2.getKey(), e2.getValue() );
+			}
+		}
+	}
 
-if (Global.debug > 1) System.err.println( "BeliefNetwork.assign_evidence: tell parents of "+x.get_name() );
-		x.notify_all_invalid_lambda_message();
+	/** Note that the evidence for <tt>x</tt> has changed; <tt>p</tt> is the posterior
+	  * <tt>x</tt> had before the change. If a group of evidence changes is in progress,
+	  * just record <tt>x</tt>, otherwise invalidate dependent messages right away.
+	  */
+	void evidence_changed( Variable x, Distribution p ) throws RemoteException
+	{
+		synchronized (this)
+		{
+			if ( evidence_update_depth > 0 )
+			{
+				if ( ! evidence_dirty_set.containsKey(x) ) evidence_dirty_set.put( x, p );
+				return;
+			}
+		}
 
-if (Global.debug > 1) System.err.println( "BeliefNetwork.assign_evidence: tell children of "+x.get_name() );
-		x.notify_all_invalid_pi_message();
+		propagate_evidence_change( x, p );
+	}
 
+	/** Notify observers of the new pi, lambda, and posterior of <tt>x</tt>, and if
+	  * <tt>x</tt> was or is evidence, tell parents and children that messages
+	  * originating from <tt>x</tt> are now invalid.
+	  */
+	void propagate_evidence_change( Variable x, Distribution p ) throws RemoteException
+	{
 		x.notify_observers( "pi", x.pi );
 		x.notify_observers( "lambda", x.lambda );
 		x.notify_observers( "posterior", x.posterior );
+
+		if ( p instanceof Delta || x.posterior instanceof Delta )
+		{
+if (Global.debug > 1) System.err.println( "BeliefNetwork.propagate_evidence_change: tell parents of "+x.get_name() );
+			x.notify_all_invalid_lambda_message();
+
+if (Global.debug > 1) System.err.println( "BeliefNetwork.propagate_evidence_change: tell children of "+x.get_name() );
+			x.notify_all_invalid_pi_message();
+		}
+	}
+
+	/** Returns <tt>true</tt> if <tt>p</tt> and <tt>q</tt> are evidence of the same type
+	  * with the same support point.
+	  */
+	static boolean same_evidence( Distribution p, Distribution q )
+	{
+		if ( !(p instanceof Delta) || !(q instanceof Delta) || p.getClass() != q.getClass() ) return false;
+		return Arrays.equals( ((Delta)p).get_support(), ((Delta)q).get_support() );
+	}
+
+	/** Set the counts of reused, recomputed, and invalidated messages to zero.
+	  */
+	public void reset_message_counters()
+	{
+		nmessages_reused.set(0);
+		nmessages_recomputed.set(0);
+		nmessages_invalidated.set(0);
+	}
+
+	/** Turn on compiled dispatch: from now on, the helper for each variable and message
+	  * slot is looked up once and then reused as long as the classes of its inputs stay
+	  * the same, instead of being searched for and instantiated for every computation.
+	  * Helpers cached before this call are forgotten, and the helper counters are reset.
+	  * @return A summary of the helper loading done before this call.
+	  */
+	public String compile_dispatch() throws RemoteException
+	{
+		check_stale( "compile_dispatch" );
+		String summary = dispatch_summary();
+
+		for ( Enumeration e = variables.elements(); e.hasMoreElements(); )
+			((Variable) e.nextElement()).helper_slots = new Hashtable();
+
+		compiled_dispatch = true;
+		nhelpers_loaded.set(0);
+		nhelpers_reused.set(0);
+		helper_load_nanos.set(0);
+
+if (Global.debug > 0) System.err.println( "BeliefNetwork.compile_dispatch: before compilation, "+summary );
+		return summary;
+	}
+
+	/** Return the number of helpers loaded and reused, and the time spent loading helpers.
+	  */
+	public String dispatch_summary()
+	{
+		long n = nhelpers_loaded.get(), t = helper_load_nanos.get();
+		return "helpers loaded: "+n+", time: "+(t/1e6)+" [ms]"+(n > 0 ? " ("+(t/1e3/n)+" [us] each)" : "")+"; reused: "+nhelpers_reused.get();
+	}
+
+	/** Return the classes of <tt>a</tt>, <tt>b</tt>, and the elements of <tt>c</tt>,
+	  * with <tt>null</tt> for any which are <tt>null</tt>. Returns <tt>null</tt>
+	  * if dispatch is not compiled.
+	  */
+	Class[] helper_signature( Object a, Object b, Object[] c )
+	{
+		if ( !compiled_dispatch ) return null;
+
+		Class[] signature = new Class[ 2+c.length ];
+		signature[0] = a == null ? null : a.getClass();
+		signature[1] = b == null ? null : b.getClass();
+		for ( int i = 0; i < c.length; i++ )
+			signature[2+i] = c[i] == null ? null : c[i].getClass();
+
+		return signature;
+	}
+
+	/** Return the helper loaded for variable <tt>x</tt>, message slot <tt>slot</tt>, and input
+	  * classes <tt>signature</tt>, or <tt>null</tt> if there is none or dispatch is not compiled.
+	  * The slot is the recipient for a message helper, otherwise the kind of helper
+	  * (e.g. <tt>"pi"</tt>). A variable can't be both parent and child of <tt>x</tt>,
+	  * so the recipient tells whether the helper is for a pi or lambda message.
+	  */
+	Object cached_helper( Variable x, Object slot, Class[] signature )
+	{
+		if ( signature == null || x.helper_slots == null ) return null;
+
+		Object helper = x.helper_slots.get( new HelperSlotKey( slot, signature ) );
+		if ( helper != null ) nhelpers_reused.incrementAndGet();
+		return helper;
+	}
+
+	/** Count a helper loaded (starting at time <tt>t0</tt>) and, if dispatch is compiled,
+	  * remember it for variable <tt>x</tt>, message slot <tt>slot</tt>, and input classes <tt>signature</tt>.
+	  */
+	void helper_loaded( Variable x, Object slot, Class[] signature, Object helper, long t0 )
+	{
+		helper_load_nanos.addAndGet( System.nanoTime()-t0 );
+		nhelpers_loaded.incrementAndGet();
+
+		if ( signature == null || helper == null ) return;
+		if ( x.helper_slots == null ) x.helper_slots = new Hashtable();
+		x.helper_slots.put( new HelperSlotKey( slot, signature ), helper );
 	}
 
 	public void get_all_lambda_messages( Variable x ) throws Exception
@@ -310,14 +604,15 @@ if (Global.get_messages_locally) { get_all_lambda_messages_local(x); return; }
 
 		check_stale( "get_all_lambda_messages" );
 
-		// Make sure that all requests are issued before any are processed in this VM.
-		Thread.currentThread().setPriority( Thread.MAX_PRIORITY );
-
 long t0 = System.currentTimeMillis();
 
 		int i = 0, nmsg_requests = 0;
 		LambdaMessageObserver lmo = new LambdaMessageObserver(x);
 
+		// Messages from children in other belief networks are requested in one
+		// batch per belief network; the key is the child bn.
+		Hashtable batches = new Hashtable();
+
 		while ( true )
 		{
 			AbstractVariable child = null;
@@ -332,10 +627,20 @@ long t0 = System.currentTimeMillis();
 					try { child_bn = child.get_bn(); }
 					catch (ServerException e) { throw e.detail; }
 
-					if ( x.lambda_messages[i] == null )
+					if ( x.lambda_messages[i] != null )
+						nmessages_reused.incrementAndGet();
+					else
 					{
+						nmessages_recomputed.incrementAndGet();
 						if ( child_bn != this && !accept_remote_child_evidence )
 							x.lambda_messages[i] = new Noninformative();
+						else if ( child_bn != this )
+						{
+							LambdaMessageBatch batch = (LambdaMessageBatch) batches.get( child_bn );
+							if ( batch == null ) batches.put( child_bn, batch = new LambdaMessageBatch( x, child_bn ) );
+							batch.children.addElement( child );
+							++nmsg_requests;
+						}
 						else
 						{
 							child_bn.request_lambda_message( lmo, x, child );
@@ -355,17 +660,48 @@ long t0 = System.currentTimeMillis();
 				++i;
 			}
 		}
+
+		Vector batch_futures = new Vector();
+		for ( Enumeration e = batches.elements(); e.hasMoreElements(); )
+			batch_futures.addElement( get_message_execution_service().submit( (LambdaMessageBatch) e.nextElement() ) );
+
 long t1 = System.currentTimeMillis();
-if (Global.debug > 0) System.err.println( "get_all_lambda_messages: sent "+nmsg_requests+" requests for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
-		Thread.currentThread().setPriority( Thread.NORM_PRIORITY );
+if (Global.debug > 0) System.err.println( "get_all_lambda_messages: sent "+nmsg_requests+" requests ("+batches.size()+" batches) for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
 
 t0 = System.currentTimeMillis();
-		Thread lmo_msg_consumer = new MessageConsumer( lmo.lambda_messages_semaphore, nmsg_requests );
-		lmo_msg_consumer.start();
-		lmo_msg_consumer.join();
+		lmo.completion.expect( nmsg_requests - count_batched( batches ) );
+		lmo.completion.await();
+		for ( Enumeration e = batch_futures.elements(); e.hasMoreElements(); )
+			((CompletableFuture) e.nextElement()).join();
 t1 = System.currentTimeMillis();
 if (Global.debug > 0) System.err.println( "get_all_lambda_messages: received "+nmsg_requests+" requests for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
 		lmo.mark_stale();
+
+		// Now that no messages are outstanding, it's safe to remove children whose bn has gone away.
+
+		for ( Enumeration e = batches.elements(); e.hasMoreElements(); )
+		{
+			LambdaMessageBatch batch = (LambdaMessageBatch) e.nextElement();
+			if ( batch.failure == null ) continue;
+
+			if ( batch.failure instanceof StaleReferenceException || batch.failure instanceof java.rmi.ConnectException )
+			{
+				for ( Enumeration e2 = batch.children.elements(); e2.hasMoreElements(); )
+					x.remove_child( (AbstractVariable) e2.nextElement() );
+			}
+			else
+				System.err.println( "get_all_lambda_messages: skip "+batch.children.size()+" children in "+batch.bn+"; "+batch.failure );
+		}
+	}
+
+	/** Count the messages in a table of message batches.
+	  */
+	static int count_batched( Hashtable batches )
+	{
+		int n = 0;
+		for ( Enumeration e = batches.elements(); e.hasMoreElements(); )
+			n += ((MessageBatch) e.nextElement()).size();
+		return n;
 	}
 
 	/** Compute the prior of each parent of <tt>x</tt> and cache the priors
@@ -408,8 +744,9 @@ if (Global.get_messages_locally) { get_all_pi_messages_local(x); return; }
 		PiMessageObserver pmo = new PiMessageObserver(x);
 		int nmsg_requests = 0;
 
-		// Make sure that all requests are issued before any are processed in this VM.
-		Thread.currentThread().setPriority( Thread.MAX_PRIORITY );
+		// Messages from parents in other belief networks are requested in one
+		// batch per belief network; the key is the parent bn.
+		Hashtable batches = new Hashtable();
 
 long t0 = System.currentTimeMillis();
 		for ( int i = 0; i < x.parents.length; i++ )
@@ -440,75 +777,154 @@ long t0 = System.currentTimeMillis();
 if (Global.debug > 0) System.err.println( "get_all_pi_messages: use prior for "+x.get_fullname()+".parents["+i+"]" );
 				x.pi_messages[i] = x.parents_priors[i];
 			}
+			else if ( x.pi_messages[i] != null )
+			{
+				// Case (1), and the message we have is still valid.
+				nmessages_reused.incrementAndGet();
+			}
+			else if ( parent_bn != this )
+			{
+				// Case (1), parent in another bn.
+				nmessages_recomputed.incrementAndGet();
+				PiMessageBatch batch = (PiMessageBatch) batches.get( parent_bn );
+				if ( batch == null ) batches.put( parent_bn, batch = new PiMessageBatch( x, parent_bn ) );
+				batch.parents.addElement( x.parents[i] );
+				++nmsg_requests;
+			}
 			else
 			{
 				// Case (1). (If parent_bn != null, parents[i] must be != null also.)
+				nmessages_recomputed.incrementAndGet();
 				parent_bn.request_pi_message( pmo, x.parents[i], x );
 				++nmsg_requests;
 			}
 		}
 
+		Vector batch_futures = new Vector();
+		for ( Enumeration e = batches.elements(); e.hasMoreElements(); )
+			batch_futures.addElement( get_message_execution_service().submit( (PiMessageBatch) e.nextElement() ) );
+
 long t1 = System.currentTimeMillis();
-if (Global.debug > 0) System.err.println( "get_all_pi_messages: sent "+nmsg_requests+" requests for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
-		Thread.currentThread().setPriority( Thread.NORM_PRIORITY );
+if (Global.debug > 0) System.err.println( "get_all_pi_messages: sent "+nmsg_requests+" requests ("+batches.size()+" batches) for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
 
 t0 = System.currentTimeMillis();
-		Thread pmo_msg_consumer = new MessageConsumer( pmo.pi_messages_semaphore, nmsg_requests );
-		pmo_msg_consumer.start();
-		pmo_msg_consumer.join();
+		pmo.completion.expect( nmsg_requests - count_batched( batches ) );
+		pmo.completion.await();
+		for ( Enumeration e = batch_futures.elements(); e.hasMoreElements(); )
+			((CompletableFuture) e.nextElement()).join();
 t1 = System.currentTimeMillis();
 if (Global.debug > 0) System.err.println( "get_all_pi_messages: received "+nmsg_requests+" requests for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
 		pmo.mark_stale();
 	}
 
-	public void get_all_lambda_messages_local (Variable x) throws Exception
+	/** Compute each lambda message which <tt>x</tt> needs from its children, in this
+	  * thread. If <tt>Global.parallel_local_messages</tt> is set and more than one message
+	  * is needed, the messages are computed in parallel; each message is stored in the
+	  * slot for its child, so the result doesn't depend on the order of completion.
+	  */
+	public void get_all_lambda_messages_local (final Variable x) throws Exception
 	{
 		check_stale ("get_all_lambda_messages_local");
         long t0 = System.currentTimeMillis();
 
+        Callable[] tasks = new Callable [x.children.length];
+        int ntasks = 0;
+
         for (int i = 0; i < x.children.length; i++)
         {
             if (x.lambda_messages[i] == null)
-                x.lambda_messages[i] = this.compute_lambda_message (x, x.children[i]);
+            {
+                final AbstractVariable child = x.children[i];
+                tasks[i] = new Callable() { public Object call() throws Exception { return compute_lambda_message (x, child); } };
+                ++ntasks;
+            }
 		}
 
+        nmessages_recomputed.addAndGet (ntasks);
+        nmessages_reused.addAndGet (x.children.length - ntasks);
+        call_all (tasks, ntasks, x.lambda_messages);
+
         long t1 = System.currentTimeMillis();
-if (Global.debug > 0) System.err.println( "get_all_lambda_messages_local: computed "+x.children.length+" lambda msgs for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
+if (Global.debug > 0) System.err.println( "get_all_lambda_messages_local: computed "+ntasks+" lambda msgs for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
 	}
 
-	public void get_all_pi_messages_local (Variable x) throws Exception
+	/** Compute each pi message which <tt>x</tt> needs from its parents, in this
+	  * thread. If <tt>Global.parallel_local_messages</tt> is set and more than one message
+	  * is needed, the messages are computed in parallel, as in <tt>get_all_lambda_messages_local</tt>.
+	  */
+	public void get_all_pi_messages_local (final Variable x) throws Exception
 	{
 		check_stale ("get_all_pi_messages_local");
         long t0 = System.currentTimeMillis();
+
+        Callable[] tasks = new Callable [x.parents.length];
+        int ntasks = 0;
         
 		for ( int i = 0; i < x.parents.length; i++ )
 		{
             if (x.pi_messages[i] == null)
-                x.pi_messages[i] = this.compute_pi_message (x.parents[i], x);
+            {
+                final AbstractVariable parent = x.parents[i];
+                tasks[i] = new Callable() { public Object call() throws Exception { return compute_pi_message (parent, x); } };
+                ++ntasks;
+            }
 		}
 
+        nmessages_recomputed.addAndGet (ntasks);
+        nmessages_reused.addAndGet (x.parents.length - ntasks);
+        call_all (tasks, ntasks, x.pi_messages);
+
         long t1 = System.currentTimeMillis();
-if (Global.debug > 0) System.err.println( "get_all_pi_messages_local: computed "+x.parents.length+" pi msgs for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
+if (Global.debug > 0) System.err.println( "get_all_pi_messages_local: computed "+ntasks+" pi msgs for "+x.get_fullname()+"; elapsed: "+((t1-t0)/1000.0)+" [s]" );
+	}
+
+	/** Carry out the non-null <tt>tasks</tt>, of which there are <tt>ntasks</tt>, and store
+	  * the result of <tt>tasks[i]</tt> in <tt>results[i]</tt>. The tasks are carried out in parallel if
+	  * <tt>Global.parallel_local_messages</tt> is set and there is more than one task,
+	  * otherwise one after another in task order, stopping at the first failure.
+	  */
+	void call_all (Callable[] tasks, int ntasks, Object[] results) throws Exception
+	{
+        if (Global.parallel_local_messages && ntasks > 1)
+            get_message_execution_service().invoke_all (tasks, results);
+        else
+        {
+            for (int i = 0; i < tasks.length; i++)
+                if (tasks[i] != null)
+                    results[i] = tasks[i].call();
+        }
+	}
+
+	/** Return the service which runs message computations for this belief network.
+	  * This is the service of the context which contains this belief network,
+	  * or the JVM-wide default service if there is no context.
+	  */
+	public MessageExecutionService get_message_execution_service()
+	{
+		if ( belief_network_context != null )
+			return belief_network_context.get_message_execution_service();
+		else
+			return MessageExecutionService.get_default();
 	}
 
-	/** Fire up a thread to carry out the lambda message computation, then
+	/** Schedule the lambda message computation on the message execution service, then
 	  * return to the caller. The caller will be notified (via 
 	  * <tt>RemoteObservable.notify_observers</tt>) when the message is ready.
 	  */
 	public void request_lambda_message( RemoteObserver observer, AbstractVariable parent, AbstractVariable child ) throws RemoteException
 	{
 		((RemoteObservable)child).add_observer( observer, "lambda-message-to["+parent.get_fullname()+"]" );
-		(new LambdaMessageThread(this,parent,child)).start();
+		get_message_execution_service().submit( new LambdaMessageTask(this,parent,child) );
 	}
 
-	/** Fire up a thread to carry out the pi message computation, then
+	/** Schedule the pi message computation on the message execution service, then
 	  * return to the caller. The caller will be notified (via 
 	  * <tt>RemoteObservable.notify_observers</tt>) when the message is ready.
 	  */
 	public void request_pi_message( RemoteObserver observer, AbstractVariable parent, AbstractVariable child ) throws RemoteException
 	{
 		((RemoteObservable)parent).add_observer( observer, "pi-message-to["+child.get_fullname()+"]" );
-		(new PiMessageThread(this,parent,child)).start();
+		get_message_execution_service().submit( new PiMessageTask(this,parent,child) );
 	}
 
 	/** This method DOES NOT put the newly computed lambda message into the
@@ -587,8 +1003,11 @@ if (Global.debug > 0) System.err.println( "compute_lambda_message: use prior for
 					else if ( child.pi_messages[i] == null )
 					{
 						// Case (1). (If parent_bn != null, parents[i] must be != null also.)
+						nmessages_recomputed.incrementAndGet();
 						child.pi_messages[i] = parent_bn.compute_pi_message( a_parent, child_in );
 					}
+					else
+						nmessages_reused.incrementAndGet();
 
 					remaining_pi_messages[i] = child.pi_messages[i];
 				}
@@ -598,10 +1017,16 @@ if (Global.debug > 0) System.err.println( "compute_lambda_message: use prior for
 		// This call works fine if child.lambda is noninformative -- the
 		// remaining_pi_messages array is full of nulls, but they're ignored.
 
-		LambdaMessageHelper lmh = null;
-		
-		try { lmh = LambdaMessageHelperLoader.load_lambda_message_helper( child.distribution, child.lambda, remaining_pi_messages ); }
-		catch (Exception e) { e.printStackTrace(); }
+		Class[] signature = helper_signature( child.distribution, child.lambda, remaining_pi_messages );
+		LambdaMessageHelper lmh = (LambdaMessageHelper) cached_helper( child, parent, signature );
+
+		if ( lmh == null )
+		{
+			long t0 = System.nanoTime();
+			try { lmh = LambdaMessageHelperLoader.load_lambda_message_helper( child.distribution, child.lambda, remaining_pi_messages ); }
+			catch (Exception e) { e.printStackTrace(); }
+			helper_loaded( child, parent, signature, lmh, t0 );
+		}
 
 		if ( lmh == null )
 		{
@@ -614,7 +1039,15 @@ if (Global.debug > 0) System.err.println( "compute_lambda_message: use prior for
 		
 		try
 		{
-			lambda_message = lmh.compute_lambda_message( child.distribution, child.lambda, remaining_pi_messages );
+			MessageMemo memo = MessageMemo.get_default();
+			Object memo_key = memo.make_key( "lambda-message", new Object[] { child.distribution, child.lambda, remaining_pi_messages } );
+			if ( (lambda_message = memo.get( memo_key )) == null )
+			{
+				// A cached helper may be shared by concurrent requests; some helpers keep working state.
+				synchronized (lmh) { lambda_message = lmh.compute_lambda_message( child.distribution, child.lambda, remaining_pi_messages ); }
+				memo.put( memo_key, lambda_message );
+			}
+
 			if ( parent.get_distribution().get_nstates() > 0 )
 				// Replace lambda message with a Discrete obtained by evaluating lambda message at 0, 1, ..., nstates-1.
 				lambda_message = evaluate_discrete_likelihood( lambda_message, parent.get_distribution().get_nstates() );
@@ -684,8 +1117,11 @@ if (Global.debug > 0) System.err.println( "compute_pi_message: "+parent.get_full
 						remaining_lambda_messages[i] = null;
 					else
 					{
-						if ( parent.lambda_messages[i] == null )
+						if ( parent.lambda_messages[i] != null )
+							nmessages_reused.incrementAndGet();
+						else
 						{
+							nmessages_recomputed.incrementAndGet();
 							a_child = parent.children[i];
 							AbstractBeliefNetwork child_bn = a_child.get_bn();
 							if ( child_bn != this && !accept_remote_child_evidence )
@@ -711,10 +1147,16 @@ if (Global.debug > 0) System.err.println( "compute_pi_message: "+parent.get_full
 			}
 		}
 
-		PiMessageHelper pmh = null;
-		
-		try { pmh = PiMessageHelperLoader.load_pi_message_helper( parent.pi, remaining_lambda_messages ); }
-		catch (Exception e) { e.printStackTrace(); }
+		Class[] signature = helper_signature( parent.pi, null, remaining_lambda_messages );
+		PiMessageHelper pmh = (PiMessageHelper) cached_helper( parent, child, signature );
+
+		if ( pmh == null )
+		{
+			long t0 = System.nanoTime();
+			try { pmh = PiMessageHelperLoader.load_pi_message_helper( parent.pi, remaining_lambda_messages ); }
+			catch (Exception e) { e.printStackTrace(); }
+			helper_loaded( parent, child, signature, pmh, t0 );
+		}
 
 		if ( pmh == null ) 
 		{
@@ -725,7 +1167,16 @@ if (Global.debug > 0) System.err.println( "compute_pi_message: "+parent.get_full
 
 		Distribution pi_message;
 		
-		try { pi_message = pmh.compute_pi_message( parent.pi, remaining_lambda_messages ); }
+		try
+		{
+			MessageMemo memo = MessageMemo.get_default();
+			Object memo_key = memo.make_key( "pi-message", new Object[] { parent.pi, remaining_lambda_messages } );
+			if ( (pi_message = memo.get( memo_key )) == null )
+			{
+				synchronized (pmh) { pi_message = pmh.compute_pi_message( parent.pi, remaining_lambda_messages ); }
+				memo.put( memo_key, pi_message );
+			}
+		}
 		catch (Exception e)
 		{
 			e.printStackTrace();
@@ -739,6 +1190,76 @@ if (Global.debug > 0) System.err.println( "compute_pi_message: "+parent.get_full
 		return pi_message;
 	}
 
+	/** Compute the lambda message from <tt>children[i]</tt> to <tt>parents[i]</tt>
+	  * for each <tt>i</tt>, and return the messages in the same order. Each child must
+	  * be in this belief network. This allows a remote caller to obtain all the messages
+	  * it needs from this belief network in one round trip.
+	  * If a message can't be computed, the corresponding element of the result is <tt>null</tt>.
+	  */
+	public Distribution[] compute_lambda_messages( AbstractVariable[] parents, AbstractVariable[] children ) throws RemoteException
+	{
+		check_stale( "compute_lambda_messages" );
+
+		Distribution[] messages = new Distribution[ parents.length ];
+		Callable[] tasks = new Callable[ parents.length ];
+
+		for ( int i = 0; i < parents.length; i++ )
+		{
+			final AbstractVariable parent = parents[i], child = children[i];
+			tasks[i] = new Callable() {
+				public Object call()
+				{
+					try { return compute_lambda_message( parent, child ); }
+					catch (RemoteException e)
+					{
+						System.err.println( "compute_lambda_messages: failed: "+e );
+						return null;
+					}
+				}
+			};
+		}
+
+		try { call_all( tasks, tasks.length, messages ); }
+		catch (Exception e) { throw new RemoteException( "compute_lambda_messages: "+e ); }
+
+		return messages;
+	}
+
+	/** Compute the pi message from <tt>parents[i]</tt> to <tt>children[i]</tt>
+	  * for each <tt>i</tt>, and return the messages in the same order. Each parent must
+	  * be in this belief network. This allows a remote caller to obtain all the messages
+	  * it needs from this belief network in one round trip.
+	  * If a message can't be computed, the corresponding element of the result is <tt>null</tt>.
+	  */
+	public Distribution[] compute_pi_messages( AbstractVariable[] parents, AbstractVariable[] children ) throws RemoteException
+	{
+		check_stale( "compute_pi_messages" );
+
+		Distribution[] messages = new Distribution[ parents.length ];
+		Callable[] tasks = new Callable[ parents.length ];
+
+		for ( int i = 0; i < parents.length; i++ )
+		{
+			final AbstractVariable parent = parents[i], child = children[i];
+			tasks[i] = new Callable() {
+				public Object call()
+				{
+					try { return compute_pi_message( parent, child ); }
+					catch (RemoteException e)
+					{
+						System.err.println( "compute_pi_messages: failed: "+e );
+						return null;
+					}
+				}
+			};
+		}
+
+		try { call_all( tasks, tasks.length, messages ); }
+		catch (Exception e) { throw new RemoteException( "compute_pi_messages: "+e ); }
+
+		return messages;
+	}
+
 	/** This method DOES set lambda for the variable <tt>x</tt>.
 	  */
 	public Distribution compute_lambda( Variable x ) throws Exception
@@ -759,7 +1280,16 @@ if (Global.debug > 0) System.err.println( "compute_pi_message: "+parent.get_full
 
 		get_all_lambda_messages( x );
 
-		LambdaHelper lh = LambdaHelperLoader.load_lambda_helper( x.lambda_helper_cache, x.lambda_messages );
+		LambdaHelper lh;
+		Class[] signature = helper_signature( null, null, x.lambda_messages );
+
+		if ( (lh = (LambdaHelper) cached_helper( x, "lambda", signature )) == null )
+		{
+			long t0 = System.nanoTime();
+			lh = LambdaHelperLoader.load_lambda_helper( x.lambda_helper_cache, x.lambda_messages );
+			helper_loaded( x, "lambda", signature, lh, t0 );
+		}
+
         x.lambda_helper_cache = lh;
 
 		if ( lh == null )
@@ -768,7 +1298,14 @@ if (Global.debug > 0) System.err.println( "compute_pi_message: "+parent.get_full
 			throw new Exception( "compute_lambda: attempt to load lambda helper class failed; x: "+x.get_fullname() );
 		}
 
-		x.lambda = lh.compute_lambda( x.lambda_messages );
+		MessageMemo memo = MessageMemo.get_default();
+		Object memo_key = memo.make_key( "lambda", new Object[] { x.lambda_messages } );
+		if ( (x.lambda = memo.get( memo_key )) == null )
+		{
+			x.lambda = lh.compute_lambda( x.lambda_messages );
+			memo.put( memo_key, x.lambda );
+		}
+
 		if ( x.distribution.get_nstates() > 0 )
 			// Replace lambda with a Discrete obtained by evaluating lambda at 0, 1, ..., nstates-1.
 			x.lambda = evaluate_discrete_likelihood( x.lambda, x.distribution.get_nstates() );
@@ -791,7 +1328,16 @@ if (Global.debug > 1) System.err.println( "compute_lambda: "+x.get_fullname()+"
 
 		get_all_pi_messages( x );
 
-		PiHelper ph = PiHelperLoader.load_pi_helper( x.pi_helper_cache, x.distribution, x.pi_messages );
+		PiHelper ph;
+		Class[] signature = helper_signature( x.distribution, null, x.pi_messages );
+
+		if ( (ph = (PiHelper) cached_helper( x, "pi", signature )) == null )
+		{
+			long t0 = System.nanoTime();
+			ph = PiHelperLoader.load_pi_helper( x.pi_helper_cache, x.distribution, x.pi_messages );
+			helper_loaded( x, "pi", signature, ph, t0 );
+		}
+
         x.pi_helper_cache = ph;
 
 		if ( ph == null ) 
@@ -800,7 +1346,13 @@ if (Global.debug > 1) System.err.println( "compute_lambda: "+x.get_fullname()+"
 			throw new Exception( "compute_pi: attempt to load pi helper class failed; x: "+x.get_fullname() );
 		}
 
-		x.pi = ph.compute_pi( x.distribution, x.pi_messages );
+		MessageMemo memo = MessageMemo.get_default();
+		Object memo_key = memo.make_key( "pi", new Object[] { x.distribution, x.pi_messages } );
+		if ( (x.pi = memo.get( memo_key )) == null )
+		{
+			x.pi = ph.compute_pi( x.distribution, x.pi_messages );
+			memo.put( memo_key, x.pi );
+		}
 
 if (Global.debug > 1) System.err.println( "compute_pi: "+x.get_fullname()+" type: "+x.pi.getClass()+" helper: "+ph.getClass() );
 		x.notify_observers( "pi", x.pi );
@@ -812,8 +1364,17 @@ if (Global.debug > 1) System.err.println( "compute_pi: "+x.get_fullname()+" type
 		check_stale( "compute_prior" );
 
 		get_all_parents_priors(x);
-		PiHelper ph = PiHelperLoader.load_pi_helper( x.pi_helper_cache, x.distribution, x.parents_priors );
-        x.pi_helper_cache = ph;
+		PiHelper ph;
+		Class[] signature = helper_signature( x.distribution, null, x.parents_priors );
+
+		if ( (ph = (PiHelper) cached_helper( x, "prior", signature )) == null )
+		{
+			long t0 = System.nanoTime();
+			ph = PiHelperLoader.load_pi_helper( x.prior_helper_cache, x.distribution, x.parents_priors );
+			helper_loaded( x, "prior", signature, ph, t0 );
+		}
+
+        x.prior_helper_cache = ph;
 
 		if ( ph == null ) 
 		{
@@ -841,7 +1402,16 @@ if (Global.debug > 1) System.err.println( "compute_prior: "+x.get_fullname()+" t
 		if ( x.pi == null ) compute_pi( x );
 		if ( x.lambda == null ) compute_lambda( x );
 
-		PosteriorHelper ph = PosteriorHelperLoader.load_posterior_helper( x.posterior_helper_cache, x.pi, x.lambda );
+		PosteriorHelper ph;
+		Class[] signature = helper_signature( x.pi, x.lambda, new Object[0] );
+
+		if ( (ph = (PosteriorHelper) cached_helper( x, "posterior", signature )) == null )
+		{
+			long t0 = System.nanoTime();
+			ph = PosteriorHelperLoader.load_posterior_helper( x.posterior_helper_cache, x.pi, x.lambda );
+			helper_loaded( x, "posterior", signature, ph, t0 );
+		}
+
         x.posterior_helper_cache = ph;
 
 		if ( ph == null )
@@ -907,6 +1477,11 @@ if (Global.debug > 1) System.err.println( "compute_posterior: "+x.get_fullname()
 		check_stale( "get_posterior" );
 		Variable x = to_Variable( some_variable, "BeliefNetwork.get_posterior" );
 
+		// Invalidate the messages which depend on changes made so far in a group
+		// of evidence changes, if any; the group itself goes on.
+
+		flush_evidence_updates();
+
 		try
 		{
 			if ( x.posterior == null )
@@ -1612,14 +2187,41 @@ if (Global.debug > 1) System.err.println( "evaluate_discrete_likelihood: lambda
 	}
 }
 
+/** A key for an item in a variable's table of helpers consists of a message slot
+  * (the kind of helper or the recipient of a message) and a list of input classes.
+  */
+class HelperSlotKey
+{
+	Object slot;
+	Class[] signature;
+	int hash;
+
+	HelperSlotKey( Object slot, Class[] signature )
+	{
+		this.slot = slot;
+		this.signature = signature;
+		hash = slot.hashCode() * 31 + Arrays.hashCode( signature );
+	}
+
+	public boolean equals( Object another )
+	{
+		if ( !(another instanceof HelperSlotKey) ) return false;
+		HelperSlotKey k = (HelperSlotKey) another;
+		return hash == k.hash && slot.equals( k.slot ) && Arrays.equals( signature, k.signature );
+	}
+
+	public int hashCode() { return hash; }
+}
+
 /** An instance of this class carries out a lambda message computation.
+  * It is run by a <tt>MessageExecutionService</tt>.
   */
-class LambdaMessageThread extends Thread
+class LambdaMessageTask implements Runnable
 {
 	BeliefNetwork belief_network;
 	AbstractVariable parent, child;
 	
-	LambdaMessageThread( BeliefNetwork bn_in, AbstractVariable parent_in, AbstractVariable child_in )
+	LambdaMessageTask( BeliefNetwork bn_in, AbstractVariable parent_in, AbstractVariable child_in )
 	{
 		belief_network = bn_in;
 		parent = parent_in;
@@ -1631,7 +2233,7 @@ class LambdaMessageThread extends Thread
 		try { belief_network.compute_lambda_message( parent, child ); }
 		catch (RemoteException e)
 		{
-			System.err.println( "LambdaMessageThread: failed: " );
+			System.err.println( "LambdaMessageTask: failed: " );
 			e.printStackTrace();
 			try { ((RemoteObservable)child).notify_observers( "lambda-message-to["+parent.get_fullname()+"]", null ); }
 			catch (RemoteException e2) {}
@@ -1640,13 +2242,14 @@ class LambdaMessageThread extends Thread
 }
 
 /** An instance of this class carries out a pi message computation.
+  * It is run by a <tt>MessageExecutionService</tt>.
   */
-class PiMessageThread extends Thread
+class PiMessageTask implements Runnable
 {
 	BeliefNetwork belief_network;
 	AbstractVariable parent, child;
 
-	PiMessageThread( BeliefNetwork bn_in, AbstractVariable parent_in, AbstractVariable child_in )
+	PiMessageTask( BeliefNetwork bn_in, AbstractVariable parent_in, AbstractVariable child_in )
 	{
 		belief_network = bn_in;
 		parent = parent_in;
@@ -1655,13 +2258,10 @@ class PiMessageThread extends Thread
 
 	public void run()
 	{
-// try { System.err.println( "PiMessageThread: execute thread for pi msg from "+parent.get_name()+" to "+child.get_fullname() ); } 
-// catch (RemoteException e) { System.err.println( "PiMessageThread: execute thread." ); }
-// System.err.println("");
 		try { belief_network.compute_pi_message( parent, child ); }
 		catch (RemoteException e)
 		{
-			System.err.println( "PiMessageThread: failed: " );
+			System.err.println( "PiMessageTask: failed: " );
 			e.printStackTrace();
 			try { ((RemoteObservable)parent).notify_observers( "pi-message-to["+child.get_fullname()+"]", null ); }
 			catch (RemoteException e2) {}
@@ -1669,16 +2269,109 @@ class PiMessageThread extends Thread
 	}
 }
 
+/** An instance of this class holds the messages to be requested from one other
+  * belief network in a single call. It is run by a <tt>MessageExecutionService</tt>;
+  * the messages are stored directly into the lists of messages of the variable <tt>x</tt>.
+  * If the call fails, the exception is kept in <tt>failure</tt> for the caller to deal with.
+  */
+abstract class MessageBatch implements Runnable
+{
+	Variable x;
+	AbstractBeliefNetwork bn;
+	Throwable failure = null;
+
+	MessageBatch( Variable x_in, AbstractBeliefNetwork bn_in ) { x = x_in; bn = bn_in; }
+
+	abstract int size();
+}
+
+/** An instance of this class requests lambda messages from several children of
+  * <tt>x</tt>, all in the belief network <tt>bn</tt>.
+  */
+class LambdaMessageBatch extends MessageBatch
+{
+	Vector children = new Vector();
+
+	LambdaMessageBatch( Variable x_in, AbstractBeliefNetwork bn_in ) { super( x_in, bn_in ); }
+
+	int size() { return children.size(); }
+
+	public void run()
+	{
+		AbstractVariable[] parents_array = new AbstractVariable[ children.size() ];
+		AbstractVariable[] children_array = new AbstractVariable[ children.size() ];
+		children.copyInto( children_array );
+		for ( int i = 0; i < parents_array.length; i++ ) parents_array[i] = x;
+
+		try
+		{
+			Distribution[] messages;
+			try { messages = bn.compute_lambda_messages( parents_array, children_array ); }
+			catch (ServerException e) { throw e.detail; }
+
+			for ( int i = 0; i < children_array.length; i++ )
+				for ( int j = 0; j < x.children.length; j++ )
+					if ( x.children[j].equals( children_array[i] ) )
+					{
+						x.lambda_messages[j] = messages[i];
+						break;
+					}
+		}
+		catch (Throwable t) { failure = t; }
+	}
+}
+
+/** An instance of this class requests pi messages from several parents of
+  * <tt>x</tt>, all in the belief network <tt>bn</tt>. If the request fails, the
+  * parents' priors are used in place of pi messages.
+  */
+class PiMessageBatch extends MessageBatch
+{
+	Vector parents = new Vector();
+
+	PiMessageBatch( Variable x_in, AbstractBeliefNetwork bn_in ) { super( x_in, bn_in ); }
+
+	int size() { return parents.size(); }
+
+	public void run()
+	{
+		AbstractVariable[] parents_array = new AbstractVariable[ parents.size() ];
+		AbstractVariable[] children_array = new AbstractVariable[ parents.size() ];
+		parents.copyInto( parents_array );
+		for ( int i = 0; i < children_array.length; i++ ) children_array[i] = x;
+
+		Distribution[] messages = null;
+		try
+		{
+			try { messages = bn.compute_pi_messages( parents_array, children_array ); }
+			catch (ServerException e) { throw e.detail; }
+		}
+		catch (Throwable t)
+		{
+			failure = t;
+			System.err.println( "PiMessageBatch: use priors for "+parents_array.length+" parents in "+bn+"; "+t );
+		}
+
+		for ( int i = 0; i < parents_array.length; i++ )
+			for ( int j = 0; j < x.parents.length; j++ )
+				if ( parents_array[i].equals( x.parents[j] ) )
+				{
+					x.pi_messages[j] = messages == null ? x.parents_priors[j] : messages[i];
+					break;
+				}
+	}
+}
+
 /** An instance of this class is created to wait for the calculation of a lambda message
-  * by <tt>LambdaMessageThread</tt>, which will call <tt>notify_observers</tt> to alert 
+  * by <tt>LambdaMessageTask</tt>, which will call <tt>notify_observers</tt> to alert 
 	* the lambda message observer that the calculation is complete. The lambda message observer,
 	* in turn, will store the lambda message in the parent's list of lambda messages and
-	* signal the lambda messages semaphore.
+	* count it as received.
 	*/
 class LambdaMessageObserver extends RemoteObserverImpl
 {
 	Variable x;
-	Semaphore lambda_messages_semaphore = new Semaphore(0);
+	MessageCompletion completion = new MessageCompletion();
 	boolean stale = false;
 
 	LambdaMessageObserver( Variable x_in ) throws RemoteException { x = x_in; }
@@ -1696,7 +2389,7 @@ if (Global.debug > 0) synchronized (System.err) { System.err.println( "LambdaMes
 			if ( x.children[i].equals(o) )
 			{
 				x.lambda_messages[i] = (Distribution) arg;
-				lambda_messages_semaphore.V();
+				completion.message_received();
 				found = true;
 				break;
 			}
@@ -1707,15 +2400,15 @@ if (Global.debug > 0) synchronized (System.err) { System.err.println( "LambdaMes
 }
 
 /** An instance of this class is created to wait for the calculation of a pi message
-  * by <tt>PiMessageThread</tt>, which will call <tt>notify_observers</tt> to alert 
+  * by <tt>PiMessageTask</tt>, which will call <tt>notify_observers</tt> to alert 
 	* the pi message observer that the calculation is complete. The pi message observer,
 	* in turn, will store the pi message in the parent's list of pi messages and
-	* signal the pi messages semaphore.
+	* count it as received.
 	*/
 class PiMessageObserver extends RemoteObserverImpl
 {
 	Variable x;
-	Semaphore pi_messages_semaphore = new Semaphore(0);
+	MessageCompletion completion = new MessageCompletion();
 	boolean stale = false;
 
 	PiMessageObserver( Variable x_in ) throws RemoteException { x = x_in; }
@@ -1733,7 +2426,7 @@ if (Global.debug > 0) synchronized (System.err) { System.err.println( "PiMessage
 			if ( o.equals(x.parents[i]) )
 			{
 				x.pi_messages[i] = (Distribution) arg;
-				pi_messages_semaphore.V();
+				completion.message_received();
 				found = true;
 				break;
 			}
@@ -1742,19 +2435,3 @@ if (Global.debug > 0) synchronized (System.err) { System.err.println( "PiMessage
 		if ( !found ) throw new RemoteException( "PiMessageObserver.update: parent "+((AbstractVariable)o).get_fullname()+" not found." );
 	}
 }
-
-class MessageConsumer extends Thread
-{
-	int nmsgs;
-	Semaphore semaphore;
-
-	MessageConsumer( Semaphore s, int n ) { semaphore = s; nmsgs = n; }
-
-	public void run()
-	{
-		for ( int i = 0; i < nmsgs; i++ )
-		{
-			semaphore.P();
-		}
-	}
-}
@@ -76,6 +76,12 @@ public class BeliefNetworkContext extends UnicastRemoteObject implements Abstrac
 	  */
 	private static Hashtable locate_context_cache = new Hashtable();
 
+	/** Pi and lambda message computations for belief networks in this context
+	  * are run by this service. It is created on first use.
+	  * @see get_message_execution_service
+	  */
+	transient MessageExecutionService message_execution_service = null;
+
 	/** This simple constructor sets the registry host to the local host
 	  * and adds the current directory, ".", to the path list.
 	  * The <tt>server_name</tt> is the name to which this context is
@@ -93,6 +99,16 @@ public class BeliefNetworkContext extends UnicastRemoteObject implements Abstrac
 		add_path( "." );
 	}
 
+	/** Return the service which runs message computations for belief networks
+	  * in this context, creating it from the settings in <tt>Global</tt> if necessary.
+	  */
+	public synchronized MessageExecutionService get_message_execution_service()
+	{
+		if ( message_execution_service == null )
+			message_execution_service = new MessageExecutionService( Global.message_pool_size, Global.message_virtual_threads );
+		return message_execution_service;
+	}
+
 	/** This method throws a <tt>StaleReferenceException</tt> if the this 
 	  * belief network context is stale.
 	  */
@@ -692,6 +708,15 @@ System.err.println( "locate_context: "+names[i]+" is not a bnc." );
 	  *   listening; by default the registry port is 1099.
       * <li><tt>-po-objects</tt> Port number on which exported objects listen for calls.
       *   The default exported object port number is specified in the <tt>Global</tt> class.
+      * <li><tt>-l+</tt>, <tt>-l-</tt> Compute messages locally (the default) or by requests
+      *   through remote observers.
+      * <li><tt>-lp+</tt>, <tt>-lp-</tt> Compute the local messages for a variable in parallel,
+      *   or one after another (the default).
+      * <li><tt>-mt n</tt> Number of threads used for message computations;
+      *   by default, one thread per processor.
+      * <li><tt>-mv</tt> Run message computations in virtual threads, if the JVM supports them.
+      * <li><tt>-mm n</tt> Remember up to <tt>n</tt> computed messages for reuse when the same
+      *   inputs appear again; the default is zero, which means nothing is remembered.
       * <li><tt>-v</tt> Increase the global debugging level. More v's sets the level
       *   higher, e.g., <tt>-vvv</tt> sets the debugging level to 3.
       * <li><tt>-q</tt> Decrease the global debugging level. More q's sets the level
@@ -715,8 +740,12 @@ System.err.println( "locate_context: "+names[i]+" is not a bnc." );
                     Global.get_messages_locally = true;
                 else if ("-l-".equals (args[i]))
                     Global.get_messages_locally = false;
+                else if ("-lp+".equals (args[i]) || "-lp".equals (args[i]))
+                    Global.parallel_local_messages = true;
+                else if ("-lp-".equals (args[i]))
+                    Global.parallel_local_messages = false;
                 else
-                    System.err.println ("BeliefNetworkContext.main: ``"+args[i]+"'' not recognized; expected ``-l'', ``-l+'', or ``-l-'' here.");
+                    System.err.println ("BeliefNetworkContext.main: ``"+args[i]+"'' not recognized; expected ``-l'', ``-l+'', ``-l-'', ``-lp'', ``-lp+'', or ``-lp-'' here.");
                 break;
 			case 'h':
 				host = args[++i];
@@ -740,6 +769,16 @@ System.err.println( "locate_context: "+names[i]+" is not a bnc." );
 			case 'c':
 				server = args[++i];
 				break;
+            case 'm':
+                if ("-mt".equals (args[i]))
+                    Global.message_pool_size = Integer.parseInt (args[++i]);
+                else if ("-mv".equals (args[i]))
+                    Global.message_virtual_threads = true;
+                else if ("-mm".equals (args[i]))
+                    Global.message_memo_size = Integer.parseInt (args[++i]);
+                else
+                    System.err.println ("BeliefNetworkContext.main: ``"+args[i]+"'' not recognized; expected ``-mt'', ``-mv'', or ``-mm'' here.");
+                break;
             case 'v':
                 for (int j = 1; j < args[i].length() && args[i].charAt(j) == 'v'; j++)
                     ++Global.debug;
@@ -759,7 +798,8 @@ System.err.println( "locate_context: "+names[i]+" is not a bnc." );
 
         System.err.println ("BeliefNetworkContext.main: Global.debug: "+Global.debug);
         System.err.println ("BeliefNetworkContext.main: Global.exported_objects_port: "+Global.exported_objects_port);
-        System.err.println ("BeliefNetworkContext.main: Global.get_messages_locally: "+Global.get_messages_locally);
+        System.err.println ("BeliefNetworkContext.main: Global.get_messages_locally: "+Global.get_messages_locally+", Global.parallel_local_messages: "+Global.parallel_local_messages);
+        System.err.println ("BeliefNetworkContext.main: Global.message_pool_size: "+Global.message_pool_size+", Global.message_virtual_threads: "+Global.message_virtual_threads);
 
 		try
 		{
@@ -23,4 +23,21 @@ public class Global
     public static int debug = 0;
     public static boolean get_messages_locally = true;
     public static int exported_objects_port = 21099;
+
+    /** Number of threads used for message computations; zero means one per processor.
+      */
+    public static int message_pool_size = 0;
+
+    /** If true, run message computations in virtual threads, if the JVM supports them.
+      */
+    public static boolean message_virtual_threads = false;
+
+    /** If true, messages computed locally for one variable are computed in parallel.
+      */
+    public static boolean parallel_local_messages = false;
+
+    /** Maximum number of computed pi, lambda, and message distributions remembered
+      * for reuse when the same inputs appear again; zero means nothing is remembered.
+      */
+    public static int message_memo_size = 0;
 }
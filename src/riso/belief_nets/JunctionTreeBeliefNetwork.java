@@ -0,0 +1,615 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.belief_nets;
+
+import java.rmi.*;
+import java.util.*;
+import riso.distributions.*;
+
+/** An instance of this class represents a belief network in which every
+  * variable is discrete, with a <tt>Discrete</tt> or <tt>ConditionalDiscrete</tt>
+  * distribution. Posteriors are computed exactly, whether or not the network
+  * is singly connected, by compiling the network into a junction tree.
+  *
+  * <p> The network is compiled the first time a posterior is needed: the moral
+  * graph is triangulated by eliminating variables in min-fill order, the cliques
+  * of the triangulated graph are joined by a maximum spanning tree, and the
+  * conditional probability tables are multiplied into the clique potentials.
+  * Each potential is a flat array indexed in row-major order by the states of
+  * the clique's variables. When the evidence changes, the potentials are reset,
+  * the evidence is entered, and the tree is calibrated by one collect and one
+  * distribute pass; posteriors are then marginals of the clique potentials.
+  *
+  * <p> If some variable doesn't fit (it is continuous, it has a parent in another
+  * belief network, etc.), this class falls back on the message passing methods
+  * of the superclass. If variables or distributions are changed after
+  * compilation, call <tt>compile</tt> again.
+  */
+public class JunctionTreeBeliefNetwork extends BeliefNetwork
+{
+	static final int NOT_COMPILED = 0, COMPILED = 1, NOT_COMPILABLE = 2;
+
+	int compile_state = NOT_COMPILED;
+
+	/** Tells whether the clique potentials reflect the current evidence.
+	  */
+	boolean calibrated = false;
+
+	/** Variables of this network, and the number of states of each.
+	  * Elsewhere, variables are referred to by their index in this list.
+	  */
+	Variable[] jt_variables;
+	int[] nstates;
+	Hashtable variable_index;
+
+	/** For each clique, the indexes of its variables in increasing order,
+	  * its initial potential (the product of the tables assigned to it),
+	  * and its current potential.
+	  */
+	int[][] clique_members;
+	double[][] initial_potentials, potentials;
+
+	/** The parent of each clique in the junction tree (-1 for the root),
+	  * and the cliques in an order in which each parent precedes its children.
+	  */
+	int[] tree_parent, tree_order;
+
+	/** For each clique other than the root, the separator shared with its parent,
+	  * its current potential, and maps from indexes in the clique's potential
+	  * and in the parent's potential to indexes in the separator's potential.
+	  */
+	int[][] separator_members;
+	double[][] separator_potentials;
+	int[][] separator_map, parent_separator_map;
+
+	/** For each variable, the smallest clique which contains it.
+	  */
+	int[] query_clique;
+
+	/** Create an empty object of this type.
+	  */
+	public JunctionTreeBeliefNetwork() throws RemoteException {}
+
+	/** Compile this belief network into a junction tree.
+	  * @return <tt>true</tt> if compilation succeeded; otherwise posteriors
+	  *   are computed by message passing.
+	  */
+	public synchronized boolean compile() throws RemoteException
+	{
+		check_stale( "compile" );
+		calibrated = false;
+
+		try
+		{
+			if ( !collect_discrete_variables() )
+			{
+				compile_state = NOT_COMPILABLE;
+				return false;
+			}
+
+			Vector cliques = triangulate( moral_graph() );
+			build_junction_tree( cliques );
+			assign_tables();
+		}
+		catch (Exception e)
+		{
+			System.err.println( "JunctionTreeBeliefNetwork.compile: failed; use message passing instead. "+e );
+			compile_state = NOT_COMPILABLE;
+			return false;
+		}
+
+		compile_state = COMPILED;
+
+if (Global.debug > 0)
+{
+	int total_size = 0, max_size = 0;
+	for ( int i = 0; i < initial_potentials.length; i++ )
+	{
+		total_size += initial_potentials[i].length;
+		max_size = Math.max( max_size, initial_potentials[i].length );
+	}
+	System.err.println( "JunctionTreeBeliefNetwork.compile: "+get_fullname()+": "+clique_members.length+" cliques; largest table: "+max_size+", total: "+total_size );
+}
+		return true;
+	}
+
+	/** Find the variables of this network, and check that each one is
+	  * discrete and 1-dimensional, and that its parents are in this network.
+	  */
+	boolean collect_discrete_variables() throws RemoteException
+	{
+		int n = variables.size();
+		jt_variables = new Variable[n];
+		nstates = new int[n];
+		variable_index = new Hashtable();
+
+		Enumeration e = variables.elements();
+		for ( int i = 0; i < n; i++ )
+		{
+			jt_variables[i] = (Variable) e.nextElement();
+			variable_index.put( jt_variables[i], Integer.valueOf(i) );
+		}
+
+		for ( int i = 0; i < n; i++ )
+		{
+			Variable x = jt_variables[i];
+			ConditionalDistribution d = x.distribution;
+
+			if ( d instanceof Discrete && x.parents.length == 0 && ((Discrete)d).ndims == 1 )
+				nstates[i] = ((Discrete)d).probabilities.length;
+			else if ( d instanceof ConditionalDiscrete && ((ConditionalDiscrete)d).ndims_child == 1 && ((ConditionalDiscrete)d).ndims_parents == x.parents.length )
+				nstates[i] = ((ConditionalDiscrete)d).dimensions_child[0];
+			else
+			{
+if (Global.debug > 0) System.err.println( "JunctionTreeBeliefNetwork.collect_discrete_variables: "+x.get_fullname()+" is not a discrete variable with a Discrete or ConditionalDiscrete distribution." );
+				return false;
+			}
+
+			for ( int j = 0; j < x.parents.length; j++ )
+			{
+				if ( x.parents[j] == null || !variable_index.containsKey( x.parents[j] ) )
+				{
+if (Global.debug > 0) System.err.println( "JunctionTreeBeliefNetwork.collect_discrete_variables: parent "+j+" of "+x.get_fullname()+" is not in this belief network." );
+					return false;
+				}
+			}
+		}
+
+		for ( int i = 0; i < n; i++ )
+		{
+			Variable x = jt_variables[i];
+			if ( x.parents.length == 0 ) continue;
+
+			int[] dp = ((ConditionalDiscrete)x.distribution).dimensions_parents;
+			for ( int j = 0; j < x.parents.length; j++ )
+				if ( dp[j] != nstates[ index_of( x.parents[j] ) ] )
+					throw new IllegalArgumentException( "parent "+j+" of "+x.get_fullname()+" has "+nstates[ index_of( x.parents[j] ) ]+" states, but its distribution expects "+dp[j] );
+		}
+
+		return true;
+	}
+
+	int index_of( Object x )
+	{
+		return ((Integer) variable_index.get(x)).intValue();
+	}
+
+	/** Return the moral graph: each variable is linked to its parents, and
+	  * the parents of each variable are linked to each other.
+	  */
+	BitSet[] moral_graph()
+	{
+		int n = jt_variables.length;
+		BitSet[] adjacent = new BitSet[n];
+		for ( int i = 0; i < n; i++ ) adjacent[i] = new BitSet(n);
+
+		for ( int i = 0; i < n; i++ )
+		{
+			int[] family = family_of(i);
+			for ( int j = 0; j < family.length; j++ )
+				for ( int k = 0; k < family.length; k++ )
+					if ( family[j] != family[k] ) adjacent[ family[j] ].set( family[k] );
+		}
+
+		return adjacent;
+	}
+
+	/** Return the indexes of the parents of variable <tt>i</tt>, in order, followed by <tt>i</tt>.
+	  */
+	int[] family_of( int i )
+	{
+		AbstractVariable[] parents = jt_variables[i].parents;
+		int[] family = new int[ parents.length+1 ];
+		for ( int j = 0; j < parents.length; j++ )
+			family[j] = index_of( parents[j] );
+		family[ parents.length ] = i;
+		return family;
+	}
+
+	/** Eliminate the variables one by one, each time choosing the variable which
+	  * adds the fewest links among its remaining neighbors (ties go to the
+	  * smallest table). Return the maximal cliques of the triangulated graph.
+	  */
+	Vector triangulate( BitSet[] adjacent )
+	{
+		int n = adjacent.length;
+		BitSet remaining = new BitSet(n);
+		remaining.set( 0, n );
+		Vector cliques = new Vector();
+
+		for ( int step = 0; step < n; step++ )
+		{
+			int best = -1;
+			long best_fill = Long.MAX_VALUE;
+			double best_weight = Double.POSITIVE_INFINITY;
+
+			for ( int v = remaining.nextSetBit(0); v >= 0; v = remaining.nextSetBit(v+1) )
+			{
+				BitSet nbrs = (BitSet) adjacent[v].clone();
+				nbrs.and( remaining );
+
+				long fill = 0;
+				double weight = nstates[v];
+				for ( int a = nbrs.nextSetBit(0); a >= 0; a = nbrs.nextSetBit(a+1) )
+				{
+					weight *= nstates[a];
+					BitSet missing = (BitSet) nbrs.clone();
+					missing.andNot( adjacent[a] );
+					missing.clear( a );
+					fill += missing.cardinality();
+				}
+
+				if ( fill < best_fill || (fill == best_fill && weight < best_weight) )
+				{
+					best = v;
+					best_fill = fill;
+					best_weight = weight;
+				}
+			}
+
+			BitSet clique = (BitSet) adjacent[best].clone();
+			clique.and( remaining );
+
+			for ( int a = clique.nextSetBit(0); a >= 0; a = clique.nextSetBit(a+1) )
+			{
+				adjacent[a].or( clique );
+				adjacent[a].clear( a );
+			}
+
+			clique.set( best );
+			remaining.clear( best );
+
+			// A clique found later can't contain one found earlier, since the earlier
+			// one contains an eliminated variable; so just check the other way around.
+
+			boolean is_maximal = true;
+			for ( int i = 0; i < cliques.size() && is_maximal; i++ )
+			{
+				BitSet outside = (BitSet) clique.clone();
+				outside.andNot( (BitSet) cliques.elementAt(i) );
+				if ( outside.isEmpty() ) is_maximal = false;
+			}
+
+			if ( is_maximal ) cliques.addElement( clique );
+		}
+
+		return cliques;
+	}
+
+	/** Join the cliques into a tree by a maximum spanning tree on the size of the
+	  * separators, and set up the separators and the maps into them. Cliques with
+	  * nothing in common (e.g., from disconnected parts of the network) are joined
+	  * by an empty separator.
+	  */
+	void build_junction_tree( Vector cliques )
+	{
+		int m = cliques.size();
+		clique_members = new int[m][];
+		for ( int i = 0; i < m; i++ )
+			clique_members[i] = members_of( (BitSet) cliques.elementAt(i) );
+
+		tree_parent = new int[m];
+		tree_order = new int[m];
+		int[] best_link = new int[m], best_size = new int[m];
+		boolean[] in_tree = new boolean[m];
+
+		Arrays.fill( best_size, -1 );
+		best_link[0] = -1;
+		best_size[0] = 0;
+
+		for ( int k = 0; k < m; k++ )
+		{
+			int c = -1;
+			for ( int i = 0; i < m; i++ )
+				if ( !in_tree[i] && (c < 0 || best_size[i] > best_size[c]) )
+					c = i;
+
+			in_tree[c] = true;
+			tree_order[k] = c;
+			tree_parent[c] = best_link[c];
+
+			BitSet bc = (BitSet) cliques.elementAt(c);
+			for ( int i = 0; i < m; i++ )
+			{
+				if ( in_tree[i] ) continue;
+
+				BitSet common = (BitSet) bc.clone();
+				common.and( (BitSet) cliques.elementAt(i) );
+				if ( common.cardinality() > best_size[i] )
+				{
+					best_size[i] = common.cardinality();
+					best_link[i] = c;
+				}
+			}
+		}
+
+		separator_members = new int[m][];
+		separator_potentials = new double[m][];
+		separator_map = new int[m][];
+		parent_separator_map = new int[m][];
+
+		for ( int c = 0; c < m; c++ )
+		{
+			int p = tree_parent[c];
+			if ( p < 0 ) continue;
+
+			BitSet common = (BitSet) ((BitSet) cliques.elementAt(c)).clone();
+			common.and( (BitSet) cliques.elementAt(p) );
+			separator_members[c] = members_of( common );
+			separator_map[c] = projection_map( clique_members[c], separator_members[c] );
+			parent_separator_map[c] = projection_map( clique_members[p], separator_members[c] );
+		}
+
+		query_clique = new int[ jt_variables.length ];
+		Arrays.fill( query_clique, -1 );
+
+		for ( int c = 0; c < m; c++ )
+		{
+			int size = table_size( clique_members[c] );
+			for ( int j = 0; j < clique_members[c].length; j++ )
+			{
+				int v = clique_members[c][j];
+				if ( query_clique[v] < 0 || size < table_size( clique_members[ query_clique[v] ] ) )
+					query_clique[v] = c;
+			}
+		}
+	}
+
+	static int[] members_of( BitSet b )
+	{
+		int[] members = new int[ b.cardinality() ];
+		for ( int i = 0, v = b.nextSetBit(0); v >= 0; v = b.nextSetBit(v+1) )
+			members[i++] = v;
+		return members;
+	}
+
+	int table_size( int[] members )
+	{
+		int size = 1;
+		for ( int i = 0; i < members.length; i++ )
+			size *= nstates[ members[i] ];
+		return size;
+	}
+
+	/** Return a map from the indexes of a table over the variables <tt>from</tt> to
+	  * the indexes of a table over <tt>to</tt>, which must be a subset of <tt>from</tt>.
+	  * Both tables are in row-major order (the last variable varies fastest);
+	  * <tt>to</tt> need not be in the same order as <tt>from</tt>.
+	  */
+	int[] projection_map( int[] from, int[] to )
+	{
+		int[] to_stride = new int[ from.length ];
+		for ( int j = to.length-1, stride = 1; j >= 0; stride *= nstates[ to[j] ], j-- )
+			for ( int k = 0; k < from.length; k++ )
+				if ( from[k] == to[j] ) to_stride[k] = stride;
+
+		int size = table_size( from ), index = 0;
+		int[] map = new int[size], state = new int[ from.length ];
+
+		for ( int i = 0; i < size; i++ )
+		{
+			map[i] = index;
+
+			for ( int k = from.length-1; k >= 0; k-- )
+			{
+				index += to_stride[k];
+				if ( ++state[k] < nstates[ from[k] ] ) break;
+				index -= state[k] * to_stride[k];
+				state[k] = 0;
+			}
+		}
+
+		return map;
+	}
+
+	/** Multiply the table of each variable into the potential of the smallest
+	  * clique which contains the variable and its parents.
+	  */
+	void assign_tables()
+	{
+		int m = clique_members.length;
+		initial_potentials = new double[m][];
+		potentials = new double[m][];
+
+		for ( int c = 0; c < m; c++ )
+		{
+			initial_potentials[c] = new double[ table_size( clique_members[c] ) ];
+			Arrays.fill( initial_potentials[c], 1 );
+		}
+
+		for ( int i = 0; i < jt_variables.length; i++ )
+		{
+			int[] family = family_of(i);
+
+			int home = -1;
+			for ( int c = 0; c < m; c++ )
+				if ( contains_all( clique_members[c], family ) && (home < 0 || initial_potentials[c].length < initial_potentials[home].length) )
+					home = c;
+
+			double[] table = flat_table( jt_variables[i].distribution );
+			int[] map = projection_map( clique_members[home], family );
+			double[] phi = initial_potentials[home];
+
+			for ( int k = 0; k < phi.length; k++ )
+				phi[k] *= table[ map[k] ];
+		}
+	}
+
+	static boolean contains_all( int[] members, int[] subset )
+	{
+		for ( int j = 0; j < subset.length; j++ )
+		{
+			boolean found = false;
+			for ( int k = 0; k < members.length && !found; k++ )
+				found = members[k] == subset[j];
+			if ( !found ) return false;
+		}
+
+		return true;
+	}
+
+	/** Return the probabilities of a <tt>Discrete</tt> or <tt>ConditionalDiscrete</tt>
+	  * in row-major order, parents first and child last.
+	  */
+	static double[] flat_table( ConditionalDistribution d )
+	{
+		if ( d instanceof Discrete )
+			return ((Discrete)d).probabilities;
+
+		double[][] p = ((ConditionalDiscrete)d).probabilities;
+		int nchild = p[0].length;
+		double[] table = new double[ p.length * nchild ];
+		for ( int i = 0; i < p.length; i++ )
+			System.arraycopy( p[i], 0, table, i*nchild, nchild );
+
+		return table;
+	}
+
+	/** Reset the clique potentials, enter the evidence, and calibrate the tree by
+	  * passing messages from the leaves to the root and back again.
+	  */
+	synchronized void calibrate() throws Exception
+	{
+		int m = clique_members.length;
+
+		for ( int c = 0; c < m; c++ )
+			potentials[c] = (double[]) initial_potentials[c].clone();
+
+		for ( int i = 0; i < jt_variables.length; i++ )
+		{
+			Distribution p = jt_variables[i].posterior;
+			if ( !(p instanceof Delta) ) continue;
+
+			int state = (int) ((Delta)p).get_support()[0];
+			int c = query_clique[i];
+			int[] map = projection_map( clique_members[c], new int[] { i } );
+			double[] phi = potentials[c];
+
+			for ( int k = 0; k < phi.length; k++ )
+				if ( map[k] != state ) phi[k] = 0;
+		}
+
+		for ( int k = m-1; k > 0; k-- )
+		{
+			int c = tree_order[k], p = tree_parent[c];
+			separator_potentials[c] = marginalize( potentials[c], separator_map[c], table_size( separator_members[c] ) );
+			absorb( potentials[p], parent_separator_map[c], separator_potentials[c], null );
+		}
+
+		for ( int k = 1; k < m; k++ )
+		{
+			int c = tree_order[k], p = tree_parent[c];
+			double[] updated = marginalize( potentials[p], parent_separator_map[c], table_size( separator_members[c] ) );
+			absorb( potentials[c], separator_map[c], updated, separator_potentials[c] );
+			separator_potentials[c] = updated;
+		}
+
+		calibrated = true;
+	}
+
+	static double[] marginalize( double[] phi, int[] map, int size )
+	{
+		double[] marginal = new double[size];
+		for ( int k = 0; k < phi.length; k++ )
+			marginal[ map[k] ] += phi[k];
+		return marginal;
+	}
+
+	/** Multiply <tt>phi</tt> by <tt>numerator/denominator</tt> (taking 0/0 as 0), or
+	  * just by <tt>numerator</tt> if <tt>denominator</tt> is <tt>null</tt>, then scale
+	  * <tt>phi</tt> to sum to 1 to avoid underflow. Scaling doesn't change the
+	  * normalized marginals.
+	  */
+	static void absorb( double[] phi, int[] map, double[] numerator, double[] denominator )
+	{
+		double[] ratio = numerator;
+		if ( denominator != null )
+		{
+			ratio = new double[ numerator.length ];
+			for ( int j = 0; j < ratio.length; j++ )
+				ratio[j] = denominator[j] == 0 ? 0 : numerator[j]/denominator[j];
+		}
+
+		double sum = 0;
+		for ( int k = 0; k < phi.length; k++ )
+			sum += (phi[k] *= ratio[ map[k] ]);
+
+		if ( sum > 0 )
+			for ( int k = 0; k < phi.length; k++ )
+				phi[k] /= sum;
+	}
+
+	/** If this network can be compiled, compute the posterior of <tt>x</tt> from the
+	  * junction tree; otherwise compute it by message passing.
+	  */
+	public Distribution compute_posterior( Variable x ) throws Exception
+	{
+		check_stale( "compute_posterior" );
+
+		if ( compile_state == NOT_COMPILED ) compile();
+		if ( compile_state != COMPILED || !variable_index.containsKey(x) ) return super.compute_posterior(x);
+
+		int i = index_of(x);
+		double[] p;
+
+		synchronized (this)
+		{
+			if ( !calibrated ) calibrate();
+			int c = query_clique[i];
+			p = marginalize( potentials[c], projection_map( clique_members[c], new int[] { i } ), nstates[i] );
+		}
+
+		double sum = 0;
+		for ( int k = 0; k < p.length; k++ ) sum += p[k];
+		if ( sum <= 0 )
+			throw new Exception( "JunctionTreeBeliefNetwork.compute_posterior: evidence has zero probability; x: "+x.get_fullname() );
+		for ( int k = 0; k < p.length; k++ ) p[k] /= sum;
+
+		Discrete posterior = new Discrete( new int[] { nstates[i] } );
+		posterior.probabilities = p;
+
+		x.posterior = posterior;
+		x.notify_observers( "posterior", x.posterior );
+
+if (Global.debug > 1) System.err.println( "JunctionTreeBeliefNetwork.compute_posterior: "+x.get_fullname()+" from clique "+query_clique[i] );
+		return x.posterior;
+	}
+
+	/** Do what the superclass does, and if <tt>x</tt> was or is evidence, clear the
+	  * posterior of every variable which is not evidence, since in a multiply
+	  * connected network the superclass can't tell which posteriors depend on <tt>x</tt>.
+	  */
+	void propagate_evidence_change( Variable x, Distribution p ) throws RemoteException
+	{
+		super.propagate_evidence_change( x, p );
+
+		if ( !(p instanceof Delta || x.posterior instanceof Delta) ) return;
+
+		synchronized (this) { calibrated = false; }
+
+		for ( Enumeration e = variables.elements(); e.hasMoreElements(); )
+		{
+			Variable y = (Variable) e.nextElement();
+			if ( y.posterior == null || y.posterior instanceof Delta ) continue;
+
+			y.posterior = null;
+			y.notify_observers( "posterior", null );
+		}
+	}
+}
@@ -20,6 +20,7 @@ package riso.belief_nets;
 import java.io.*;
 import java.rmi.*;
 import java.util.*;
+import java.util.concurrent.*;
 import riso.distributions.*;
 import riso.remote_data.*;
 
@@ -30,6 +31,44 @@ import riso.remote_data.*;
   */
 public class LoopyBeliefNetwork extends BeliefNetwork
 {
+    /** Message update schedules for <tt>run_loopy_propagation</tt>.
+      * In the flooding schedule, every message is recomputed from the messages of
+      * the previous iteration. In the residual schedule, the message which would
+      * change the most is updated first. In the tree schedule, messages are passed
+      * along a spanning forest of the network from the leaves to the roots and back,
+      * and then along the remaining arcs.
+      */
+    public static final int SCHEDULE_FLOODING = 0, SCHEDULE_RESIDUAL = 1, SCHEDULE_TREE = 2;
+
+    /** Schedule used by <tt>run_loopy_propagation</tt>.
+      */
+    public int schedule = SCHEDULE_FLOODING;
+
+    /** Weight of the previous message in a damped update; zero means no damping.
+      * Only discrete messages are damped; other messages are replaced outright.
+      */
+    public double damping = 0;
+
+    /** Propagation stops when no message changes by more than this much.
+      */
+    public double tolerance = 1e-6;
+
+    /** Propagation stops after this many iterations, converged or not. One iteration
+      * updates each message once (on average, in the residual schedule).
+      */
+    public int max_iterations = 100;
+
+    /** If true, the messages in a flooding iteration are computed in parallel.
+      */
+    public boolean parallel_flooding = false;
+
+    /** Number of iterations, largest message change in the last iteration, and
+      * whether propagation converged, for the most recent <tt>run_loopy_propagation</tt>.
+      */
+    public int loopy_iterations = 0;
+    public double loopy_residual = Double.POSITIVE_INFINITY;
+    public boolean loopy_converged = false;
+
 	/** Create an empty object of this type. 
 	  */
 	public LoopyBeliefNetwork() throws RemoteException {}
@@ -123,6 +162,9 @@ public class LoopyBeliefNetwork extends BeliefNetwork
 	// IMPLEMENT THIS EVENTUALLY, FOR NOW JUST REIMPLEMENT get_all_pi_messages_local !!!
     // public void get_all_pi_messages( Variable x ) throws Exception
 
+    /** Recompute each posterior once, in no particular order.
+      * See <tt>run_loopy_propagation</tt> for a driver which iterates to convergence.
+      */
     public void one_loopy_sweep ()
     {
         for (Enumeration e = variables.elements(); e.hasMoreElements();)
@@ -211,4 +253,515 @@ public class LoopyBeliefNetwork extends BeliefNetwork
             }
         }
     }
+
+    /** Carry out loopy belief propagation until the messages stop changing (by more than
+      * <tt>tolerance</tt>) or <tt>max_iterations</tt> is reached, following <tt>schedule</tt>,
+      * then compute the posterior of each variable from the final messages.
+      * Pi messages start out as the parents' priors and lambda messages as noninformative.
+      * Evidence is whatever has been assigned by <tt>assign_evidence</tt>.
+      * Only arcs between variables in this belief network carry loopy messages.
+      *
+      * @return The number of iterations carried out.
+      */
+    public int run_loopy_propagation () throws Exception
+    {
+        check_stale ("run_loopy_propagation");
+
+        Vector messages = collect_loopy_messages ();
+        initialize_loopy_messages (messages);
+
+        loopy_converged = false;
+        loopy_residual = Double.POSITIVE_INFINITY;
+
+        if (schedule == SCHEDULE_RESIDUAL)
+            loopy_iterations = residual_propagation (messages);
+        else
+        {
+            Vector order = schedule == SCHEDULE_TREE ? tree_order (messages) : messages;
+
+            for (loopy_iterations = 0; loopy_iterations < max_iterations && !loopy_converged; )
+            {
+                if (schedule == SCHEDULE_FLOODING)
+                    loopy_residual = flooding_iteration (messages);
+                else
+                    loopy_residual = sequential_iteration (order);
+
+                ++loopy_iterations;
+                loopy_converged = loopy_residual <= tolerance;
+if (Global.debug > 0) System.err.println ("LoopyBeliefNetwork.run_loopy_propagation: iteration "+loopy_iterations+", residual: "+loopy_residual);
+            }
+        }
+
+        for (Enumeration e = variables.elements(); e.hasMoreElements();)
+        {
+            Variable x = (Variable) e.nextElement();
+            if (is_evidence (x)) continue;
+
+            x.pi = null;
+            x.lambda = null;
+            compute_posterior (x);
+        }
+
+if (Global.debug > 0) System.err.println ("LoopyBeliefNetwork.run_loopy_propagation: "+(loopy_converged ? "converged" : "did not converge")+" after "+loopy_iterations+" iterations; residual: "+loopy_residual);
+        return loopy_iterations;
+    }
+
+    /** An instance of this class represents the message sent along one arc in one direction,
+      * either a pi message from parent to child or a lambda message from child to parent.
+      */
+    static class LoopyMessage
+    {
+        Variable from, to;
+        boolean is_pi;
+
+        /** Index of this message in the recipient's list of pi or lambda messages.
+          */
+        int index;
+
+        /** Message computed from the current messages, not yet put in place.
+          */
+        Distribution candidate = null;
+        double residual = Double.POSITIVE_INFINITY;
+
+        /** Incremented each time the candidate is recomputed; identifies stale queue entries.
+          */
+        int stamp = 0;
+
+        Distribution[] messages () { return is_pi ? to.pi_messages : to.lambda_messages; }
+    }
+
+    /** Construct the list of messages passed along arcs between variables in this belief network.
+      */
+    Vector collect_loopy_messages () throws RemoteException
+    {
+        Vector messages = new Vector ();
+
+        for (Enumeration e = variables.elements(); e.hasMoreElements();)
+        {
+            Variable x = (Variable) e.nextElement();
+
+            for (int i = 0; i < x.parents.length; i++)
+            {
+                if (x.parents[i] == null || x.parents[i].get_bn() != this) continue;
+                Variable parent = (Variable) x.parents[i];
+
+                LoopyMessage pi = new LoopyMessage ();
+                pi.from = parent;
+                pi.to = x;
+                pi.is_pi = true;
+                pi.index = i;
+                messages.addElement (pi);
+
+                LoopyMessage lambda = new LoopyMessage ();
+                lambda.from = x;
+                lambda.to = parent;
+                lambda.is_pi = false;
+                lambda.index = parent.child_to_index (x);
+                messages.addElement (lambda);
+            }
+        }
+
+        return messages;
+    }
+
+    /** Clear pi, lambda, and posterior of each variable which is not evidence,
+      * and put initial pi and lambda messages in place.
+      */
+    void initialize_loopy_messages (Vector messages) throws Exception
+    {
+        for (Enumeration e = variables.elements(); e.hasMoreElements();)
+        {
+            Variable x = (Variable) e.nextElement();
+            if (is_evidence (x)) continue;
+
+            x.pi = null;
+            x.lambda = null;
+            x.posterior = null;
+        }
+
+        for (int i = 0; i < messages.size(); i++)
+        {
+            LoopyMessage m = (LoopyMessage) messages.elementAt(i);
+
+            if (m.is_pi)
+            {
+                Distribution p = is_evidence (m.from) ? m.from.pi : get_prior (m.from);
+                if (p == null)
+                    throw new Exception ("LoopyBeliefNetwork.initialize_loopy_messages: no prior for "+m.from.get_fullname());
+                m.messages()[m.index] = p;
+            }
+            else
+                m.messages()[m.index] = new Noninformative ();
+        }
+    }
+
+    static boolean is_evidence (Variable x)
+    {
+        return x.posterior instanceof Delta;
+    }
+
+    /** Compute the message <tt>m</tt> from the messages currently in place.
+      */
+    Distribution compute_loopy_message (LoopyMessage m) throws Exception
+    {
+        if (m.is_pi)
+            return compute_pi_message (m.from, m.to);
+        else
+            return compute_lambda_message (m.to, m.from);
+    }
+
+    /** Put the candidate for <tt>m</tt> in place, damped, and clear the recipient's
+      * pi or lambda so that it is recomputed from the new message.
+      * @return The change in the message.
+      */
+    double commit_loopy_message (LoopyMessage m)
+    {
+        Distribution[] messages = m.messages();
+        double residual = message_residual (m.candidate, messages[m.index]);
+
+        messages[m.index] = damp_message (m.candidate, messages[m.index], damping);
+
+        if (!is_evidence (m.to))
+        {
+            if (m.is_pi) m.to.pi = null;
+            else m.to.lambda = null;
+            m.to.posterior = null;
+        }
+
+        return residual;
+    }
+
+    /** Recompute every message from the messages of the previous iteration, then put
+      * all of them in place. If <tt>parallel_flooding</tt> is set, pi and lambda of the
+      * variables, and then the messages, are computed in parallel.
+      * @return The largest change in any message.
+      */
+    double flooding_iteration (Vector messages) throws Exception
+    {
+        Callable[] tasks = new Callable [variables.size()];
+        int ntasks = 0;
+
+        for (Enumeration e = variables.elements(); e.hasMoreElements();)
+        {
+            final Variable x = (Variable) e.nextElement();
+            if (is_evidence (x) || (x.pi != null && x.lambda != null)) continue;
+
+            tasks[ntasks++] = new Callable() {
+                public Object call() throws Exception
+                {
+                    if (x.pi == null) compute_pi (x);
+                    if (x.lambda == null) compute_lambda (x);
+                    return null;
+                }
+            };
+        }
+
+        run_loopy_tasks (tasks, ntasks, new Object [ntasks]);
+
+        tasks = new Callable [messages.size()];
+        Object[] results = new Object [messages.size()];
+
+        for (int i = 0; i < messages.size(); i++)
+        {
+            final LoopyMessage m = (LoopyMessage) messages.elementAt(i);
+            tasks[i] = new Callable() { public Object call() throws Exception { return compute_loopy_message (m); } };
+        }
+
+        run_loopy_tasks (tasks, tasks.length, results);
+
+        double max_residual = 0;
+
+        for (int i = 0; i < messages.size(); i++)
+        {
+            LoopyMessage m = (LoopyMessage) messages.elementAt(i);
+            m.candidate = (Distribution) results[i];
+            max_residual = Math.max (max_residual, commit_loopy_message (m));
+        }
+
+        return max_residual;
+    }
+
+    void run_loopy_tasks (Callable[] tasks, int ntasks, Object[] results) throws Exception
+    {
+        if (parallel_flooding && ntasks > 1)
+        {
+            if (ntasks < tasks.length)
+            {
+                Callable[] a = new Callable [ntasks];
+                System.arraycopy (tasks, 0, a, 0, ntasks);
+                tasks = a;
+            }
+
+            get_message_execution_service().invoke_all (tasks, results);
+        }
+        else
+        {
+            for (int i = 0; i < ntasks; i++)
+                results[i] = tasks[i].call();
+        }
+    }
+
+    /** Update the messages one at a time in the given order; each update uses
+      * the most recent values of the messages it depends on.
+      * @return The largest change in any message.
+      */
+    double sequential_iteration (Vector order) throws Exception
+    {
+        double max_residual = 0;
+
+        for (int i = 0; i < order.size(); i++)
+        {
+            LoopyMessage m = (LoopyMessage) order.elementAt(i);
+            m.candidate = compute_loopy_message (m);
+            max_residual = Math.max (max_residual, commit_loopy_message (m));
+        }
+
+        return max_residual;
+    }
+
+    /** Order the messages for the tree schedule: find a spanning forest by breadth-first
+      * search, then list the messages from the leaves toward the roots, then from the roots
+      * toward the leaves, then the messages on arcs which are not in the forest.
+      */
+    Vector tree_order (Vector messages)
+    {
+        Hashtable outgoing = new Hashtable ();
+        for (int i = 0; i < messages.size(); i++)
+        {
+            LoopyMessage m = (LoopyMessage) messages.elementAt(i);
+            Vector v = (Vector) outgoing.get (m.from);
+            if (v == null) outgoing.put (m.from, v = new Vector ());
+            v.addElement (m);
+        }
+
+        Hashtable visited = new Hashtable ();
+        Vector downward = new Vector ();     // messages from tree parent to tree child, in breadth-first order
+
+        for (int i = 0; i < messages.size(); i++)
+        {
+            Variable root = ((LoopyMessage) messages.elementAt(i)).from;
+            if (visited.containsKey (root)) continue;
+
+            visited.put (root, root);
+            Vector queue = new Vector ();
+            queue.addElement (root);
+
+            while (!queue.isEmpty())
+            {
+                Variable x = (Variable) queue.remove(0);
+                Vector v = (Vector) outgoing.get (x);
+
+                for (int j = 0; j < v.size(); j++)
+                {
+                    LoopyMessage m = (LoopyMessage) v.elementAt(j);
+                    if (visited.containsKey (m.to)) continue;
+
+                    visited.put (m.to, m.to);
+                    downward.addElement (m);
+                    queue.addElement (m.to);
+                }
+            }
+        }
+
+        Hashtable in_tree = new Hashtable ();
+        Vector order = new Vector (messages.size());
+
+        for (int i = downward.size()-1; i >= 0; i--)
+        {
+            LoopyMessage down = (LoopyMessage) downward.elementAt(i);
+            LoopyMessage up = reverse_message (down, (Vector) outgoing.get (down.to));
+            order.addElement (up);
+            in_tree.put (up, up);
+            in_tree.put (down, down);
+        }
+
+        for (int i = 0; i < downward.size(); i++)
+            order.addElement (downward.elementAt(i));
+
+        for (int i = 0; i < messages.size(); i++)
+            if (!in_tree.containsKey (messages.elementAt(i)))
+                order.addElement (messages.elementAt(i));
+
+        return order;
+    }
+
+    static LoopyMessage reverse_message (LoopyMessage m, Vector candidates)
+    {
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            LoopyMessage r = (LoopyMessage) candidates.elementAt(i);
+            if (r.to == m.from && r.is_pi != m.is_pi) return r;
+        }
+
+        throw new IllegalStateException ("LoopyBeliefNetwork.reverse_message: no message from "+m.to.name+" to "+m.from.name);
+    }
+
+    /** Residual belief propagation: repeatedly put in place the message which would change
+      * the most, then recompute the messages which depend on it, until no message would
+      * change by more than <tt>tolerance</tt>.
+      * @return The number of iterations, counting one iteration per message update.
+      */
+    int residual_propagation (Vector messages) throws Exception
+    {
+        Hashtable outgoing = new Hashtable ();
+        PriorityQueue queue = new PriorityQueue (Math.max (1, messages.size()), new Comparator() {
+            public int compare (Object a, Object b) { return Double.compare (((double[])b)[0], ((double[])a)[0]); }
+        });
+
+        // Queue entries are {residual, stamp, index of message}; an entry is stale
+        // if the message candidate has been recomputed since the entry was queued.
+
+        for (int i = 0; i < messages.size(); i++)
+        {
+            LoopyMessage m = (LoopyMessage) messages.elementAt(i);
+            Vector v = (Vector) outgoing.get (m.from);
+            if (v == null) outgoing.put (m.from, v = new Vector ());
+            v.addElement (Integer.valueOf(i));
+
+            update_candidate (m);
+            queue.add (new double[] { m.residual, m.stamp, i });
+        }
+
+        long nupdates = 0, max_updates = (long) max_iterations * messages.size();
+        loopy_residual = 0;
+
+        while (!queue.isEmpty() && nupdates < max_updates)
+        {
+            double[] top = (double[]) queue.poll();
+            LoopyMessage m = (LoopyMessage) messages.elementAt ((int) top[2]);
+            if (top[1] != m.stamp) continue;
+
+            loopy_residual = m.residual;
+            if (m.residual <= tolerance)
+            {
+                loopy_converged = true;
+                break;
+            }
+
+            commit_loopy_message (m);
+            ++nupdates;
+
+            // A damped update leaves part of the change for later.
+            update_residual (m);
+            queue.add (new double[] { m.residual, m.stamp, top[2] });
+
+            Vector v = (Vector) outgoing.get (m.to);
+            for (int j = 0; v != null && j < v.size(); j++)
+            {
+                int k = ((Integer) v.elementAt(j)).intValue();
+                LoopyMessage m2 = (LoopyMessage) messages.elementAt(k);
+                if (m2.to == m.from) continue;
+
+                update_candidate (m2);
+                queue.add (new double[] { m2.residual, m2.stamp, k });
+            }
+        }
+
+        if (queue.isEmpty()) loopy_converged = true;
+
+        return messages.size() == 0 ? 0 : (int) ((nupdates + messages.size() - 1) / messages.size());
+    }
+
+    void update_candidate (LoopyMessage m) throws Exception
+    {
+        m.candidate = compute_loopy_message (m);
+        update_residual (m);
+    }
+
+    void update_residual (LoopyMessage m)
+    {
+        m.residual = message_residual (m.candidate, m.messages()[m.index]);
+        ++m.stamp;
+    }
+
+    /** Return a measure of the difference between two messages. Discrete messages are
+      * compared by the largest difference in normalized probabilities; other messages
+      * are compared by mean and standard deviation, relative to the standard deviation,
+      * if those can be computed, and otherwise by their descriptions.
+      */
+    static double message_residual (Distribution p, Distribution q)
+    {
+        if (p == q || (p instanceof Noninformative && q instanceof Noninformative))
+            return 0;
+
+        double[] pp = normalized_probabilities (p, q), qq = normalized_probabilities (q, p);
+        if (pp != null && qq != null)
+        {
+            double max_diff = 0;
+            for (int i = 0; i < pp.length; i++)
+                max_diff = Math.max (max_diff, Math.abs (pp[i] - qq[i]));
+            return max_diff;
+        }
+
+        try
+        {
+            double dm = Math.abs (p.expected_value() - q.expected_value());
+            double sp = p.sqrt_variance(), sq = q.sqrt_variance();
+            double diff = Math.max (dm, Math.abs (sp - sq)), scale = Math.max (sp, sq);
+            if (diff == 0) return 0;
+            return scale > 0 ? diff/scale : Double.POSITIVE_INFINITY;
+        }
+        catch (Exception e) {}
+
+        if (MessageMemo.same_content (p, q))
+            return 0;
+
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /** Return the probabilities of a discrete message scaled to sum to 1, or uniform
+      * probabilities if <tt>p</tt> is noninformative and <tt>other</tt> is discrete.
+      * Return <tt>null</tt> if <tt>p</tt> and <tt>other</tt> can't be compared this way.
+      */
+    static double[] normalized_probabilities (Distribution p, Distribution other)
+    {
+        int n;
+        if (p instanceof Discrete)
+            n = ((Discrete)p).probabilities.length;
+        else if (p instanceof Noninformative && other instanceof Discrete)
+            n = ((Discrete)other).probabilities.length;
+        else
+            return null;
+
+        if (other instanceof Discrete && ((Discrete)other).probabilities.length != n)
+            return null;
+
+        double[] a = new double [n];
+        if (p instanceof Noninformative)
+        {
+            Arrays.fill (a, 1.0/n);
+            return a;
+        }
+
+        double sum = 0;
+        for (int i = 0; i < n; i++)
+            sum += (a[i] = ((Discrete)p).probabilities[i]);
+
+        if (sum > 0)
+            for (int i = 0; i < n; i++)
+                a[i] /= sum;
+
+        return a;
+    }
+
+    /** Return <tt>(1 - damping) p_new + damping p_old</tt> if both messages are discrete
+      * (or noninformative); otherwise return <tt>p_new</tt>. Spikes are not damped.
+      */
+    static Distribution damp_message (Distribution p_new, Distribution p_old, double damping)
+    {
+        if (damping <= 0 || !(p_new instanceof Discrete) || p_new instanceof Delta)
+            return p_new;
+
+        double[] a = normalized_probabilities (p_new, p_old), b = normalized_probabilities (p_old, p_new);
+        if (a == null || b == null) return p_new;
+
+        try
+        {
+            Discrete d = (Discrete) ((Discrete)p_new).clone();
+            for (int i = 0; i < a.length; i++)
+                d.probabilities[i] = (1-damping)*a[i] + damping*b[i];
+            return d;
+        }
+        catch (CloneNotSupportedException e) { return p_new; }
+    }
 }
@@ -0,0 +1,51 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.belief_nets;
+
+import java.util.concurrent.*;
+
+/** An instance of this class counts message arrivals and completes a future
+  * when the expected number of messages have arrived. The number expected
+  * may be announced after some messages have already arrived.
+  */
+class MessageCompletion
+{
+	int nreceived = 0, nexpected = -1;
+	CompletableFuture all_received = new CompletableFuture();
+
+	synchronized void message_received()
+	{
+		++nreceived;
+		if ( nexpected >= 0 && nreceived >= nexpected ) all_received.complete( null );
+	}
+
+	synchronized void expect( int n )
+	{
+		nexpected = n;
+		if ( nreceived >= nexpected ) all_received.complete( null );
+	}
+
+	/** Wait until all expected messages have arrived.
+	  */
+	void await() throws Exception
+	{
+		try { all_received.get(); }
+		catch (ExecutionException e) { throw (Exception) e.getCause(); }
+	}
+}
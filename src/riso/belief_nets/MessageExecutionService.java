@@ -0,0 +1,228 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.belief_nets;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/** An instance of this class runs pi and lambda message computations
+  * on a bounded pool of worker threads, instead of starting a new thread
+  * for each message. Each belief network context owns one of these;
+  * belief networks which are not in a context share a JVM-wide default.
+  *
+  * <p> A message computation may need messages from other variables,
+  * which are requested from within a worker thread. To avoid starving the
+  * pool, a request made from a worker thread of any service -- not just this one,
+  * since a belief network may call on a network in another context -- is
+  * carried out immediately in that thread; the worker would only block
+  * waiting for the result anyway.
+  *
+  * <p> A request which arrives over RMI, e.g. a callback from a belief network
+  * which is itself computing a message for one of our workers, is run on a separate,
+  * unbounded pool, as with one thread per request. If such requests were queued on the
+  * bounded pool, they could wait forever for workers which are blocked waiting for them.
+  *
+  * <p> Messages which are computed locally (see <tt>Global.get_messages_locally</tt>)
+  * can be computed in parallel by <tt>invoke_all</tt>, which runs on a fork-join pool
+  * of the same size. Nested calls from within that pool join the work already in
+  * progress instead of blocking a thread.
+  *
+  * <p> If <tt>virtual_threads</tt> is requested and the JVM supports it
+  * (Java 21 or later), each task gets its own virtual thread and there is no
+  * pool bound. Otherwise the request is ignored and a platform thread pool is used.
+  */
+public class MessageExecutionService
+{
+	/** The JVM-wide service used by belief networks which don't have a context.
+	  */
+	static MessageExecutionService default_service = null;
+
+	/** Number of worker threads in the pool. Ignored if <tt>virtual_threads</tt> is set.
+	  */
+	int pool_size;
+
+	/** Tells whether each task is run in its own virtual thread.
+	  */
+	boolean virtual_threads = false;
+
+	ExecutorService executor;
+
+	/** Unbounded pool for requests which arrive over RMI; created on first use.
+	  */
+	ExecutorService remote_executor = null;
+
+	ThreadFactory thread_factory = null;
+
+	/** Pool for <tt>invoke_all</tt>; created on first use.
+	  */
+	ForkJoinPool fork_join_pool = null;
+
+	/** Set in worker threads belonging to any service; used to detect nested requests.
+	  * This is shared by all services, so that a worker of one context which calls
+	  * a belief network in another context doesn't queue up behind itself.
+	  */
+	static ThreadLocal in_worker = new ThreadLocal();
+
+	AtomicLong ntasks_submitted = new AtomicLong(), ntasks_inline = new AtomicLong();
+
+	/** Create a service with <tt>pool_size_in</tt> worker threads. If <tt>pool_size_in</tt>
+	  * is zero or less, use one thread per available processor.
+	  * If <tt>virtual_threads_in</tt> is <tt>true</tt>, try to use virtual threads instead.
+	  */
+	public MessageExecutionService( int pool_size_in, boolean virtual_threads_in )
+	{
+		pool_size = pool_size_in > 0 ? pool_size_in : Runtime.getRuntime().availableProcessors();
+
+		if ( virtual_threads_in )
+		{
+			try
+			{
+				executor = (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+				virtual_threads = true;
+			}
+			catch (Exception e)
+			{
+				System.err.println( "MessageExecutionService: virtual threads not available in this JVM; use a pool of "+pool_size+" threads instead." );
+			}
+		}
+
+		if ( executor == null )
+		{
+			final AtomicInteger nthreads = new AtomicInteger();
+			thread_factory = new ThreadFactory() {
+				public Thread newThread( final Runnable r )
+				{
+					Thread t = new Thread( new Runnable() { public void run() { in_worker.set( Boolean.TRUE ); r.run(); } }, "riso-message-"+nthreads.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				}
+			};
+
+			executor = Executors.newFixedThreadPool( pool_size, thread_factory );
+		}
+	}
+
+	/** Return the JVM-wide service, creating it if necessary from the
+	  * settings in <tt>Global</tt>.
+	  */
+	public static synchronized MessageExecutionService get_default()
+	{
+		if ( default_service == null )
+			default_service = new MessageExecutionService( Global.message_pool_size, Global.message_virtual_threads );
+		return default_service;
+	}
+
+	/** Schedule <tt>task</tt> for execution. The returned future is completed
+	  * when the task finishes, exceptionally if the task throws.
+	  */
+	public CompletableFuture submit( Runnable task )
+	{
+		if ( !virtual_threads && in_worker.get() != null )
+		{
+			ntasks_inline.incrementAndGet();
+			CompletableFuture f = new CompletableFuture();
+			try { task.run(); f.complete( null ); }
+			catch (Throwable t) { f.completeExceptionally(t); }
+			return f;
+		}
+
+		ntasks_submitted.incrementAndGet();
+
+		if ( !virtual_threads && is_remote_call() )
+			return CompletableFuture.runAsync( task, get_remote_executor() );
+		else
+			return CompletableFuture.runAsync( task, executor );
+	}
+
+	/** Tells whether the current thread is carrying out a remote method invocation.
+	  */
+	static boolean is_remote_call()
+	{
+		try
+		{
+			java.rmi.server.RemoteServer.getClientHost();
+			return true;
+		}
+		catch (java.rmi.server.ServerNotActiveException e) { return false; }
+	}
+
+	synchronized ExecutorService get_remote_executor()
+	{
+		if ( remote_executor == null )
+			remote_executor = Executors.newCachedThreadPool( thread_factory );
+		return remote_executor;
+	}
+
+	/** Carry out each of the <tt>tasks</tt> in parallel and store the result of <tt>tasks[i]</tt>
+	  * in <tt>results[i]</tt>. Null tasks are skipped and their result slots are not changed.
+	  * All tasks are run to completion even if some fail; then the exception thrown
+	  * by the first failed task (in task order, not in time order) is rethrown.
+	  */
+	public void invoke_all( final Callable[] tasks, final Object[] results ) throws Exception
+	{
+		final Exception[] failures = new Exception[ tasks.length ];
+		final Vector fjtasks = new Vector( tasks.length );
+
+		for ( int i = 0; i < tasks.length; i++ )
+		{
+			if ( tasks[i] == null ) continue;
+
+			final int k = i;
+			fjtasks.addElement( ForkJoinTask.adapt( new Runnable() {
+				public void run()
+				{
+					try { results[k] = tasks[k].call(); }
+					catch (Exception e) { failures[k] = e; }
+				}
+			} ) );
+		}
+
+		ForkJoinPool pool = get_fork_join_pool();
+		if ( ForkJoinTask.getPool() == pool )
+			ForkJoinTask.invokeAll( fjtasks );
+		else
+			pool.invoke( ForkJoinTask.adapt( new Runnable() { public void run() { ForkJoinTask.invokeAll( fjtasks ); } } ) );
+
+		for ( int i = 0; i < tasks.length; i++ )
+			if ( failures[i] != null ) throw failures[i];
+	}
+
+	synchronized ForkJoinPool get_fork_join_pool()
+	{
+		if ( fork_join_pool == null )
+			fork_join_pool = new ForkJoinPool( pool_size );
+		return fork_join_pool;
+	}
+
+	/** Stop accepting tasks. Tasks already submitted are allowed to finish.
+	  */
+	public void shutdown()
+	{
+		executor.shutdown();
+		if ( remote_executor != null ) remote_executor.shutdown();
+		if ( fork_join_pool != null ) fork_join_pool.shutdown();
+	}
+
+	public String toString()
+	{
+		String mode = virtual_threads ? "virtual threads" : pool_size+" threads";
+		return "["+this.getClass().getName()+" "+mode+"; submitted: "+ntasks_submitted.get()+", run inline: "+ntasks_inline.get()+"]";
+	}
+}
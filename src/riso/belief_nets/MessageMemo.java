@@ -0,0 +1,376 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.belief_nets;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import riso.distributions.*;
+import riso.numerical.*;
+
+/** An instance of this class remembers recently computed pi, lambda, and
+  * message distributions, so that a computation with the same inputs as a
+  * previous one (e.g., when evidence is toggled back and forth) returns the
+  * previous result instead of computing it again.
+  *
+  * <p> The key for a computation is built from the kind of computation and
+  * the contents of its inputs -- the conditional distribution and the incoming
+  * messages -- not their identities. The content of an input is its class and its
+  * parameters: the parameter arrays of the common distributions (e.g. the probabilities
+  * of a <tt>Discrete</tt>, the mean and covariance of a <tt>Gaussian</tt>, the proportions
+  * and components of a <tt>Mixture</tt>), and for any other class, the values of its fields.
+  * The key holds a hash code of the content, computed in time proportional to the
+  * number of parameters, and the content itself is compared only when the hash codes match.
+  * If some input has a field which isn't a number or an array of numbers, the computation
+  * can't be identified by content and it isn't remembered.
+  *
+  * <p> The number of results remembered is bounded; the least recently used
+  * result is forgotten first. The results are shared among all callers, so
+  * they must not be modified. In particular, a result must not be bound to a
+  * variable (<tt>AbstractDistribution.associated_variable</tt>), since it may be handed
+  * to any variable whose inputs have the same content; a result which is bound
+  * to a variable is not remembered, and a remembered result which has been bound
+  * since it was remembered is forgotten.
+  */
+public class MessageMemo
+{
+	/** The JVM-wide memo. Created on first use.
+	  */
+	static MessageMemo default_memo = null;
+
+	/** Maximum number of results remembered. If zero, nothing is remembered.
+	  */
+	int capacity;
+
+	LinkedHashMap table;
+
+	/** Counts of lookups which found a result, lookups which didn't,
+	  * and computations which could not be identified by content.
+	  */
+	public final AtomicLong nhits = new AtomicLong(), nmisses = new AtomicLong(), nuncacheable = new AtomicLong();
+
+	/** This table holds the fields which make up the content of a class, besides the
+	  * parameters handled by <tt>append_parameters</tt>; the key is the class, and the value
+	  * is an array of <tt>Field</tt>, or <tt>Boolean.FALSE</tt> if the class can't be described by content.
+	  */
+	static ConcurrentHashMap content_fields = new ConcurrentHashMap();
+
+	/** The key for a computation: the kind of computation and the content of the inputs,
+	  * a list of classes, boxed numbers, and arrays of numbers.
+	  */
+	static class ContentKey
+	{
+		String kind;
+		Object[] content;
+		int hash;
+
+		ContentKey( String kind, Object[] content )
+		{
+			this.kind = kind;
+			this.content = content;
+			hash = kind.hashCode() * 31 + Arrays.deepHashCode( content );
+		}
+
+		public boolean equals( Object another )
+		{
+			if ( !(another instanceof ContentKey) ) return false;
+			ContentKey k = (ContentKey) another;
+			return hash == k.hash && kind.equals( k.kind ) && Arrays.deepEquals( content, k.content );
+		}
+
+		public int hashCode() { return hash; }
+
+		/** Return a key with copies of the arrays in the content of this one, so that
+		  * it isn't changed if the inputs are modified later.
+		  */
+		ContentKey snapshot()
+		{
+			return new ContentKey( kind, (Object[]) copy( content ) );
+		}
+
+		static Object copy( Object o )
+		{
+			if ( o instanceof double[] ) return ((double[]) o).clone();
+			if ( o instanceof int[] ) return ((int[]) o).clone();
+			if ( o instanceof Object[] )
+			{
+				Object[] a = (Object[]) ((Object[]) o).clone();
+				for ( int i = 0; i < a.length; i++ ) a[i] = copy( a[i] );
+				return a;
+			}
+			if ( o != null && o.getClass().isArray() )
+			{
+				// Some other primitive array.
+				int n = Array.getLength(o);
+				Object a = Array.newInstance( o.getClass().getComponentType(), n );
+				System.arraycopy( o, 0, a, 0, n );
+				return a;
+			}
+			return o;	// class, string, or boxed number; these are immutable
+		}
+	}
+
+	/** Create a memo which remembers at most <tt>capacity_in</tt> results.
+	  */
+	public MessageMemo( int capacity_in )
+	{
+		capacity = capacity_in;
+		table = new LinkedHashMap( 16, 0.75f, true ) {
+			protected boolean removeEldestEntry( Map.Entry eldest ) { return size() > capacity; }
+		};
+	}
+
+	/** Return the JVM-wide memo, creating it if necessary with the capacity
+	  * given by <tt>Global.message_memo_size</tt>.
+	  */
+	public static synchronized MessageMemo get_default()
+	{
+		if ( default_memo == null )
+			default_memo = new MessageMemo( Global.message_memo_size );
+		return default_memo;
+	}
+
+	/** Construct the key for a computation of type <tt>kind</tt> with the given inputs.
+	  * An input may be a distribution, a conditional distribution, an array of those, or <tt>null</tt>.
+	  * Returns <tt>null</tt> if this memo is disabled or if some input can't be described by content.
+	  */
+	public Object make_key( String kind, Object[] inputs )
+	{
+		if ( capacity <= 0 ) return null;
+
+		ArrayList content = new ArrayList();
+		for ( int i = 0; i < inputs.length; i++ )
+		{
+			if ( ! append_content( content, inputs[i] ) )
+			{
+				nuncacheable.incrementAndGet();
+				return null;
+			}
+		}
+
+		return new ContentKey( kind, content.toArray() );
+	}
+
+	/** Tells whether <tt>a</tt> and <tt>b</tt> can be described by content, and have the same content.
+	  */
+	public static boolean same_content( Object a, Object b )
+	{
+		ArrayList ca = new ArrayList(), cb = new ArrayList();
+		if ( ! append_content( ca, a ) || ! append_content( cb, b ) ) return false;
+		return Arrays.deepEquals( ca.toArray(), cb.toArray() );
+	}
+
+	/** Append the content of <tt>o</tt> to the list <tt>content</tt>. Returns <tt>false</tt> if
+	  * <tt>o</tt> can't be described by content.
+	  */
+	static boolean append_content( ArrayList content, Object o )
+	{
+		if ( o == null )
+		{
+			content.add( null );
+			return true;
+		}
+
+		if ( o instanceof Object[] )
+		{
+			Object[] a = (Object[]) o;
+			content.add( Integer.valueOf( a.length ) );
+			for ( int i = 0; i < a.length; i++ )
+				if ( ! append_content( content, a[i] ) ) return false;
+			return true;
+		}
+
+		if ( !(o instanceof Distribution) && !(o instanceof ConditionalDistribution) ) return false;
+
+		Class c = o.getClass();
+		Object fields = content_fields.get(c);
+		if ( fields == null )
+		{
+			fields = find_content_fields(c);
+			content_fields.put( c, fields );
+		}
+		if ( fields == Boolean.FALSE ) return false;
+
+		content.add(c);
+		try { if ( ! append_parameters( content, o ) ) return false; }
+		catch (RuntimeException e) { return false; }
+
+		Field[] f = (Field[]) fields;
+		try
+		{
+			for ( int i = 0; i < f.length; i++ )
+				content.add( f[i].get(o) );
+		}
+		catch (IllegalAccessException e) { return false; }
+
+		return true;
+	}
+
+	/** Append the parameters of the common distributions to <tt>content</tt>, namely those of
+	  * the classes named in <tt>parameters_class</tt>. Cached values computed from
+	  * the parameters (e.g. the inverse of a covariance) are not part of the content.
+	  */
+	static boolean append_parameters( ArrayList content, Object o )
+	{
+		if ( o instanceof Discrete )
+		{
+			content.add( ((Discrete)o).probabilities );
+			content.add( ((Discrete)o).dimensions );
+		}
+		else if ( o instanceof ConditionalDiscrete )
+		{
+			ConditionalDiscrete d = (ConditionalDiscrete) o;
+			content.add( d.probabilities );
+			content.add( d.dimensions_child );
+			content.add( d.dimensions_parents );
+		}
+		else if ( o instanceof Gaussian )
+		{
+			Gaussian g = (Gaussian) o;
+			content.add( g.mu );
+			content.add( g.mu == null ? null : g.get_Sigma() );
+		}
+		else if ( o instanceof Mixture )
+		{
+			Mixture m = (Mixture) o;
+			content.add( m.mix_proportions );
+			if ( ! append_content( content, m.components ) ) return false;
+		}
+		else if ( o instanceof LinearCombination )
+		{
+			content.add( ((LinearCombination)o).a );
+			content.add( Double.valueOf( ((LinearCombination)o).offset ) );
+		}
+		else if ( o instanceof ConditionalGaussian )
+		{
+			ConditionalGaussian g = (ConditionalGaussian) o;
+			content.add( g.a_mu_1c2 );
+			content.add( g.b_mu_1c2 );
+			content.add( g.Sigma_1c2 );
+		}
+		else if ( o instanceof SplineDensity )
+		{
+			MonotoneSpline spline = ((SplineDensity)o).spline;
+			content.add( spline == null ? null : spline.x );
+			content.add( spline == null ? null : spline.f );
+		}
+
+		return true;
+	}
+
+	/** The classes whose parameters are appended by <tt>append_parameters</tt>.
+	  */
+	static Class[] parameters_class = { Discrete.class, ConditionalDiscrete.class, Gaussian.class, Mixture.class, LinearCombination.class, ConditionalGaussian.class, SplineDensity.class };
+
+	/** Find the fields of class <tt>c</tt> which are part of its content: the non-static,
+	  * non-transient fields declared by <tt>c</tt> and its superclasses, up to one of the
+	  * classes in <tt>parameters_class</tt> or the abstract base classes (whose only field is
+	  * the associated variable). Returns <tt>Boolean.FALSE</tt> if some field isn't a number,
+	  * a string, or an array of numbers.
+	  */
+	static Object find_content_fields( Class c )
+	{
+		ArrayList fields = new ArrayList();
+
+		for ( Class d = c; d != null && d != AbstractDistribution.class && d != AbstractConditionalDistribution.class && d != Object.class; d = d.getSuperclass() )
+		{
+			if ( Arrays.asList( parameters_class ).contains(d) ) break;
+
+			Field[] f = d.getDeclaredFields();
+			for ( int i = 0; i < f.length; i++ )
+			{
+				int m = f[i].getModifiers();
+				if ( Modifier.isStatic(m) || Modifier.isTransient(m) ) continue;
+
+				Class t = f[i].getType();
+				while ( t.isArray() ) t = t.getComponentType();
+				if ( ! t.isPrimitive() && t != String.class ) return Boolean.FALSE;
+
+				try { f[i].setAccessible( true ); }
+				catch (SecurityException e) { return Boolean.FALSE; }
+				fields.add( f[i] );
+			}
+		}
+
+		return fields.toArray( new Field[ fields.size() ] );
+	}
+
+	/** Return the result remembered for <tt>key</tt>, or <tt>null</tt> if there is none
+	  * or if <tt>key</tt> is <tt>null</tt>.
+	  */
+	public Distribution get( Object key )
+	{
+		if ( key == null ) return null;
+
+		Distribution d;
+		synchronized (this)
+		{
+			d = (Distribution) table.get(key);
+			if ( d != null && is_bound(d) )
+			{
+				table.remove(key);
+				d = null;
+			}
+		}
+
+		if ( d == null ) nmisses.incrementAndGet();
+		else nhits.incrementAndGet();
+		return d;
+	}
+
+	/** Remember <tt>d</tt> as the result for <tt>key</tt>. Nothing happens if
+	  * <tt>key</tt> or <tt>d</tt> is <tt>null</tt>, or if <tt>d</tt> is bound to a variable.
+	  */
+	public void put( Object key, Distribution d )
+	{
+		if ( key == null || d == null ) return;
+
+		if ( is_bound(d) )
+		{
+			nuncacheable.incrementAndGet();
+			return;
+		}
+
+		key = ((ContentKey) key).snapshot();
+		synchronized (this) { table.put( key, d ); }
+	}
+
+	/** Tells whether <tt>d</tt> is bound to a variable.
+	  */
+	static boolean is_bound( Distribution d )
+	{
+		return d instanceof AbstractDistribution && ((AbstractDistribution)d).associated_variable != null;
+	}
+
+	/** Forget all remembered results and set the counters to zero.
+	  */
+	public synchronized void clear()
+	{
+		table.clear();
+		nhits.set(0);
+		nmisses.set(0);
+		nuncacheable.set(0);
+	}
+
+	public synchronized String toString()
+	{
+		return "["+this.getClass().getName()+" "+table.size()+"/"+capacity+" results; hits: "+nhits.get()+", misses: "+nmisses.get()+", uncacheable: "+nuncacheable.get()+"]";
+	}
+}
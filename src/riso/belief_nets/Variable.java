@@ -85,6 +85,13 @@ public class Variable extends RemoteObservableImpl implements AbstractVariable,
 
     PosteriorHelper posterior_helper_cache;
 
+    PiHelper prior_helper_cache;
+
+    /** Helpers loaded for this variable when the belief network's dispatch is compiled.
+      * The keys are instances of <tt>HelperSlotKey</tt>.
+      */
+    transient Hashtable helper_slots = new Hashtable();
+
 	/** Reference to the belief network which contains this variable.
 	  * It's occaisonally useful to get a reference to the belief network
 	  * given a reference to a variable within that network. 
@@ -207,6 +214,19 @@ public class Variable extends RemoteObservableImpl implements AbstractVariable,
 		stale = true;
 	}
 
+	/** Notify observers of <tt>of_interest</tt>, unless the belief network
+	  * which contains this variable is holding back notifications while it
+	  * propagates a group of evidence changes; in that case the notification
+	  * is sent when the propagation is finished.
+	  * @see BeliefNetwork.flush_evidence_updates
+	  */
+	public void notify_observers( Object of_interest, Object arg )
+	{
+		if ( belief_network != null && belief_network.defer_notification( this, of_interest, arg ) )
+			return;
+		super.notify_observers( of_interest, arg );
+	}
+
 	/** Retrieves a reference to the belief network which contains this
 	  * variable.
 	  */
@@ -1028,6 +1048,7 @@ System.err.println( "notify_all_invalid_lambda_message: "+e );
 		}
 
 		lambda_messages[ child_index ] = null;
+		if ( belief_network != null ) belief_network.nmessages_invalidated.incrementAndGet();
 		if ( posterior instanceof Delta ) return; // nothing further to do
 
 		lambda = null;
@@ -1117,6 +1138,7 @@ System.err.println( "invalid_lambda_message_notification: "+e );
 			// outgoing lambda messages are now invalid. 
 
 			pi_messages[ parent_index ] = null;
+			if ( belief_network != null ) belief_network.nmessages_invalidated.incrementAndGet();
 			for ( i = 0; i < parents.length; i++ )
 				if ( i != parent_index )
 					try { parents[i].invalid_lambda_message_notification( this ); }
@@ -1134,6 +1156,7 @@ System.err.println( "invalid_pi_message_notification: "+e );
 		pi = null;
 		pi_messages[ parent_index ] = null;
 		posterior = null;
+		if ( belief_network != null ) belief_network.nmessages_invalidated.incrementAndGet();
 
 		notify_observers( "pi", this.pi );
 		notify_observers( "posterior", this.posterior );
@@ -78,6 +78,14 @@ abstract public class AbstractDistribution implements Distribution, Serializable
 	  */
 	public double p( double[] x, double[] c ) throws Exception { return p(x); }
 
+	/** Compute the density at each of the points <tt>x[0]</tt> through <tt>x[n-1]</tt>.
+	  * This default implementation calls <tt>p</tt> for each point.
+	  */
+	public void p_batch( double[][] x, double[] px, int n ) throws Exception
+	{
+		for ( int i = 0; i < n; i++ ) px[i] = p( x[i] );
+	}
+
 	/** Compute the logarithm of the density at the point <tt>x</tt>.
 	  * This default implement is just <tt>return Math.log(p(x));</tt>.
 	  */
@@ -282,9 +282,10 @@ System.err.println( "CG: found Sigma_1c2_string: "+Sigma_1c2_string );
 				++nelements;
 			int nparents = nelements/nchild;
 
-			Sigma_1c2 = parse_matrix( Sigma_1c2_string, nchild, nchild );
+			// Assign Sigma_1c2 last, since it signals that the others are ready.
 			a_mu_1c2 = parse_matrix( a_mu_1c2_string, nchild, nparents );
 			b_mu_1c2 = parse_vector( b_mu_1c2_string, nchild );
+			Sigma_1c2 = parse_matrix( Sigma_1c2_string, nchild, nchild );
 		}
 	}
 
@@ -86,6 +86,23 @@ public class Discrete extends AbstractDistribution
 		return probabilities[ii];
 	}
 
+	/** Look up the probability of each of the points <tt>x[0]</tt> through <tt>x[n-1]</tt>.
+	  */
+	public void p_batch( double[][] x, double[] px, int n ) throws Exception
+	{
+		for ( int j = 0; j < n; j++ )
+		{
+			double[] xj = x[j];
+			int ii = 0;
+
+			for ( int i = 0; i < ndims-1; i++ )
+				ii = dimensions[i+1] * (ii + (int) xj[i]);
+			ii += (int) xj[ndims-1];
+
+			px[j] = probabilities[ii];
+		}
+	}
+
 	/** Return an instance of a random variable from this distribution.
 	  */
 	public double[] random() throws Exception
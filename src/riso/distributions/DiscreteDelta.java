@@ -94,6 +94,14 @@ public class DiscreteDelta extends Discrete implements Delta
 			throw new IllegalArgumentException( "DiscreteDelta.p: support point not defined." );
 	}
 
+	/** Compute the density at each of the points <tt>x[0]</tt> through <tt>x[n-1]</tt>
+	  * by calling <tt>p</tt> for each one.
+	  */
+	public void p_batch( double[][] x, double[] px, int n ) throws IllegalArgumentException
+	{
+		for ( int i = 0; i < n; i++ ) px[i] = p( x[i] );
+	}
+
 	/** Return an instance of a random variable from this distribution.
 	  * This function always returns the point on which this distribution
 	  * is concentrated, since all the mass is there.
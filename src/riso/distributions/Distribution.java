@@ -38,6 +38,11 @@ public interface Distribution extends ConditionalDistribution
 	  */
 	public double p( double[] x ) throws Exception;
 
+	/** Compute the density at each of the points <tt>x[0]</tt> through <tt>x[n-1]</tt>
+	  * and store the results in <tt>px[0]</tt> through <tt>px[n-1]</tt>.
+	  */
+	public void p_batch( double[][] x, double[] px, int n ) throws Exception;
+
 	/** Compute the logarithm of the density at the point <tt>x</tt>.
 	  */
 	public double log_p( double[] x ) throws Exception;
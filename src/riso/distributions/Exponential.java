@@ -71,6 +71,7 @@ public class Exponential extends AbstractDistribution
 	  */
 	public double cdf( double x ) throws Exception
 	{
+		if ( x <= 0 ) return 0;
 		return 1 - Math.exp( -x/lambda );
 	}
 
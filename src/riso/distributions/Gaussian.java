@@ -590,6 +590,42 @@ public class Gaussian extends AbstractDistribution implements LocationScaleDensi
 		return pp;
 	}
 
+	/** Compute the density at each of the points <tt>x[0]</tt> through <tt>x[n-1]</tt>.
+	  * The constant factors are computed once, and the quadratic form is computed
+	  * without allocating any arrays. The results are the same as from <tt>p</tt>.
+	  */
+	public void p_batch( double[][] x, double[] px, int n ) throws Exception
+	{
+		double c = Math.pow( 2*Math.PI, -ndims/2.0 ), sqrt_det = Math.sqrt( det_Sigma );
+
+		if ( ndims == 1 )
+		{
+			double s = Sigma_inverse[0][0], m = mu[0];
+			for ( int i = 0; i < n; i++ )
+			{
+				double dx = x[i][0] - m;
+				px[i] = c * Math.exp( -(dx*(s*dx))/2 ) / sqrt_det;
+			}
+			return;
+		}
+
+		double[] dx = new double[ndims];
+		for ( int i = 0; i < n; i++ )
+		{
+			for ( int j = 0; j < ndims; j++ ) dx[j] = x[i][j] - mu[j];
+
+			double t = 0;
+			for ( int j = 0; j < ndims; j++ )
+			{
+				double sj = 0;
+				for ( int k = 0; k < ndims; k++ ) sj += Sigma_inverse[j][k]*dx[k];
+				t += dx[j]*sj;
+			}
+
+			px[i] = c * Math.exp( -t/2 ) / sqrt_det;
+		}
+	}
+
 	/** Computes the density of a 1-dimensional Gaussian with the given
 	  * mean and standard deviation (not the variance).
 	  */
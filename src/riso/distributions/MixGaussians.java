@@ -20,6 +20,7 @@ package riso.distributions;
 import java.io.*;
 import java.rmi.*;
 import riso.numerical.*;
+import riso.belief_nets.*;
 import riso.general.*;
 
 /** This class represents an additive mixture of Gaussian densities.
@@ -201,21 +202,204 @@ public class MixGaussians extends Mixture
 		}
 	}
 
+	/** Component budget for mixtures reduced automatically, e.g. by <tt>mixture_product</tt>.
+	  * Set this to <tt>Integer.MAX_VALUE</tt> to disable reduction, except for merges which
+	  * cost less than <tt>REDUCTION_KL_EPSILON</tt>.
+	  */
+	public static int MAX_NCOMPONENTS = 30;
+
+	/** Components are merged, even if the mixture is within its budget, if the bound on the
+	  * Kullback-Leibler divergence of the merge is less than this.
+	  */
+	public static double REDUCTION_KL_EPSILON = 1e-6;
+
+	/** Components with mixing proportion less than this are removed before any merging.
+	  */
+	public static double PRUNE_MIX_PROPORTION = 1e-8;
+
+	/** Variances are assumed to be at least this large when computing the cost of a merge,
+	  * so that the cost of merging a delta function is large but finite.
+	  */
+	static final double MIN_VARIANCE = 1e-300;
+
 	/** Trims down the number of components in this mixture by removing
-	  * some and modifying the parameters of others.
+	  * negligible components and merging others. This is the greedy algorithm of
+	  * A. R. Runnalls, "Kullback-Leibler approach to Gaussian mixture reduction",
+	  * IEEE Trans. Aerospace and Electronic Systems, vol. 43, no. 3 (2007), pp 989--999:
+	  * the pair of components for which an upper bound on the KL divergence between the mixture
+	  * before and after the merge is least is replaced by a single Gaussian with the same
+	  * weight, mean, and variance as the pair. For a pair with weights <tt>w1, w2</tt>, 
+	  * variances <tt>v1, v2</tt>, and merged variance <tt>v12</tt>, the bound is
+	  * <pre>
+	  *   ( (w1+w2) log v12 - w1 log v1 - w2 log v2 )/2
+	  * </pre>
+	  * Merging stops when there are no more than <tt>max_ncomponents</tt> components and the
+	  * next merge would cost more than <tt>KL_epsilon</tt>.
+	  *
+	  * <p> First, components with mixing proportion less than <tt>PRUNE_MIX_PROPORTION</tt> are
+	  * removed. Only one-dimensional mixtures are reduced; other mixtures are not changed.
 	  */
 	public void reduce_mixture( int max_ncomponents, double KL_epsilon )
 	{
-		// If this mixture has too many components, get rid of the
-		// smallest components and rearrange the remainder to fit the
-		// original as best we can. IS THAT REALLY WHAT WE WANT ???
+		if ( ndims != 1 || ncomponents <= 1 ) return;
+
+		int n = ncomponents, i, j;
+		double[] w = new double[n], m = new double[n], v = new double[n], lv = new double[n], g = new double[n];
+		double sum = 0;
+
+		for ( i = 0; i < n; i++ ) sum += mix_proportions[i];
+
+		// Prune negligible components; keep at least the heaviest one.
+
+		int imax = 0;
+		for ( i = 1; i < n; i++ )
+			if ( mix_proportions[i] > mix_proportions[imax] ) imax = i;
+
+		int nactive = 0;
+		for ( i = 0; i < n; i++ )
+		{
+			double wi = mix_proportions[i]/sum;
+			if ( wi < PRUNE_MIX_PROPORTION && i != imax ) continue;
+
+			w[nactive] = wi;
+			Gaussian gi = (Gaussian) components[i];
+			m[nactive] = gi.mu[0];
+			v[nactive] = gi.Sigma[0][0];
+			lv[nactive] = Math.log( Math.max( v[nactive], MIN_VARIANCE ) );
+			g[nactive] = gamma == null ? 1 : gamma[i];
+			++nactive;
+		}
+
+		int nbefore = n;
+		n = nactive;
+
+		// For each component, find the partner for which merging costs least.
+		// Inactive components have weight zero. When a merge changes the partner of
+		// some component, that component is marked stale, and its best partner is found
+		// again only if it comes up as the least costly merge.
+
+		int[] best = new int[n];
+		double[] best_cost = new double[n];
+		boolean[] stale = new boolean[n];
+		for ( i = 0; i < n; i++ ) find_best_partner( i, n, w, m, v, lv, best, best_cost );
+
+		while ( nactive > 1 )
+		{
+			int imin;
+			while ( true )
+			{
+				imin = -1;
+				for ( i = 0; i < n; i++ )
+					if ( w[i] > 0 && (imin == -1 || best_cost[i] < best_cost[imin]) ) imin = i;
+
+				if ( ! stale[imin] ) break;
+
+				find_best_partner( imin, n, w, m, v, lv, best, best_cost );
+				stale[imin] = false;
+			}
+
+			if ( nactive <= max_ncomponents && best_cost[imin] > KL_epsilon ) break;
+
+			// Merge component jmin into imin, preserving the mean and variance of the pair.
+
+			int jmin = best[imin];
+			double wij = w[imin]+w[jmin], a = w[imin]/wij, b = w[jmin]/wij, dm = m[imin]-m[jmin];
+
+			v[imin] = a*v[imin] + b*v[jmin] + a*b*dm*dm;
+			lv[imin] = Math.log( Math.max( v[imin], MIN_VARIANCE ) );
+			m[imin] = a*m[imin] + b*m[jmin];
+			g[imin] = a*g[imin] + b*g[jmin];
+			w[imin] = wij;
+			w[jmin] = 0;
+			--nactive;
+
+			find_best_partner( imin, n, w, m, v, lv, best, best_cost );
+			stale[imin] = false;
+
+			for ( i = 0; i < n; i++ )
+			{
+				if ( w[i] == 0 || i == imin || stale[i] ) continue;
+
+				if ( best[i] == imin || best[i] == jmin )
+					stale[i] = true;
+				else
+				{
+					double c = merge_cost( w[i], m[i], v[i], lv[i], w[imin], m[imin], v[imin], lv[imin] );
+					if ( c < best_cost[i] ) { best[i] = imin; best_cost[i] = c; }
+				}
+			}
+		}
+
+		components = new Distribution[ nactive ];
+		mix_proportions = new double[ nactive ];
+		gamma = new double[ nactive ];
+
+		for ( i = 0, j = 0; i < n; i++ )
+		{
+			if ( w[i] == 0 ) continue;
+
+			components[j] = v[i] == 0 ? new GaussianDelta( m[i] ) : new Gaussian( m[i], Math.sqrt(v[i]) );
+			mix_proportions[j] = w[i];
+			gamma[j] = g[i];
+			++j;
+		}
+
+		ncomponents = nactive;
+
+if (Global.debug > 1) System.err.println( "MixGaussians.reduce_mixture: reduced from "+nbefore+" to "+ncomponents+" components." );
+	}
+
+	static void find_best_partner( int i, int n, double[] w, double[] m, double[] v, double[] lv, int[] best, double[] best_cost )
+	{
+		best[i] = -1;
+		best_cost[i] = Double.POSITIVE_INFINITY;
+
+		for ( int j = 0; j < n; j++ )
+		{
+			if ( j == i || w[j] == 0 ) continue;
+
+			double c = merge_cost( w[i], m[i], v[i], lv[i], w[j], m[j], v[j], lv[j] );
+			if ( best[i] == -1 || c < best_cost[i] )
+			{
+				best[i] = j;
+				best_cost[i] = c;
+			}
+		}
+	}
+
+	/** Runnalls' bound on the KL divergence caused by merging two components;
+	  * <tt>lv1</tt> and <tt>lv2</tt> are the logarithms of the variances.
+	  */
+	static double merge_cost( double w1, double m1, double v1, double lv1, double w2, double m2, double v2, double lv2 )
+	{
+		double w12 = w1+w2, a = w1/w12, b = w2/w12, dm = m1-m2;
+		double v12 = a*v1 + b*v2 + a*b*dm*dm;
 
-		throw new RuntimeException( "MixGaussians.reduce_mixture: not implemented." );
+		return 0.5*( w12*Math.log( Math.max(v12,MIN_VARIANCE) ) - w1*lv1 - w2*lv2 );
 	}
 
+	/** Products with more than this many combinations of components are computed
+	  * approximately; see <tt>mixture_product</tt>.
+	  */
+	public static int MAX_EXACT_PRODUCT = 1000;
+
 	/** Computes a Gaussian mixture from the product of a set of
 	  * Gaussian mixtures. Note that this is NOT THE SAME as computing a
 	  * mixture for the product of variables with mixture densities.
+	  *
+	  * <p> If the number of combinations of components is no more than <tt>MAX_EXACT_PRODUCT</tt>,
+	  * every combination is computed, and then the product is reduced to <tt>MAX_NCOMPONENTS</tt>
+	  * components. Otherwise the mixtures are multiplied one at a time, starting with the
+	  * smallest, and the running product (and each mixture, if it is too big) is reduced to
+	  * <tt>MAX_NCOMPONENTS</tt> components before the next multiplication, so the full product
+	  * is never constructed.
+	  *
+	  * <p> Only one-dimensional mixtures are multiplied: products of the components are
+	  * computed by <tt>Gaussian.densities_product</tt>, and mixtures are reduced by
+	  * <tt>reduce_mixture</tt>, which handle only one dimension.
+	  *
+	  * @throws IllegalArgumentException If there are two or more mixtures and some mixture
+	  *   has more than one dimension.
 	  */
 	public static MixGaussians mixture_product( MixGaussians[] mixtures )
 	{
@@ -226,44 +410,109 @@ public class MixGaussians extends Mixture
 				throw new RuntimeException( "MixGaussians.mixture_product: unexpected: "+e );
 			}
 
+		for ( int i = 0; i < mixtures.length; i++ )
+			if ( mixtures[i].ndims > 1 )
+				throw new IllegalArgumentException( "MixGaussians.mixture_product: "+i+"'th mixture has "+mixtures[i].ndims+" dimensions; only one-dimensional mixtures are handled." );
+
+		long nproduct = 1;
+		for ( int i = 0; i < mixtures.length; i++ )
+			nproduct *= mixtures[i].ncomponents;
+
+		if ( nproduct <= MAX_EXACT_PRODUCT )
+			return exact_product( mixtures );
+		else
+			return approximate_product( mixtures );
+	}
+
+	/** Multiply the mixtures one at a time, reducing as we go.
+	  */
+	static MixGaussians approximate_product( MixGaussians[] mixtures )
+	{
+		MixGaussians[] sorted = (MixGaussians[]) mixtures.clone();
+		java.util.Arrays.sort( sorted, new java.util.Comparator() {
+			public int compare( Object o1, Object o2 )
+			{
+				return ((MixGaussians)o1).ncomponents - ((MixGaussians)o2).ncomponents;
+			}
+		} );
+
+		MixGaussians product = reduced_copy( sorted[0] );
+		MixGaussians[] pair = new MixGaussians[2];
+
+		for ( int i = 1; i < sorted.length; i++ )
+		{
+			pair[0] = product;
+			pair[1] = reduced_copy( sorted[i] );
+			product = exact_product( pair );
+		}
+
+if (Global.debug > 0) System.err.println( "MixGaussians.approximate_product: "+mixtures.length+" mixtures, "+product.ncomponents+" components in product." );
+		return product;
+	}
+
+	/** Return <tt>mix</tt> if it has no more than <tt>MAX_NCOMPONENTS</tt> components,
+	  * otherwise a reduced copy.
+	  */
+	static MixGaussians reduced_copy( MixGaussians mix )
+	{
+		if ( mix.ncomponents <= MAX_NCOMPONENTS ) return mix;
+
+		try
+		{
+			MixGaussians copy = (MixGaussians) mix.clone();
+			copy.reduce_mixture( MAX_NCOMPONENTS, REDUCTION_KL_EPSILON );
+			return copy;
+		}
+		catch (CloneNotSupportedException e) 
+		{
+			throw new RuntimeException( "MixGaussians.reduced_copy: unexpected: "+e );
+		}
+	}
+
+	/** Computes every combination of components of the mixtures, then reduces the product.
+	  */
+	static MixGaussians exact_product( MixGaussians[] mixtures )
+	{
 		int i, nproduct = 1;
 		for ( i = 0; i < mixtures.length; i++ )
 			nproduct *= mixtures[i].ncomponents;
 		MixGaussians product = new MixGaussians( 1, nproduct );
-System.err.println( "MixGaussians.mixture_product: nproduct: "+nproduct );
+if (Global.debug > 0) System.err.println( "MixGaussians.mixture_product: nproduct: "+nproduct );
 
 		int[] k = new int[ mixtures.length ], l = new int[1];
-		product_inner_loop( mixtures, product, k, l, mixtures.length-1 );
+		Gaussian[] mix_combo = new Gaussian[ mixtures.length ];
+		product_inner_loop( mixtures, product, k, l, mixtures.length-1, mix_combo );
 
 		// Fix up mixing coefficients.
 		double sum = 0; 
 		for ( i = 0; i < product.ncomponents; i++ ) sum += product.mix_proportions[i];
 		for ( i = 0; i < product.ncomponents; i++ ) product.mix_proportions[i] /= sum;
-System.err.println( "MixGaussians.mixture_product: sum: "+sum );
+if (Global.debug > 0) System.err.println( "MixGaussians.mixture_product: sum: "+sum );
+
+		product.reduce_mixture( MAX_NCOMPONENTS, REDUCTION_KL_EPSILON );
 
 		return product;
 	}
 	
-	static void product_inner_loop( MixGaussians[] mixtures, MixGaussians product, int[] k, int[] l, int m )
+	static void product_inner_loop( MixGaussians[] mixtures, MixGaussians product, int[] k, int[] l, int m, Gaussian[] mix_combo )
 	{
 		if ( m == -1 )
 		{
 			// Recursion has bottomed out.
-			compute_one_product( mixtures, product, k, l );
+			compute_one_product( mixtures, product, k, l, mix_combo );
 		}
 		else
 		{
 			for ( int i = 0; i < mixtures[m].ncomponents; i++ )
 			{
 				k[m] = i;
-				product_inner_loop( mixtures, product, k, l, m-1 );
+				product_inner_loop( mixtures, product, k, l, m-1, mix_combo );
 			}
 		}
 	}
 
-	static void compute_one_product( MixGaussians[] mixtures, MixGaussians product, int[] k, int[] l )
+	static void compute_one_product( MixGaussians[] mixtures, MixGaussians product, int[] k, int[] l, Gaussian[] mix_combo )
 	{
-		Gaussian[] mix_combo = new Gaussian[ mixtures.length ];
 		double[] ignored_scale = new double[1];
 		double mix_coeff_product = 1;
 
@@ -168,6 +168,23 @@ public class Mixture extends AbstractDistribution
 		return sum;
 	}
 
+	/** Compute the density at each of the points <tt>x[0]</tt> through <tt>x[n-1]</tt>.
+	  * Each component computes its densities for all of the points at once; the
+	  * weighted sums are accumulated in the same order as in <tt>p</tt>.
+	  */
+	public void p_batch( double[][] x, double[] px, int n ) throws Exception
+	{
+		double[] pc = new double[n];
+		for ( int j = 0; j < n; j++ ) px[j] = 0;
+
+		for ( int i = 0; i < ncomponents; i++ )
+		{
+			components[i].p_batch( x, pc, n );
+			for ( int j = 0; j < n; j++ )
+				px[j] += mix_proportions[i] * pc[j];
+		}
+	}
+
 	/** Return an instance of a random variable from this distribution.
 	  * A component is selected according to the mixing proportions,
 	  * then a random variable is generated from that component.
@@ -22,6 +22,7 @@ import java.net.*;
 import java.rmi.*;
 import java.rmi.server.*;
 import java.util.*;
+import java.util.concurrent.*;
 import riso.belief_nets.*;
 import riso.general.*;
 
@@ -29,15 +30,51 @@ public class PiHelperLoader
 {
 	/** The helper cache. The keys are instances of <tt>HelperCacheKey</tt>.
 	  */
-	public static Hashtable helper_cache;
+	public static ConcurrentHashMap helper_cache;
+
+	/** The helpers put into the cache when this class is loaded; these are
+	  * put back into the cache each time it is emptied.
+	  */
+	static ConcurrentHashMap preloaded_helpers = new ConcurrentHashMap();
+
+	/** Lookups which failed. The keys are instances of <tt>HelperCacheKey</tt> and the
+	  * values are the exceptions thrown; a failed lookup is not retried until the cache is emptied.
+	  * Only searches which ran to completion and found no match are remembered; a search
+	  * which couldn't be completed (<tt>SearchIncompleteException</tt>) is retried next time.
+	  */
+	static ConcurrentHashMap failed_lookups = new ConcurrentHashMap();
+
+	/** Index of helper descriptions. The keys are helper types; the values are
+	  * lists of pairs <tt>{ Class, SeqTriple[] }</tt>, each a helper class and its description.
+	  * The most recently used helper is first in the list, so it wins ties in matching.
+	  */
+	static ConcurrentHashMap description_index = new ConcurrentHashMap();
+
+	/** Helper types for which the complete list of helpers has been obtained from
+	  * a belief network context and put in the description index. If there is no
+	  * match in the index for one of these types, there is no need to ask the context again.
+	  */
+	static ConcurrentHashMap complete_index_types = new ConcurrentHashMap();
+
+	/** This exception is thrown by a search for a helper which couldn't be completed,
+	  * because no belief network context could be contacted, or because some helper
+	  * classes couldn't be loaded. Such a failure may be transient, so it is not
+	  * remembered in <tt>failed_lookups</tt>.
+	  */
+	public static class SearchIncompleteException extends ClassNotFoundException
+	{
+		public SearchIncompleteException( String s ) { super(s); }
+	}
 
 	/** The last time (in milliseconds since the epoch) the cache was emptied.
 	  */
-	public static long cache_timestamp = System.currentTimeMillis();
+	public static volatile long cache_timestamp = System.currentTimeMillis();
 
-	/** The helper cache is emptied every <tt>HELPER_CACHE_REFRESH</tt> milliseconds.
+	/** The helper cache, the list of failed lookups, and the description index are emptied
+	  * every <tt>HELPER_CACHE_REFRESH</tt> milliseconds, so that helpers added to
+	  * a belief network context since then can be found.
 	  */
-	public static long HELPER_CACHE_REFRESH = 24L*365L*3600L*1000L; // effectively never !!!
+	public static long HELPER_CACHE_REFRESH = 3600L*1000L;
 
 	// PERHAPS WE OUGHT TO MAINTAIN REFS TO SEVERAL CONTEXTS -- BOTH LOCAL AND REMOTE ??? !!!
 	public static AbstractBeliefNetworkContext bnc = null;
@@ -50,43 +87,49 @@ public class PiHelperLoader
 	{
 		System.err.println( "PiHelperLoader.static: preload the helper cache." );
 
-		helper_cache = new Hashtable();
+		helper_cache = new ConcurrentHashMap();
 		Vector seq = new Vector();
 
 		seq.addElement( riso.distributions.ConditionalDiscrete.class );
 		seq.addElement( riso.distributions.Discrete.class );
 
-		helper_cache.put( new HelperCacheKey( "pi", seq ), riso.distributions.computes_pi.ConditionalDiscrete_Discrete.class );
+		preloaded_helpers.put( new HelperCacheKey( "pi", seq ), riso.distributions.computes_pi.ConditionalDiscrete_Discrete.class );
 
 		seq = new Vector();
 		seq.addElement( riso.distributions.Discrete.class );
 
-		helper_cache.put( new HelperCacheKey( "lambda", seq ), riso.distributions.computes_lambda.Discrete.class );
+		preloaded_helpers.put( new HelperCacheKey( "lambda", seq ), riso.distributions.computes_lambda.Discrete.class );
 
 		seq = new Vector();
 		seq.addElement( riso.distributions.AbstractDistribution.class );
 		seq.addElement( riso.distributions.AbstractDistribution.class );
 
-		helper_cache.put( new HelperCacheKey( "pi_message", seq ), riso.distributions.computes_pi_message.AbstractDistribution_AbstractDistribution.class );
+		preloaded_helpers.put( new HelperCacheKey( "pi_message", seq ), riso.distributions.computes_pi_message.AbstractDistribution_AbstractDistribution.class );
 
 		seq = new Vector();
 		seq.addElement( riso.distributions.ConditionalDiscrete.class );
 		seq.addElement( riso.distributions.Discrete.class );
 		seq.addElement( riso.distributions.Discrete.class );
 
-		helper_cache.put( new HelperCacheKey( "lambda_message", seq ), riso.distributions.computes_lambda_message.ConditionalDiscrete_Discrete_Discrete.class );
+		preloaded_helpers.put( new HelperCacheKey( "lambda_message", seq ), riso.distributions.computes_lambda_message.ConditionalDiscrete_Discrete_Discrete.class );
 
 		seq = new Vector();
 		seq.addElement( riso.distributions.ConditionalDiscrete.class );
 		seq.addElement( riso.distributions.Discrete.class );
 
-		helper_cache.put( new HelperCacheKey( "lambda_message", seq ), riso.distributions.computes_lambda_message.ConditionalDiscrete_Discrete_.class );
+		preloaded_helpers.put( new HelperCacheKey( "lambda_message", seq ), riso.distributions.computes_lambda_message.ConditionalDiscrete_Discrete_.class );
 
 		seq = new Vector();
 		seq.addElement( riso.distributions.Discrete.class );
 		seq.addElement( riso.distributions.Discrete.class );
 
-		helper_cache.put( new HelperCacheKey( "posterior", seq ), riso.distributions.computes_posterior.Discrete_Discrete.class );
+		preloaded_helpers.put( new HelperCacheKey( "posterior", seq ), riso.distributions.computes_posterior.Discrete_Discrete.class );
+
+		for ( Iterator it = preloaded_helpers.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry e = (Map.Entry) it.next();
+			remember_helper( (HelperCacheKey) e.getKey(), (Class) e.getValue() );
+		}
 
 System.err.println( "PiHelperLoader.static: helper_cache.size(): "+helper_cache.size() );
 	}
@@ -108,10 +151,78 @@ System.err.println( "PiHelperLoader.static: helper_cache.size(): "+helper_cache.
 		return (PiHelper) c.newInstance();
 	}
 
+	/** Put <tt>c</tt> into the helper cache under <tt>key</tt>, and its description into the index.
+	  */
+	static void remember_helper( HelperCacheKey key, Class c )
+	{
+		helper_cache.put( key, c );
+		index_helper( key.helper_type, c );
+	}
+
+	/** Put the description of the helper class <tt>c</tt> into the index under <tt>helper_type</tt>.
+	  * Nothing happens if <tt>c</tt> is not a helper class.
+	  */
+	static void index_helper( String helper_type, Class c )
+	{
+		CopyOnWriteArrayList descriptions = (CopyOnWriteArrayList) description_index.get( helper_type );
+		if ( descriptions == null )
+		{
+			description_index.putIfAbsent( helper_type, new CopyOnWriteArrayList() );
+			descriptions = (CopyOnWriteArrayList) description_index.get( helper_type );
+		}
+
+		synchronized (descriptions)
+		{
+			Object[] pair = null;
+			for ( int i = 0; i < descriptions.size() && pair == null; i++ )
+				if ( ((Object[]) descriptions.get(i))[0] == c )
+					pair = (Object[]) descriptions.remove(i);
+
+			if ( pair == null )
+			{
+				SeqTriple[] sm = (SeqTriple[]) invoke_description(c);
+				if ( sm == null ) return; // apparently not a helper class
+				pair = new Object[] { c, sm };
+			}
+
+			descriptions.add( 0, pair );
+		}
+	}
+
+	/** If the cache is older than <tt>HELPER_CACHE_REFRESH</tt>, empty it, forget failed
+	  * lookups and the description index, and put the preloaded helpers back. If several
+	  * threads notice at once, only one of them empties the cache.
+	  */
+	static void refresh_if_stale()
+	{
+		long t = cache_timestamp;
+		if ( System.currentTimeMillis() - t <= HELPER_CACHE_REFRESH ) return;
+
+		synchronized (PiHelperLoader.class)
+		{
+			if ( cache_timestamp != t ) return;
+
+if (Global.debug > 0) System.err.println( "PiHelperLoader.refresh_if_stale: empty the helper cache; "+helper_cache.size()+" helpers, "+failed_lookups.size()+" failed lookups." );
+			helper_cache.clear();
+			failed_lookups.clear();
+			description_index.clear();
+			complete_index_types.clear();
+
+			for ( Iterator it = preloaded_helpers.entrySet().iterator(); it.hasNext(); )
+			{
+				Map.Entry e = (Map.Entry) it.next();
+				remember_helper( (HelperCacheKey) e.getKey(), (Class) e.getValue() );
+			}
+
+			cache_timestamp = System.currentTimeMillis();
+		}
+	}
+
 	/** This method returns a <tt>Class</tt> for a helper which can handle the list of
 	  * distributions specified by <tt>seq1</tt>. We maintain a cache of recently-loaded helpers,
-	  * so check the cache before going to the trouble of searching for a helper. The cache
-	  * is blown away every <tt>HELPER_CACHE_REFRESH</tt> seconds.
+	  * so check the cache before going to the trouble of searching for a helper. Failed
+	  * searches are remembered too, and not repeated. The cache is emptied every
+	  * <tt>HELPER_CACHE_REFRESH</tt> milliseconds.
 	  *
 	  * <p> If we can't find a helper in the cache, we must search through the list of available
 	  * helpers to find an appropriate one. First try to find helper using class sequence as specified
@@ -122,28 +233,24 @@ System.err.println( "PiHelperLoader.static: helper_cache.size(): "+helper_cache.
 	public static Class find_helper_class( Vector seq1, String helper_type ) throws ClassNotFoundException
 	{
 		// Let's see if an appropriate helper is in the cache.
-		// If the cache is too old, empty it and search for the helper anew.
+		// If the cache is too old, empty it first.
 
-		if ( System.currentTimeMillis() - cache_timestamp > HELPER_CACHE_REFRESH )
-		{
-			helper_cache = new Hashtable();
-			cache_timestamp = System.currentTimeMillis();
-			// Go on and search for appropriate helper.
-		}
-		else
+		refresh_if_stale();
+
+		HelperCacheKey key = new HelperCacheKey( helper_type, seq1 );
+		Class helper_class = (Class) helper_cache.get(key);
+		if ( helper_class != null )
 		{
-			HelperCacheKey key = new HelperCacheKey( helper_type, seq1 );
-			Class helper_class = (Class) helper_cache.get(key);
-			if ( helper_class != null )
-            {
-if (Global.debug > -1) System.err.println ("PiHelperLoader.find_helper_class: found helper class: "+helper_class+"; no need to search.");
-                return helper_class;
-            }
-			// else no luck; we have to search for helper.
+if (Global.debug > 1) System.err.println ("PiHelperLoader.find_helper_class: found helper class: "+helper_class+"; no need to search.");
+			return helper_class;
 		}
 
+		ClassNotFoundException failure = (ClassNotFoundException) failed_lookups.get(key);
+		if ( failure != null )
+			throw new ClassNotFoundException( "(search not repeated) "+failure.getMessage() );
+
 		// Well, we didn't find a helper in the cache, so let's go to work.
-if (Global.debug > -1) System.err.println ("PiHelperLoader.find_helper_class: DID NOT FIND HELPER CLASS; NOW SEARCH.");
+if (Global.debug > 0) System.err.println ("PiHelperLoader.find_helper_class: DID NOT FIND HELPER CLASS; NOW SEARCH.");
 
 		Class c1 = null, c2 = null;
 		ClassNotFoundException cnfe1 = null, cnfe2 = null;
@@ -175,39 +282,45 @@ if (Global.debug > -1) System.err.println ("PiHelperLoader.find_helper_class: DI
 			{
 if (Global.debug > 1) System.err.println( "\taccept helper "+c1+" for non-promoted classes instead of "+c2 );
 if (Global.debug > 1) System.err.println( "\t\t"+class_score1[0]+", "+class_score2[0]+"; "+count_score1[0]+", "+count_score2[0] );
-				helper_cache.put( new HelperCacheKey(helper_type,seq1), c1 );
+				remember_helper( key, c1 );
 				return c1;
 			}
 			else
 			{
 if (Global.debug > 1) System.err.println( "\taccept helper "+c2+" for promoted classes instead of "+c1 );
 if (Global.debug > 1) System.err.println( "\t\t"+class_score1[0]+", "+class_score2[0]+"; "+count_score1[0]+", "+count_score2[0] );
-				helper_cache.put( new HelperCacheKey(helper_type,seq1), c2 );
+				remember_helper( key, c2 );
 				return c2;
 			}
 		}
 		else if ( cnfe1 == null && cnfe2 != null )
 		{
 			// Only the first try matched, return it.
-			helper_cache.put( new HelperCacheKey(helper_type,seq1), c1 );
+			remember_helper( key, c1 );
 			return c1;
 		}
 		else if ( cnfe1 != null && cnfe2 == null )
 		{
 			// Only the second try matched, return it.
-			helper_cache.put( new HelperCacheKey(helper_type,seq1), c2 );
+			remember_helper( key, c2 );
 			return c2;
 		}
 		else
 		{
-			// Neither try matched. Re-throw the exception generated by the first try.
+			// Neither try matched. Remember that, unless either search was incomplete,
+			// and re-throw the exception generated by the first try.
+			if ( cnfe2 instanceof SearchIncompleteException && !(cnfe1 instanceof SearchIncompleteException) )
+				throw cnfe2;
+			if ( !(cnfe1 instanceof SearchIncompleteException) )
+				failed_lookups.put( key, cnfe1 );
 			throw cnfe1;
 		}
 	}
 
-	/** Check the helpers currently stored in the helper cache to see if any of them can
+	/** Check the helpers in the description index to see if any of them can
 	  * handle the sequence we've just been given. This avoids pinging the belief network
-	  * context to get a helper list.
+	  * context to get a helper list. If the index holds the complete list of helpers
+	  * of this type, and none matches, don't ping the context either.
 	  */
 	public static Class find_helper_class1( Vector seq, String helper_type, int[] max_class_score, int[] max_count_score ) throws ClassNotFoundException
 	{
@@ -216,15 +329,15 @@ if (Global.debug > 1) System.err.println( "\t\t"+class_score1[0]+", "+class_scor
 		max_count_score[0] = -1;
 		Class cmax_score = null;
 
-		for ( Enumeration e = helper_cache.keys(); e.hasMoreElements(); )
+		CopyOnWriteArrayList descriptions = (CopyOnWriteArrayList) description_index.get( helper_type );
+
+		for ( Iterator it = descriptions == null ? Collections.EMPTY_LIST.iterator() : descriptions.iterator(); it.hasNext(); )
 		{
 			try
 			{
-				HelperCacheKey key = (HelperCacheKey) e.nextElement();
-				if ( ! key.helper_type.equals(helper_type) ) continue;
-				Class c = (Class) helper_cache.get(key);
-				SeqTriple[] sm = (SeqTriple[]) invoke_description(c);
-				if ( sm == null ) continue; // apparently not a helper class
+				Object[] pair = (Object[]) it.next();
+				Class c = (Class) pair[0];
+				SeqTriple[] sm = (SeqTriple[]) pair[1];
 				if ( MatchClassPattern.matches( sm, seq, class_score1, count_score1 ) )
 				{
 					if ( class_score1[0] > max_class_score[0] || (class_score1[0] == max_class_score[0] && count_score1[0] > max_count_score[0]) )
@@ -239,6 +352,9 @@ if (Global.debug > 1) System.err.println( "\t\t"+class_score1[0]+", "+class_scor
 		}
 
 if (Global.debug > 1) System.err.println( "PiHelperLoader.find_helper_class1: helper "+(cmax_score==null?"is NOT":"is")+" in cache." );
+		if ( cmax_score == null && complete_index_types.containsKey( helper_type ) )
+			throw new ClassNotFoundException( "no "+helper_type+" helper for sequence "+seq+" (searched complete helper list)" );
+
 		if ( cmax_score == null ) // no luck; try to get a helper list from the bnc & plunge ahead
 			return find_helper_class0( seq, helper_type, max_class_score, max_count_score );
 		else // success!
@@ -251,6 +367,9 @@ if (Global.debug > 1) System.err.println( "PiHelperLoader.find_helper_class1: he
 	  *
 	  * <p> The class and count scores of the best-fitting helper class are written
 	  * into <tt>max_class_score[0]</tt> and <tt>max_count_score[0]</tt>, respectively.
+	  *
+	  * @throws SearchIncompleteException If no context could be contacted, or if there is
+	  *   no match and some helper classes couldn't be loaded.
 	  */
 	public static Class find_helper_class0( Vector seq, String helper_type, int[] max_class_score, int[] max_count_score ) throws ClassNotFoundException
 	{
@@ -263,17 +382,19 @@ long t0 = System.currentTimeMillis();
 			String cb = System.getProperty( "java.rmi.server.codebase", "http://localhost" );
 long tt0 = System.currentTimeMillis();
 			try { bnc = BeliefNetworkContext.locate_context( new URL(cb).getHost() ); }
-			catch (Exception e) { throw new ClassNotFoundException( "nested: "+e ); }
+			catch (Exception e) { throw new SearchIncompleteException( "nested: "+e ); }
+			if ( bnc == null ) throw new SearchIncompleteException( "no belief network context found on "+cb );
 		}
 
 		String[] helperlist;
 		try { helperlist = bnc.get_helper_names( helper_type ); }
-		catch (RemoteException e) { throw new ClassNotFoundException( "bnc.get_helper_names failed" ); }
+		catch (RemoteException e) { throw new SearchIncompleteException( "bnc.get_helper_names failed; "+e ); }
 
 		int[] class_score1 = new int[1], count_score1 = new int[1];
 		max_class_score[0] = -1;
 		max_count_score[0] = -1;
 		Class cmax_score = null;
+		boolean all_loaded = true;
 
 		for ( int i = 0; i < helperlist.length; i++ )
 		{
@@ -282,6 +403,7 @@ long tt0 = System.currentTimeMillis();
 				Class c = RMIClassLoader.loadClass( helperlist[i] );
 				SeqTriple[] sm = (SeqTriple[]) invoke_description(c);
 				if ( sm == null ) continue; // apparently not a helper class
+				index_helper( helper_type, c );
 				if ( MatchClassPattern.matches( sm, seq, class_score1, count_score1 ) )
 				{
 					if ( class_score1[0] > max_class_score[0] || (class_score1[0] == max_class_score[0] && count_score1[0] > max_count_score[0]) )
@@ -295,9 +417,13 @@ long tt0 = System.currentTimeMillis();
 			catch (Exception e2)
 			{
 				System.err.println( "PiHelperLoader: attempt to load "+helperlist[i]+" failed; "+e2 );
+				all_loaded = false;
 			}
 		}
 
+		// If every helper of this type is in the index now, later searches needn't ask the context.
+		if ( all_loaded ) complete_index_types.put( helper_type, Boolean.TRUE );
+
 		if ( cmax_score == null )
 		{
 			System.err.println( "find_helper_class0: failed; helper list:" );
@@ -310,7 +436,10 @@ long tt0 = System.currentTimeMillis();
 				catch (NoSuchElementException ee) { s += "???"+","; }
 			}
 
-			throw new ClassNotFoundException( "no "+helper_type+" helper for sequence ["+s+"]" );
+			if ( all_loaded )
+				throw new ClassNotFoundException( "no "+helper_type+" helper for sequence ["+s+"]" );
+			else
+				throw new SearchIncompleteException( "no "+helper_type+" helper for sequence ["+s+"] (some helpers couldn't be loaded)" );
 		}
 		
 		// FOR NOW IGNORE THE POSSIBILITY OF TWO OR MORE MATCHES !!!
@@ -373,7 +502,7 @@ class HelperCacheKey
 
 	public int hashCode()
 	{
-		return helper_type.hashCode(); // one collision list in hash table per helper type; could reduce collisions !!!
+		return helper_type.hashCode()*31 + seq.hashCode();
 	}
 
 	public String toString()
@@ -35,6 +35,30 @@ public class SplineDensity extends AbstractDistribution implements Translatable
 	  */
 	public MonotoneSpline spline = null;
 
+	/** An instance of this class holds a spline together with the masses to the
+	  * left of its support points; <tt>masses[i]</tt> is the mass to the left of <tt>spline.x[i]</tt>.
+	  * It is not changed after it is published, so a reader always sees masses
+	  * which belong to the spline they are stored with.
+	  */
+	protected static class Cumulative
+	{
+		final MonotoneSpline spline;
+		final double[] masses;
+
+		Cumulative( MonotoneSpline spline, double[] masses )
+		{
+			this.spline = spline;
+			this.masses = masses;
+		}
+	}
+
+	/** The cumulative masses, computed the first time they are needed, and recomputed if
+	  * <tt>spline</tt> is replaced by a different spline. The spline and its masses are
+	  * published together through this one volatile field. If two threads compute them
+	  * at the same time, each gets a consistent pair, and the last one stored wins.
+	  */
+	protected transient volatile Cumulative cumulative;
+
 	/** <tt>Class.forName()</tt> uses this do-nothing constructor.
 	  */
 	public SplineDensity() {}
@@ -55,6 +79,9 @@ public class SplineDensity extends AbstractDistribution implements Translatable
 			spline.alpha2[i] /= total;
 			spline.alpha3[i] /= total;
 		}
+
+		double[] c = get_cumulative().masses;
+		for ( int i = 0; i < x.length; i++ ) c[i] /= total;
 	}
 
 	/** Returns the number of dimensions in which this distribution lives.
@@ -86,31 +113,98 @@ public class SplineDensity extends AbstractDistribution implements Translatable
 		return cdf0(x);
 	}
 
-	/** Compute the cumulative distribution function.
+	/** Compute the cumulative distribution function, for <tt>x</tt> within the support.
+	  * The masses of the complete intervals to the left of <tt>x</tt> are cached,
+	  * so this takes a binary search and the integral over one partial interval.
 	  */
 	public double cdf0( double x ) throws Exception
 	{
-		double sum = 0;
-		int i;
+		Cumulative cum = get_cumulative();
+		MonotoneSpline s = cum.spline;
+		int i = s.find_interval(x);
+		return cum.masses[i] + interval_mass( s, i, x - s.x[i] );
+	}
+
+	/** Compute the inverse of the cumulative distribution function, that is,
+	  * find <tt>x</tt> such that <tt>cdf(x) = u</tt>. The interval containing <tt>x</tt>
+	  * is found by binary search on the cached cumulative masses, and the quartic
+	  * equation for <tt>x</tt> within the interval is solved by Newton's method,
+	  * falling back on bisection if a step goes outside the bracket.
+	  */
+	public double inverse_cdf( double u ) throws Exception
+	{
+		return inverse_cdf( get_cumulative(), u );
+	}
+
+	/** Compute the inverse of the cumulative distribution function of the spline in <tt>cum</tt>.
+	  */
+	static double inverse_cdf( Cumulative cum, double u )
+	{
+		MonotoneSpline s = cum.spline;
+		double[] c = cum.masses;
+		int n = s.x.length;
 
-		// Do complete intervals first. Could cache these results; hmm.
-		for ( i = 0; spline.x[i+1] < x; i++ )
+		if ( u <= 0 ) return s.x[0];
+		if ( u >= c[n-1] ) return s.x[n-1];
+
+		int ilow = 0, ihigh = n-1;
+		while ( ihigh - ilow > 1 )
+		{
+			int i = (ilow+ihigh)/2;
+			if ( u < c[i] ) ihigh = i;
+			else ilow = i;
+		}
+
+		int i = ilow;
+		double h = s.x[i+1] - s.x[i], target = u - c[i], mass = c[i+1] - c[i];
+		double t_low = 0, t_high = h, t = (mass > 0 ? h*target/mass : h/2);
+
+		for ( int iter = 0; iter < 50; iter++ )
 		{
-			double dx  = spline.x[i+1] - spline.x[i];
-			double dx2 = dx*dx, dx3 = dx*dx2, dx4 = dx*dx3;
+			double F = interval_mass( s, i, t ) - target;
+			if ( F > 0 ) t_high = t;
+			else t_low = t;
 
-			double term = dx*spline.f[i] + dx2*spline.d[i]/2 + dx3*spline.alpha2[i]/3 + dx4*spline.alpha3[i]/4;
-			sum += term;
+			double pt = s.compute_spline( s.x[i]+t, i );
+			double t_new = (pt > 0 ? t - F/pt : -1);
+			if ( t_new <= t_low || t_new >= t_high ) t_new = (t_low+t_high)/2;
+
+			if ( Math.abs( t_new - t ) <= 1e-14*h ) { t = t_new; break; }
+			t = t_new;
 		}
 
-		// Now do the last partial interval.
-		double dx  = x - spline.x[i];
-		double dx2 = dx*dx, dx3 = dx*dx2, dx4 = dx*dx3;
+		return s.x[i] + t;
+	}
 
-		double term = dx*spline.f[i] + dx2*spline.d[i]/2 + dx3*spline.alpha2[i]/3 + dx4*spline.alpha3[i]/4;
-		sum += term;
+	/** Return the mass of the spline <tt>s</tt> in the interval <tt>[s.x[i], s.x[i]+t]</tt>.
+	  */
+	static double interval_mass( MonotoneSpline s, int i, double t )
+	{
+		return t*(s.f[i] + t*(s.d[i]/2 + t*(s.alpha2[i]/3 + t*s.alpha3[i]/4)));
+	}
 
-		return sum;
+	/** Return the current spline with the masses to the left of each of its support points,
+	  * computing them if necessary. The field is read once, so the result is consistent
+	  * even if another thread replaces it in the meantime.
+	  */
+	protected Cumulative get_cumulative()
+	{
+		Cumulative cum = cumulative;
+		MonotoneSpline s = spline;
+
+		if ( cum == null || cum.spline != s )
+		{
+			int n = s.x.length;
+			double[] c = new double[n];
+
+			for ( int i = 0; i < n-1; i++ )
+				c[i+1] = c[i] + interval_mass( s, i, s.x[i+1] - s.x[i] );
+
+			cum = new Cumulative( s, c );
+			cumulative = cum;
+		}
+
+		return cum;
 	}
 
 	/** Computes the log of the prior probability of the parameters of
@@ -122,12 +216,15 @@ public class SplineDensity extends AbstractDistribution implements Translatable
 		throw new Exception( "SplineDensity.log_prior: not implemented." );
 	}
 
-	/** Return an instance of a random variable from this distribution.
-	  * This method is not implemented.
+	/** Return an instance of a random variable from this distribution,
+	  * by inverting the cumulative distribution function.
 	  */
 	public double[] random() throws Exception
 	{
-		throw new Exception( "SplineDensity.random: not implemented." );
+		Cumulative cum = get_cumulative();
+		double[] x = new double[1];
+		x[0] = inverse_cdf( cum, Math.random()*cum.masses[ cum.masses.length-1 ] );
+		return x;
 	}
 
 	/** Use data to modify the parameters of the distribution.
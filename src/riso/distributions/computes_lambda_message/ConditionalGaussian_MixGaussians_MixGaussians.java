@@ -0,0 +1,63 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.distributions.computes_lambda_message;
+import riso.distributions.*;
+import riso.general.*;
+
+/** Lambda message helper for a conditional Gaussian with one-dimensional child and parents,
+  * when the lambda and pi messages are Gaussian mixtures. The child is a linear combination
+  * of the parents plus Gaussian noise, so the lambda message is a Gaussian mixture; it is computed by
+  * <tt>LinearCombination_MixGaussians_MixGaussians.compute_lambda_message0</tt>.
+  * If the child or some parent has more than one dimension, or there are too many combinations of
+  * components, the lambda message is computed by numerical integration.
+  */
+public class ConditionalGaussian_MixGaussians_MixGaussians implements LambdaMessageHelper
+{
+    public static SeqTriple[] description_array;
+
+    public SeqTriple[] description() { return description_array; }
+
+	/** Returns a description of the sequences of distributions accepted
+	  * by this helper -- namely one <tt>ConditionalGaussian</tt>
+	  * followed by one <tt>MixGaussians</tt>, followed by any number of
+	  * <tt>MixGaussians</tt>.
+	  */
+	static
+	{
+		SeqTriple[] s = new SeqTriple[3];
+		s[0] = new SeqTriple( "riso.distributions.ConditionalGaussian", 1 );
+		s[1] = new SeqTriple( "riso.distributions.MixGaussians", 1 );
+		s[2] = new SeqTriple( "riso.distributions.MixGaussians", -1 );
+		description_array = s;
+	}
+
+	public Distribution compute_lambda_message( ConditionalDistribution px_in, Distribution lambda, Distribution[] pi_messages ) throws Exception
+	{
+		ConditionalGaussian px = (ConditionalGaussian) px_in;
+		Distribution lambda_message = null;
+
+		if ( px.ndimensions_child() == 1 && px.ndimensions_parent() == pi_messages.length )
+			lambda_message = LinearCombination_MixGaussians_MixGaussians.compute_lambda_message0( px.a_mu_1c2[0], px.b_mu_1c2[0], px.Sigma_1c2[0][0], lambda, pi_messages );
+
+		if ( lambda_message == null )
+			return (new AbstractConditionalDistribution_AbstractDistribution_AbstractDistribution()).compute_lambda_message( px_in, lambda, pi_messages );
+		else
+			return lambda_message;
+	}
+}
@@ -80,7 +80,7 @@ public class IntegralCache extends AbstractDistribution implements Callback_1d,
 			return result;
 		}
 
-		class x_Integrand implements Callback_1d, Serializable
+		class x_Integrand implements BatchCallback_1d, Serializable
 		{
 			Integral_wrt_u integral_wrt_u;
 			double[] u, u1 = new double[1], x1 = new double[1], xu = new double[2];
@@ -94,8 +94,24 @@ public class IntegralCache extends AbstractDistribution implements Callback_1d,
 				u_Integrand u_integrand;
 				IntegralHelper ih;
 
-				class u_Integrand implements Callback_nd, Serializable
+				class u_Integrand implements ReplicableCallback_nd, BatchCallback_nd, Serializable
 				{
+					/** Scratch array for the argument of a pi message, and the value
+					  * of the child set by <tt>Integral_wrt_u.f</tt>. These are shared
+					  * with the enclosing objects, except in a replica.
+					  */
+					double[] u1_arg = u1, x1_arg = x1;
+
+					/** Return an integrand with its own scratch array and a copy of the current value of the child.
+					  */
+					public Callback_nd replicate()
+					{
+						u_Integrand replica = new u_Integrand();
+						replica.u1_arg = new double[1];
+						replica.x1_arg = (double[]) x1.clone();
+						return replica;
+					}
+
 					/** The argument <tt>u</tt> contains ALL the parent
 					  * values, including the one corresponding to the
 					  * parent to which we are sending this lambda message. 
@@ -108,18 +124,50 @@ public class IntegralCache extends AbstractDistribution implements Callback_1d,
 						{
 							if ( pi_messages[i] == null || pi_messages[i] instanceof Delta ) continue;
 
-							u1[0] = u[i];
-							double pp = pi_messages[i].p( u1 );
-// System.err.print( "pimsg["+i+"].p("+u1[0]+")="+pp+"," );
+							u1_arg[0] = u[i];
+							double pp = pi_messages[i].p( u1_arg );
+// System.err.print( "pimsg["+i+"].p("+u1_arg[0]+")="+pp+"," );
 							pi_product *= pp;
 						}
 
-						double pxup = pxuuu.p( x1, u );
+						double pxup = pxuuu.p( x1_arg, u );
 						double pp = pxup * pi_product;
 // System.err.print( "  pxuuu.p("+x1[0]+"|" ); for(int i=0;i<u.length;i++) System.err.print( u[i]+"," );
 // System.err.println( ")="+pxup+"; return "+pp );
 						return pp;
 					}
+
+					/** Scratch arrays for <tt>f_batch</tt>, enlarged as needed.
+					  */
+					double[][] ui_batch = new double[0][];
+					double[] pi_batch = new double[0];
+
+					/** Compute the same values as <tt>f</tt> for each of the points <tt>u[0]</tt>
+					  * through <tt>u[n-1]</tt>. Each pi message computes its densities for all of
+					  * the points at once.
+					  */
+					public void f_batch( double[][] u, double[] fx, int n ) throws Exception
+					{
+						if ( ui_batch.length < n )
+						{
+							ui_batch = new double[n][1];
+							pi_batch = new double[n];
+						}
+
+						for ( int j = 0; j < n; j++ ) fx[j] = 1;
+
+						for ( int i = 0; i < pi_messages.length; i++ )
+						{
+							if ( pi_messages[i] == null || pi_messages[i] instanceof Delta ) continue;
+
+							for ( int j = 0; j < n; j++ ) ui_batch[j][0] = u[j][i];
+							pi_messages[i].p_batch( ui_batch, pi_batch, n );
+							for ( int j = 0; j < n; j++ ) fx[j] *= pi_batch[j];
+						}
+
+						for ( int j = 0; j < n; j++ )
+							fx[j] = pxuuu.p( x1_arg, u[j] ) * fx[j];
+					}
 				}
 
 				/** Search the list of <tt>pi_messages</tt> to see which
@@ -166,14 +214,14 @@ public class IntegralCache extends AbstractDistribution implements Callback_1d,
 					skip_integration[ special_u_index ] = true;
 
 					u_integrand = new u_Integrand();
-					ih = IntegralHelperFactory.make_helper( u_integrand, pxuuu_a, pxuuu_b, u_is_discrete, skip_integration );
+					ih = IntegralHelperFactory.make_helper( u_integrand, pxuuu_a, pxuuu_b, u_is_discrete, skip_integration, pi_messages );
 
 System.err.println( "Integral_wrt_u: special_u_index: "+special_u_index );
 // System.err.println( "\tfrom "+child.get_name()+" to "+parents[special_u_index].get_name() );
 for ( int j = 0; j < pi_messages.length; j++ )
 if ( pi_messages[j] != null ) {
 System.err.print( "\tpxuuu_a["+j+"]: "+pxuuu_a[j]+" pxuuu_b["+j+"]: "+pxuuu_b[j] );
-System.err.print( "; "+parents[j].get_name()+(u_is_discrete[j]?" is discrete.":" is NOT discrete.") );
+System.err.print( "; "+(parents == null ? "parent "+j : parents[j].get_name())+(u_is_discrete[j]?" is discrete.":" is NOT discrete.") );
 System.err.println( (skip_integration[j]?" (do NOT integrate)":" (do integrate)") ); }
 				}
 					
@@ -221,6 +269,28 @@ System.err.println( (skip_integration[j]?" (do NOT integrate)":" (do integrate)"
 				double r = lpx*iwufxu;
 				return r;
 			}
+
+			/** Scratch array for <tt>f_batch</tt>, enlarged as needed.
+			  */
+			double[][] xb = new double[0][];
+
+			/** Compute the same values as <tt>f</tt> for each of <tt>x[0]</tt> through <tt>x[n-1]</tt>.
+			  * The lambda message computes its densities for all of the points at once.
+			  */
+			public void f_batch( double[] x, double[] fx, int n ) throws Exception
+			{
+				if ( xb.length < n ) xb = new double[n][1];
+				for ( int j = 0; j < n; j++ ) xb[j][0] = x[j];
+				lambda.p_batch( xb, fx, n );
+
+				for ( int j = 0; j < n; j++ )
+				{
+					x1[0] = x[j];
+					xu[0] = x[j];
+					xu[1] = special_u;
+					fx[j] = fx[j] * integral_wrt_u.f( xu );
+				}
+			}
 		}
 
 		Integral_wrt_x( ConditionalDistribution pxuuu, Distribution lambda, Distribution[] pi_messages ) throws Exception
@@ -335,11 +405,11 @@ System.err.println( "\t\t["+merged[j][0]+", "+merged[j][1]+"]" );
 				// In 2 or more dimensions, use low discrepancy sequence to get parent values;
 				// otherwise (in 1 dimension) use ordinary pseudo-random numbers.
 
-				if ( quasi.length > 1 ) LowDiscrepancy.infaur( new boolean[2], quasi.length, ngenerate ); // IGNORE FLAGS !!!
+				FaureSequence sequence = quasi.length > 1 ? new FaureSequence( quasi.length ) : null;
 
 				for ( int i = 0; i < ngenerate; i++ )
 				{
-					if ( quasi.length > 1 ) LowDiscrepancy.gofaur(quasi);
+					if ( quasi.length > 1 ) sequence.next(quasi);
 					else if ( quasi.length == 1 ) quasi[0] = Math.random();
 					// else there is no need to generate parent values.
 
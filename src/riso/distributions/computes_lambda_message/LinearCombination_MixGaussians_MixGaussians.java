@@ -0,0 +1,217 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.distributions.computes_lambda_message;
+import riso.distributions.*;
+import riso.belief_nets.*;
+import riso.general.*;
+
+/** This class implements a lambda message helper for a linear combination
+  * of the parents, <tt>x = a[0] u[0] + ... + a[n-1] u[n-1] + offset</tt>, when the
+  * lambda and pi messages are Gaussian mixtures. The lambda message to <tt>u[k]</tt> is
+  * <pre>
+  *   \sum_{i,j_1,...} alpha_i beta_{j_1} ... N( m_i; a[k] u[k] + offset + \sum_{l \neq k} a[l] mu_{j_l},
+  *                          s_i^2 + \sum_{l \neq k} a[l]^2 sigma_{j_l}^2 )
+  * </pre>
+  * where the lambda message has weights <tt>alpha_i</tt>, means <tt>m_i</tt>, and standard deviations
+  * <tt>s_i</tt>, and the pi message from <tt>u[l]</tt> has weights <tt>beta_j</tt>, means <tt>mu_j</tt>,
+  * and standard deviations <tt>sigma_j</tt>. As a function of <tt>u[k]</tt>, each term is a Gaussian
+  * bump, so the lambda message is a Gaussian mixture, which is computed exactly, without any
+  * integration. The same formula with an additional variance term handles <tt>ConditionalGaussian</tt>;
+  * see <tt>ConditionalGaussian_MixGaussians_MixGaussians</tt>.
+  *
+  * <p> The number of components is the product of the numbers of components of the messages.
+  * Components with weight less than <tt>MIN_MIX_PROPORTION</tt> are dropped, and then the
+  * mixture is reduced to <tt>MixGaussians.MAX_NCOMPONENTS</tt> components by
+  * <tt>MixGaussians.reduce_mixture</tt>. If there would be more than
+  * <tt>MAX_NCOMBINATIONS</tt> components before that, the message is computed by numerical
+  * integration instead.
+  */
+public class LinearCombination_MixGaussians_MixGaussians implements LambdaMessageHelper
+{
+    public static SeqTriple[] description_array;
+
+    public SeqTriple[] description() { return description_array; }
+
+	public static double MIN_MIX_PROPORTION = 5e-3;
+	public static int MAX_NCOMBINATIONS = 100000;
+
+	/** Returns a description of the sequences of distributions accepted
+	  * by this helper -- namely one <tt>LinearCombination</tt>
+	  * followed by one <tt>MixGaussians</tt>, followed by any number of
+	  * <tt>MixGaussians</tt>.
+	  */
+	static
+	{
+		SeqTriple[] s = new SeqTriple[3];
+		s[0] = new SeqTriple( "riso.distributions.LinearCombination", 1 );
+		s[1] = new SeqTriple( "riso.distributions.MixGaussians", 1 );
+		s[2] = new SeqTriple( "riso.distributions.MixGaussians", -1 );
+		description_array = s;
+	}
+
+	public Distribution compute_lambda_message( ConditionalDistribution px_in, Distribution lambda, Distribution[] pi_messages ) throws Exception
+	{
+		LinearCombination px = (LinearCombination) px_in;
+
+		Distribution lambda_message = compute_lambda_message0( px.a, px.offset, 0, lambda, pi_messages );
+		if ( lambda_message == null )
+			return (new FunctionalRelation_AbstractDistribution_AbstractDistribution()).compute_lambda_message( px_in, lambda, pi_messages );
+		else
+			return lambda_message;
+	}
+
+	/** Compute the lambda message for <tt>x = a[0] u[0] + ... + a[n-1] u[n-1] + offset + e</tt>,
+	  * where <tt>e</tt> is Gaussian noise with mean zero and variance <tt>noise_variance</tt>.
+	  * The pi message from the parent to which the lambda message is sent is <tt>null</tt>;
+	  * each other message must be <tt>Gaussian</tt> (including <tt>GaussianDelta</tt>)
+	  * or <tt>MixGaussians</tt>.
+	  *
+	  * @return The lambda message, or <tt>null</tt> if there are too many combinations of components.
+	  */
+	public static Distribution compute_lambda_message0( double[] a, double offset, double noise_variance, Distribution lambda, Distribution[] pi_messages ) throws Exception
+	{
+		int special_i = -1;
+		for ( int i = 0; i < pi_messages.length; i++ )
+			if ( pi_messages[i] == null )
+			{
+				special_i = i;
+				break;
+			}
+
+		// If the special parent has no effect on x, the lambda message is flat.
+		if ( a[special_i] == 0 ) return new Noninformative();
+
+		MixGaussians[] mixes = new MixGaussians[ pi_messages.length ];
+		int n = 1;
+
+		for ( int i = 0; i < pi_messages.length; i++ )
+		{
+			if ( i == special_i ) mixes[i] = to_mixture( lambda );
+			else mixes[i] = to_mixture( pi_messages[i] );
+
+			n *= mixes[i].ncomponents();
+			if ( n > MAX_NCOMBINATIONS ) return null;
+		}
+
+		double ak = a[special_i];
+		double[] alpha = new double[n], mu = new double[n], sigma2 = new double[n];
+
+		for ( int c = 0; c < n; c++ )
+		{
+			// Figure out the component of each message corresponding to c.
+			// The special parent's slot is occupied by the lambda message.
+
+			double prod_alpha = 1, m = offset, s2 = noise_variance, m_lambda = 0;
+
+			int cc = c;
+			for ( int i = 0; i < mixes.length; i++ )
+			{
+				int j = cc % mixes[i].ncomponents();
+				cc /= mixes[i].ncomponents();
+
+				Distribution comp = mixes[i].components[j];
+				double mu_j = comp.expected_value(), sigma_j = comp.sqrt_variance();
+				prod_alpha *= mixes[i].mix_proportions[j];
+
+				if ( i == special_i )
+				{
+					m_lambda = mu_j;
+					s2 += sigma_j*sigma_j;
+				}
+				else
+				{
+					m += a[i]*mu_j;
+					s2 += a[i]*a[i]*sigma_j*sigma_j;
+				}
+			}
+
+			alpha[c] = prod_alpha;
+			mu[c] = (m_lambda - m)/ak;
+			sigma2[c] = s2/(ak*ak);
+		}
+
+		return make_mixture( alpha, mu, sigma2, n );
+	}
+
+	/** Construct a mixture from the weights, means, and variances of its components,
+	  * dropping the lightest components and reducing the rest.
+	  */
+	static Distribution make_mixture( double[] alpha, double[] mu, double[] sigma2, int n ) throws Exception
+	{
+		double sum = 0;
+		for ( int c = 0; c < n; c++ ) sum += alpha[c];
+
+		int[] order = order_by_weight( alpha, n );
+
+		int nkeep = 0;
+		while ( nkeep < n && (nkeep == 0 || alpha[ order[nkeep] ] >= MIN_MIX_PROPORTION*sum) )
+			++nkeep;
+
+		MixGaussians mix = new MixGaussians( 1, nkeep );
+		double sum_kept = 0;
+
+		for ( int i = 0; i < nkeep; i++ )
+		{
+			int c = order[i];
+			if ( sigma2[c] == 0 )
+				mix.components[i] = new GaussianDelta( mu[c] );
+			else
+				mix.components[i] = new Gaussian( mu[c], Math.sqrt(sigma2[c]) );
+			mix.mix_proportions[i] = alpha[c];
+			sum_kept += alpha[c];
+		}
+
+		for ( int i = 0; i < nkeep; i++ ) mix.mix_proportions[i] /= sum_kept;
+		mix.reduce_mixture( MixGaussians.MAX_NCOMPONENTS, MixGaussians.REDUCTION_KL_EPSILON );
+
+if (Global.debug > 1) System.err.println( "LinearCombination_MixGaussians_MixGaussians.make_mixture: kept "+nkeep+" of "+n+" components, reduced to "+mix.ncomponents()+"." );
+
+		if ( mix.ncomponents() == 1 ) return mix.components[0];
+		else return mix;
+	}
+
+	/** Return the indices <tt>0, ..., n-1</tt> ordered by decreasing weight <tt>alpha</tt>.
+	  * Components of equal weight stay in their original order.
+	  */
+	static int[] order_by_weight( double[] alpha, int n )
+	{
+		int[] order = new int[n];
+		for ( int c = 0; c < n; c++ )
+		{
+			int i = c;
+			while ( i > 0 && alpha[ order[i-1] ] < alpha[c] )
+			{
+				order[i] = order[i-1];
+				--i;
+			}
+			order[i] = c;
+		}
+		return order;
+	}
+
+	/** Return the argument if it is a <tt>MixGaussians</tt>, or promote it to a
+	  * 1-component mixture if it is a <tt>Gaussian</tt>.
+	  */
+	static MixGaussians to_mixture( Distribution p )
+	{
+		if ( p instanceof MixGaussians ) return (MixGaussians) p;
+		else if ( p instanceof Gaussian ) return new MixGaussians( (Gaussian) p );
+		else throw new IllegalArgumentException( "LinearCombination_MixGaussians_MixGaussians.to_mixture: can't convert "+p.getClass() );
+	}
+}
@@ -0,0 +1,58 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.distributions.computes_lambda_message;
+import riso.distributions.*;
+import riso.general.*;
+
+/** Lambda message helper for a sum of parents, when the lambda and pi messages
+  * are Gaussian mixtures. A sum is a linear combination with all coefficients equal to 1,
+  * so this helper just calls <tt>LinearCombination_MixGaussians_MixGaussians.compute_lambda_message0</tt>.
+  */
+public class Sum_MixGaussians_MixGaussians implements LambdaMessageHelper
+{
+    public static SeqTriple[] description_array;
+
+    public SeqTriple[] description() { return description_array; }
+
+	/** Returns a description of the sequences of distributions accepted
+	  * by this helper -- namely one <tt>Sum</tt>
+	  * followed by one <tt>MixGaussians</tt>, followed by any number of
+	  * <tt>MixGaussians</tt>.
+	  */
+	static
+	{
+		SeqTriple[] s = new SeqTriple[3];
+		s[0] = new SeqTriple( "riso.distributions.Sum", 1 );
+		s[1] = new SeqTriple( "riso.distributions.MixGaussians", 1 );
+		s[2] = new SeqTriple( "riso.distributions.MixGaussians", -1 );
+		description_array = s;
+	}
+
+	public Distribution compute_lambda_message( ConditionalDistribution px_in, Distribution lambda, Distribution[] pi_messages ) throws Exception
+	{
+		double[] a = new double[ pi_messages.length ];
+		for ( int i = 0; i < a.length; i++ ) a[i] = 1;
+
+		Distribution lambda_message = LinearCombination_MixGaussians_MixGaussians.compute_lambda_message0( a, 0, 0, lambda, pi_messages );
+		if ( lambda_message == null )
+			return (new FunctionalRelation_AbstractDistribution_AbstractDistribution()).compute_lambda_message( px_in, lambda, pi_messages );
+		else
+			return lambda_message;
+	}
+}
@@ -252,10 +252,10 @@ System.err.println( "\t"+"merged_support["+i+"]: "+merged_support[i][0]+", "+mer
 	{
 		IntegralHelper ih;
 
-		public Integral()
+		public Integral() throws Exception
 		{
 			integrand = this. new Integrand();
-			ih = IntegralHelperFactory.make_helper( integrand, a, b, is_discrete, skip_integration );
+			ih = IntegralHelperFactory.make_helper( integrand, a, b, is_discrete, skip_integration, pi_messages );
 		}
 
 		public double f( double x ) throws Exception
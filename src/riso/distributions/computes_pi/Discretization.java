@@ -0,0 +1,157 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.distributions.computes_pi;
+import riso.distributions.*;
+import riso.belief_nets.*;
+
+/** This class contains methods to discretize one-dimensional distributions
+  * onto evenly-spaced grids, for numerical convolution. Each distribution
+  * is represented by the masses of cells of width <tt>dx</tt> centered on grid points
+  * <tt>x0, x0+dx, x0+2dx, ...</tt>, so that the masses sum to one (up to the mass outside
+  * the effective support) however coarse the grid.
+  *
+  * <p> The masses are differences of the cumulative distribution function, if the
+  * distribution has one; otherwise the density is integrated over each cell by Simpson's rule.
+  * A distribution which is narrow compared to the grid spacing is represented by
+  * three masses, which have the same mean and variance as the distribution.
+  */
+public class Discretization
+{
+	/** The grid spacing is chosen so that the variance of the sum of the discretized
+	  * distributions differs from the variance of the sum by no more than this fraction.
+	  */
+	public static double VARIANCE_TOLERANCE = 1e-4;
+
+	/** Upper bound on the total number of grid points over all distributions.
+	  * If the grid spacing would require more points, it is increased.
+	  */
+	public static int MAX_NGRID = 1 << 16;
+
+	/** Choose a grid spacing for the sum of the distributions with the
+	  * given standard deviations and support widths.
+	  * Discretizing a distribution into cells of width <tt>dx</tt> increases its
+	  * variance by about <tt>dx^2/12</tt>, so the variance of the sum of <tt>k</tt> discretized
+	  * distributions is in error by about <tt>k dx^2/12</tt>; <tt>dx</tt> is chosen to make
+	  * that a fraction <tt>VARIANCE_TOLERANCE</tt> of the variance of the sum.
+	  * In addition, the widest distribution is represented by at least <tt>ngrid_minimum</tt>
+	  * points over 6 standard deviations, and the total number of points over
+	  * all the distributions is at most <tt>MAX_NGRID</tt>.
+	  */
+	public static double grid_spacing( double[] s, double[] width, int ngrid_minimum )
+	{
+		double sum_s2 = 0, s_max = 0, sum_width = 0;
+		for ( int i = 0; i < s.length; i++ )
+		{
+			sum_s2 += s[i]*s[i];
+			if ( s[i] > s_max ) s_max = s[i];
+			sum_width += width[i];
+		}
+
+		double dx = Math.sqrt( 12*VARIANCE_TOLERANCE*sum_s2/s.length );
+		dx = Math.min( dx, 6*s_max/ngrid_minimum );
+		dx = Math.max( dx, sum_width/MAX_NGRID );
+
+		return dx;
+	}
+
+	/** Discretize a distribution, with standard deviation <tt>s</tt> and effective support
+	  * <tt>support</tt>, onto a grid with spacing <tt>dx</tt>.
+	  * If <tt>s</tt> is less than <tt>dx</tt>,
+	  * the distribution is represented by three masses with the same mean and variance
+	  * (see <tt>moment_matched</tt>); otherwise the masses of the cells over the effective
+	  * support are computed (see <tt>cell_masses</tt>).
+	  *
+	  * @param x0 The location of the first grid point is returned in <tt>x0[0]</tt>.
+	  * @return The masses of the cells.
+	  */
+	public static double[] discretize( Distribution d, double s, double[] support, double dx, double[] x0 ) throws Exception
+	{
+		if ( s < dx )
+			return moment_matched( d.expected_value(), s*s, dx, x0 );
+
+		// Round up the number of points in the support interval, since length may not be an
+		// integer multiple of dx.
+
+		int n = 2 + (int) ((support[1]-support[0])/dx);
+		x0[0] = support[0];
+
+		return cell_masses( d, x0[0], dx, n );
+	}
+
+	/** Compute the masses of the cells <tt>[x0+(j-1/2)dx, x0+(j+1/2)dx]</tt>,
+	  * for <tt>j = 0, ..., n-1</tt>. If the distribution doesn't have a cumulative
+	  * distribution function, integrate the density over each cell by Simpson's rule.
+	  */
+	public static double[] cell_masses( Distribution d, double x0, double dx, int n ) throws Exception
+	{
+		double[] mass = new double[n];
+
+		try
+		{
+			double F0 = d.cdf( x0 - dx/2 );
+			for ( int j = 0; j < n; j++ )
+			{
+				double F1 = d.cdf( x0 + (j+0.5)*dx );
+				mass[j] = F1 - F0;
+				F0 = F1;
+			}
+
+			return mass;
+		}
+		catch (Exception e)
+		{
+if (Global.debug > 1) System.err.println( "Discretization.cell_masses: no cdf for "+d.getClass()+"; integrate density." );
+		}
+
+		double[] x = new double[1];
+		x[0] = x0 - dx/2;
+		double p0 = d.p(x);
+
+		for ( int j = 0; j < n; j++ )
+		{
+			x[0] = x0 + j*dx;
+			double pm = d.p(x);
+			x[0] = x0 + (j+0.5)*dx;
+			double p1 = d.p(x);
+
+			mass[j] = (p0 + 4*pm + p1)*dx/6;
+			p0 = p1;
+		}
+
+		return mass;
+	}
+
+	/** Represent a distribution with mean <tt>m</tt> and variance <tt>v</tt>, which must
+	  * not exceed <tt>dx^2</tt>, by masses <tt>w, 1-2w, w</tt> at <tt>m-dx, m, m+dx</tt>,
+	  * where <tt>w = v/(2 dx^2)</tt>, which has the same mean and variance.
+	  * A distribution with zero variance is represented by a single mass at <tt>m</tt>.
+	  */
+	public static double[] moment_matched( double m, double v, double dx, double[] x0 )
+	{
+		if ( v == 0 )
+		{
+			x0[0] = m;
+			return new double[] { 1 };
+		}
+
+		double w = v/(2*dx*dx);
+		x0[0] = m - dx;
+		return new double[] { w, 1-2*w, w };
+	}
+}
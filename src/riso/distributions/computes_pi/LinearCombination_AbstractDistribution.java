@@ -0,0 +1,145 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.distributions.computes_pi;
+import java.util.*;
+import riso.distributions.*;
+import riso.general.*;
+
+/** @see PiHelper
+  */
+public class LinearCombination_AbstractDistribution implements PiHelper
+{
+    public static SeqTriple[] description_array;
+
+    public SeqTriple[] description() { return description_array; }
+
+	/** Returns a description of the sequences of distributions accepted
+	  * by this helper -- namely one <tt>LinearCombination</tt>
+	  * followed by any number of <tt>AbstractDistribution</tt>.
+	  */
+	static
+	{
+		SeqTriple[] s = new SeqTriple[2];
+		s[0] = new SeqTriple( "riso.distributions.LinearCombination", 1 );
+		s[1] = new SeqTriple( "riso.distributions.AbstractDistribution", -1 );
+		description_array = s;
+	}
+
+	/** Rescale each pi message by the corresponding coefficient, and hand the
+	  * rescaled messages and the offset (as a <tt>GaussianDelta</tt>) over to
+	  * <tt>Sum_AbstractDistribution</tt>. Gaussians and mixtures of Gaussians
+	  * are rescaled exactly, so they are still handled as special cases there;
+	  * other messages are wrapped in a <tt>ScaledDensity</tt>. A <tt>ScaledDensity</tt>
+	  * is never returned: if it is the only message and there is no offset, so that
+	  * there's nothing to convolve it with, it is discretized into a <tt>SplineDensity</tt>.
+	  */
+	public Distribution compute_pi( ConditionalDistribution py_in, Distribution[] pi_messages ) throws Exception
+	{
+		LinearCombination py = (LinearCombination) py_in;
+		Vector scaled = new Vector();
+
+		for ( int i = 0; i < pi_messages.length; i++ )
+		{
+			double a = py.a[i];
+			if ( a == 0 ) continue;
+
+			if ( pi_messages[i] instanceof Gaussian )
+			{
+				double mu = pi_messages[i].expected_value(), sigma = pi_messages[i].sqrt_variance();
+				if ( sigma == 0 )
+					scaled.addElement( new GaussianDelta( mu*a ) );
+				else
+					scaled.addElement( new Gaussian( mu*a, sigma*Math.abs(a) ) );
+			}
+			else if ( pi_messages[i] instanceof MixGaussians )
+			{
+				MixGaussians pi_msg = (MixGaussians)pi_messages[i], pi_msg_scaled = new MixGaussians( 1, pi_msg.ncomponents() );
+				for ( int j = 0; j < pi_msg.ncomponents(); j++ )
+				{
+					double mu = pi_msg.components[j].expected_value(), sigma = pi_msg.components[j].sqrt_variance();
+					pi_msg_scaled.mix_proportions[j] = pi_msg.mix_proportions[j];
+					pi_msg_scaled.components[j] = new Gaussian( mu*a, sigma*Math.abs(a) );
+				}
+
+				scaled.addElement( pi_msg_scaled );
+			}
+			else
+				scaled.addElement( new ScaledDensity( pi_messages[i], a ) );
+		}
+
+		if ( scaled.size() == 1 && py.offset == 0 && scaled.elementAt(0) instanceof ScaledDensity )
+			return Sum_AbstractDistribution.numerical_convolution( scaled, 0 );
+
+		if ( py.offset != 0 || scaled.size() == 0 ) scaled.addElement( new GaussianDelta( py.offset ) );
+
+		Distribution[] scaled_messages = new Distribution[ scaled.size() ];
+		scaled.copyInto( scaled_messages );
+
+		return (new Sum_AbstractDistribution()).compute_pi( new Sum( scaled_messages.length ), scaled_messages );
+	}
+}
+
+/** The distribution of <tt>y = a x</tt>, given the distribution of <tt>x</tt>.
+  */
+class ScaledDensity extends AbstractDistribution
+{
+	Distribution d;
+	double a;
+
+	ScaledDensity( Distribution d, double a )
+	{
+		this.d = d;
+		this.a = a;
+	}
+
+	/** Compute the density function for <tt>y = a x</tt>, namely
+	  * <tt>p_x(y/a)/|a|</tt>.
+	  */
+	public double p( double[] x ) throws Exception
+	{
+		double[] x_over_a = new double[1];
+		x_over_a[0] = x[0]/a;
+		return d.p(x_over_a)/Math.abs(a);
+	}
+
+	public double cdf( double x ) throws Exception
+	{
+		if ( a > 0 ) return d.cdf( x/a );
+		else return 1 - d.cdf( x/a );
+	}
+
+	public double[] effective_support( double epsilon ) throws Exception
+	{
+		double[] supt = d.effective_support(epsilon);
+		double x0 = a*supt[0], x1 = a*supt[1];
+		supt[0] = Math.min( x0, x1 );
+		supt[1] = Math.max( x0, x1 );
+		return supt;
+	}
+
+	public double expected_value() throws Exception
+	{
+		return a*d.expected_value();
+	}
+
+	public double sqrt_variance() throws Exception
+	{
+		return Math.abs(a)*d.sqrt_variance();
+	}
+}
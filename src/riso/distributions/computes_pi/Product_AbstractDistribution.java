@@ -186,6 +186,14 @@ class LogDensity extends AbstractDistribution
 		return px;
 	}
 
+	/** Compute the cumulative distribution function for <tt>y = log(x)</tt>, namely
+	  * <tt>F_x(exp(y))</tt>.
+	  */
+	public double cdf( double x ) throws Exception
+	{
+		return d.cdf( Math.exp(x) );
+	}
+
 	/** Find the effective support of the underlying distribution, and log-transform it.
 	  */
 	public double[] effective_support( double epsilon ) throws Exception
@@ -81,6 +81,11 @@ class ReflectedDensity extends AbstractDistribution
 		return d.p(negx);
 	}
 
+	public double cdf( double x ) throws Exception
+	{
+		return 1 - d.cdf(-x);
+	}
+
 	public double[] effective_support( double epsilon ) throws Exception
 	{
 		double[] supt = d.effective_support(epsilon);
@@ -20,13 +20,13 @@ package riso.distributions.computes_pi;
 import java.util.*;
 import riso.distributions.*;
 import riso.numerical.*;
+import riso.belief_nets.*;
 import riso.general.*;
 
 /** @see PiHelper
   */
 public class Sum_AbstractDistribution implements PiHelper
 {
-	public static double MIN_DISPERSION_RATIO = 1/50.0;
 	public static int NGRID_MINIMUM = 256;
 	public static double SUPPORT_EPSILON = 1e-4;
 
@@ -101,14 +101,12 @@ public class Sum_AbstractDistribution implements PiHelper
 	  * of values <tt>(x,p(x))</tt>. Finally, construct a spline using the table and return
 	  * the spline.
 	  *
-	  * <p> Unfortunately, the grid spacing will be governed by the least dispersion among
-	  * the input distributions, which may mean that the wider distributions are
-	  * discretized into bazillions of points. Now the distribution of the sum will
-	  * be dominated by the components with the largest dispersions, so there's little
-	  * accuracy gained by trying to accomodate the narrow distributions. So to avoid
-	  * enormous grids, we'll check the dispersion of each incoming distribution, and 
-	  * throw out any distributions which have a dispersion much smaller than the largest
-	  * dispersion.
+	  * <p> The grid spacing is chosen by <tt>Discretization.grid_spacing</tt> to bound the
+	  * error in the variance of the sum, and not by the least dispersion among the inputs,
+	  * so a narrow distribution doesn't cause the wide ones to be discretized into bazillions
+	  * of points. The narrow distributions are not thrown away; each is represented by a few
+	  * masses with the same mean and variance. Each grid value is the mass of a cell, computed
+	  * from the cumulative distribution function if there is one.
 	  *
 	  * <p> If there is only one element in <tt>distributions</tt>, that element is returned.
 	  *
@@ -116,86 +114,85 @@ public class Sum_AbstractDistribution implements PiHelper
 	  */
 	public static Distribution convolution( Vector distributions )
 	{
-		// Handle degenerate case.
-		if ( distributions.size() == 1 ) return (Distribution) distributions.elementAt(0);
+		return convolution( distributions, 0 );
+	}
 
-		double s_max = 0, s_min = Double.MAX_VALUE, endpt_fixup = 0;
-		double[] s = new double[ distributions.size() ];
-		int i = 0;
+	/** Compute the distribution of the sum of independent variables with the given
+	  * distributions, plus <tt>offset</tt>.
+	  * @see #convolution(Vector)
+	  */
+	public static Distribution convolution( Vector distributions, double offset )
+	{
+		// Handle degenerate case.
+		if ( distributions.size() == 1 && offset == 0 ) return (Distribution) distributions.elementAt(0);
 
-		for ( Enumeration e = distributions.elements(); e.hasMoreElements(); i++ )
-			try { if ( (s[i] = ((Distribution)e.nextElement()).sqrt_variance()) > s_max ) s_max = s[i]; }
-			catch (Exception ex) { System.err.println( "computes_pi.convolution: strange; "+ex ); }
+		return numerical_convolution( distributions, offset );
+	}
 
-		Vector wide_enough = new Vector();
-		for ( i = 0; i < s.length; i++ )
-			if ( s[i]/s_max > MIN_DISPERSION_RATIO )
-			{
-				wide_enough.addElement( distributions.elementAt(i) );
-				if ( s[i] < s_min ) s_min = s[i];	// find minimum over the wide enough distributions.
-			}
-			else
-			{
-				double m = 0;
-				try { m = ((Distribution)distributions.elementAt(i)).expected_value(); }
-				catch (Exception ex) { System.err.println( "computes_pi.convolution: strange; "+ex ); }
-				endpt_fixup += m;	
-			}
-		
-		double dx = 6*s_min/NGRID_MINIMUM, left_endpt = endpt_fixup, right_endpt = endpt_fixup;
-		
-		double[][] discretized = new double[ wide_enough.size() ][];
+	/** Like <tt>convolution</tt>, except that the result is always computed numerically;
+	  * a single distribution is discretized and represented by a <tt>SplineDensity</tt>
+	  * (or a <tt>GaussianDelta</tt> if it is a point mass).
+	  */
+	static Distribution numerical_convolution( Vector distributions, double offset )
+	{
+		int n = distributions.size();
+		double[] s = new double[n], width = new double[n];
+		double[][] support = new double[n][];
 
-		for ( i = 0; i < discretized.length; i++ )
+		for ( int i = 0; i < n; i++ )
 		{
-			Distribution d = (Distribution) wide_enough.elementAt(i);
-			double[] support, x = new double[1];
-			try { support = d.effective_support( SUPPORT_EPSILON ); }
+			Distribution d = (Distribution) distributions.elementAt(i);
+			try { support[i] = d.effective_support( SUPPORT_EPSILON ); }
 			catch (Exception e) { throw new RuntimeException( "computes_pi.convolution: failed to compute support: "+e ); }
 
-			// Round up the number of points in the support interval, since length may not be an
-			// integer multiple of dx.
-
-			int N = 1 + (int) ((support[1]-support[0])/dx);
-			discretized[i] = new double[N+1];
-			support[1] = support[0] + N*dx;		
+			width[i] = support[i][1] - support[i][0];
 
-			left_endpt += support[0];
-			right_endpt += support[1];
-
-			// In the following discretization, we just evaluate the density function at each point. !!!
-			// It would probably work better to compute the mass on each interval and work with that. !!!
-
-			for ( int j = 0; j < N; j++ )
+			try { s[i] = d.sqrt_variance(); }
+			catch (Exception e)
 			{
-				x[0] = support[0] + j*dx;
-				try { discretized[i][j] = d.p(x); }
-				catch (Exception e) { System.err.println( "computes_pi.convolution: p(x) failed; "+e ); }
+				// Make a rough guess from the support.
+				System.err.println( "computes_pi.convolution: strange; "+e );
+				s[i] = width[i]/6;
 			}
-
-			x[0] = support[1];
-			try { discretized[i][N] = d.p(x); }
-			catch (Exception e) { System.err.println( "computes_pi.convolution: p(x) failed; "+e ); }
 		}
-		
-		double[] conv = discretized[0];
-		for ( i = 1; i < discretized.length; i++ )
+
+		double dx = Discretization.grid_spacing( s, width, NGRID_MINIMUM ), left_endpt = offset;
+
+		if ( dx == 0 )
 		{
-			conv = Convolve.convolve( conv, discretized[i] );
+			// All the distributions are point masses; so is the sum.
+
+			double sum = offset;
+			for ( int i = 0; i < n; i++ ) sum += support[i][0];
+			return new GaussianDelta( sum );
+		}
+		double[][] discretized = new double[n][];
+		double[] x0 = new double[1];
 
-			// Normalize components to sum to 1; this avoids overflow.
+		for ( int i = 0; i < n; i++ )
+		{
+			try { discretized[i] = Discretization.discretize( (Distribution) distributions.elementAt(i), s[i], support[i], dx, x0 ); }
+			catch (Exception e) { throw new RuntimeException( "computes_pi.convolution: failed to discretize: "+e ); }
 
-			double sum = 0;
-			for ( int j = 0; j < conv.length; j++ )
-				sum += conv[j];
-			for ( int j = 0; j < conv.length; j++ )
-				conv[j] /= sum;
+			left_endpt += x0[0];
 		}
 
+		// Convolve all the discretized distributions at once. The result is scaled
+		// to sum to 1; the scale factor is of no interest, so ignore it.
+
+		double[] conv = Convolve.convolve( discretized, new double[1] );
+
+		// Convert masses to densities; clip the slightly negative values produced by
+		// rounding errors in the tails.
+
 		double[] x = new double[ conv.length ];
-		for ( i = 0; i < conv.length-1; i++ )
+		for ( int i = 0; i < conv.length; i++ )
+		{
 			x[i] = left_endpt + i*dx;
-		x[ conv.length-1 ] = right_endpt;
+			conv[i] = Math.max( conv[i], 0 )/dx;
+		}
+
+if (Global.debug > 0) System.err.println( "computes_pi.convolution: "+n+" distributions, dx: "+dx+", #grid points: "+conv.length );
 
 		try { return new SplineDensity( x, conv ); }
 		catch (Exception e) { throw new RuntimeException( "computes_pi.convolution: failed: "+e ); }
@@ -46,18 +46,25 @@ public class Sum_Discrete implements PiHelper
       */
 	public Distribution compute_pi( ConditionalDistribution py_in, Distribution[] pi_messages ) throws Exception
 	{
-        double[] p_convolution = null;
+        double[][] probabilities = new double[ pi_messages.length ][];
 
 		for ( int i = 0; i < pi_messages.length; i++ )
+			probabilities[i] = ((Discrete) pi_messages[i]).probabilities;
+
+        double[] p_convolution = Convolve.convolve( probabilities );
+
+		// The convolution may be computed by FFT, so tiny negative values may appear
+		// where the probability is zero; clip them and renormalize.
+
+		double sum = 0;
+		for ( int i = 0; i < p_convolution.length; i++ )
 		{
-			Discrete p = (Discrete) pi_messages[i];
-            
-            if ( p_convolution == null )
-                p_convolution = (double[]) p.probabilities.clone();
-            else
-                p_convolution = Convolve.convolve( p_convolution, p.probabilities );
+			if ( p_convolution[i] < 0 ) p_convolution[i] = 0;
+			sum += p_convolution[i];
 		}
 
+		for ( int i = 0; i < p_convolution.length; i++ ) p_convolution[i] /= sum;
+
 		Discrete pi = new Discrete();
         
         pi.probabilities = p_convolution;
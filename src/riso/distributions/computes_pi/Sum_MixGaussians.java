@@ -98,6 +98,8 @@ public class Sum_MixGaussians implements PiHelper
 			mix.mix_proportions[i] = prod_alpha;
 		}
 
+		mix.reduce_mixture( MixGaussians.MAX_NCOMPONENTS, MixGaussians.REDUCTION_KL_EPSILON );
+
 		if ( mix.ncomponents() == 1 ) return mix.components[0];
 		else return mix;
 	}
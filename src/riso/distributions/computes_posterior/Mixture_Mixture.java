@@ -104,7 +104,12 @@ public class Mixture_Mixture implements PosteriorHelper
 		for ( int i = 0; i < pxe.ncomponents(); i++ ) sum += pxe.mix_proportions[i];
 		for ( int i = 0; i < pxe.ncomponents(); i++ ) pxe.mix_proportions[i] /= sum;
 
-		try { pxe = MixGaussians.convert_mixture(pxe); }
+		try
+		{
+			MixGaussians pxe_mog = MixGaussians.convert_mixture(pxe);
+			pxe_mog.reduce_mixture( MixGaussians.MAX_NCOMPONENTS, MixGaussians.REDUCTION_KL_EPSILON );
+			pxe = pxe_mog;
+		}
 		catch (IllegalArgumentException e) {} // eat it; posterior has some non-Gaussian component -- that's OK.
 
 		if ( pxe.components.length == 1 )
@@ -0,0 +1,30 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+
+/** A callback to a function of a multi-dimensional argument which can evaluate
+  * the function at many points in one call.
+  */
+public interface BatchCallback_nd extends Callback_nd
+{
+	/** Evaluate the function at <tt>x[0]</tt> through <tt>x[n-1]</tt> and store the
+	  * results in <tt>fx[0]</tt> through <tt>fx[n-1]</tt>.
+	  */
+	public void f_batch( double[][] x, double[] fx, int n ) throws Exception;
+}
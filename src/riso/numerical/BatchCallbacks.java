@@ -0,0 +1,47 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+
+/** Static methods for evaluating callbacks at many points, whether or not
+  * the callbacks implement the batch interfaces.
+  */
+public class BatchCallbacks
+{
+	/** Evaluate <tt>fn</tt> at <tt>x[0]</tt> through <tt>x[n-1]</tt>. If <tt>fn</tt> is
+	  * a <tt>BatchCallback_1d</tt>, it's called once; otherwise it's called for each point.
+	  */
+	public static void evaluate( Callback_1d fn, double[] x, double[] fx, int n ) throws Exception
+	{
+		if ( fn instanceof BatchCallback_1d )
+			((BatchCallback_1d)fn).f_batch( x, fx, n );
+		else
+			for ( int i = 0; i < n; i++ ) fx[i] = fn.f( x[i] );
+	}
+
+	/** Evaluate <tt>fn</tt> at <tt>x[0]</tt> through <tt>x[n-1]</tt>. If <tt>fn</tt> is
+	  * a <tt>BatchCallback_nd</tt>, it's called once; otherwise it's called for each point.
+	  */
+	public static void evaluate( Callback_nd fn, double[][] x, double[] fx, int n ) throws Exception
+	{
+		if ( fn instanceof BatchCallback_nd )
+			((BatchCallback_nd)fn).f_batch( x, fx, n );
+		else
+			for ( int i = 0; i < n; i++ ) fx[i] = fn.f( x[i] );
+	}
+}
@@ -79,56 +79,259 @@ public class Convolve
 		catch (Exception e) { e.printStackTrace(); }
 	}
 
+	/** Sequences no longer than this are convolved by direct summation.
+	  */
+	public static int DIRECT_LENGTH = 32;
+
+	/** If one sequence is at least this many times as long as the other, the convolution is
+	  * computed by overlap-add, i.e., the long sequence is cut into blocks which are convolved
+	  * separately with the short one.
+	  */
+	public static int OVERLAP_ADD_RATIO = 8;
+
 	/** Compute convolution of two sequences. The length of the two sequences need not be
 	  * the same, and the lengths need not be powers of two. The length of the output array
 	  * will be the length of <tt>x</tt> plus the length of <tt>y</tt>, less one.
+	  *
+	  * <p> If either sequence is short, the convolution is summed directly. Otherwise it is
+	  * computed by fast Fourier transforms on <tt>double</tt> arrays (<tt>FFT.transform</tt>),
+	  * padded to the next size which is a product of 2, 3, and 5. Since the data are real,
+	  * two sequences are transformed at once, one as the real part and one as the imaginary part.
 	  */
 	public static double[] convolve( double[] x, double[] y )
 	{
-		int Npadded = x.length+y.length, N = x.length+y.length-1;
+		double[] shorter = (x.length <= y.length ? x : y), longer = (x.length <= y.length ? y : x);
+
+		if ( shorter.length <= DIRECT_LENGTH )
+			return direct_convolve( longer, shorter );
+		else if ( longer.length >= OVERLAP_ADD_RATIO*shorter.length )
+			return overlap_add_convolve( longer, shorter );
+		else
+			return fft_convolve( x, y );
+	}
+
+	/** Compute the convolution by direct summation. This takes time proportional to
+	  * the product of the lengths.
+	  */
+	public static double[] direct_convolve( double[] x, double[] y )
+	{
+		double[] cxy = new double[ x.length+y.length-1 ];
 
-		if ( (1 << FFT.ilog2(Npadded)) != Npadded )
-			// Npadded is not a power of two; round up to next power of 2.
-			Npadded = 1 << (FFT.ilog2(Npadded)+1);
+		for ( int i = 0; i < x.length; i++ )
+		{
+			double xi = x[i];
+			for ( int j = 0; j < y.length; j++ )
+				cxy[i+j] += xi*y[j];
+		}
 
-		Complex[] xy = new Complex[ Npadded ];
+		return cxy;
+	}
 
-		for ( int i = 0; i < Npadded; i++ ) xy[i] = new Complex();
-		for ( int i = 0; i < x.length; i++ ) xy[i].real = x[i];
-		for ( int i = 0; i < y.length; i++ ) xy[i].imag = y[i];
+	/** Compute the convolution by one forward and one inverse transform.
+	  */
+	public static double[] fft_convolve( double[] x, double[] y )
+	{
+		int N = x.length+y.length-1, n = FFT.next_fast_size(N);
 
-		FFT.fft(xy);		// compute FFT on both columns at once.
+		double[] re = new double[n], im = new double[n], work_re = new double[n], work_im = new double[n];
+		System.arraycopy( x, 0, re, 0, x.length );
+		System.arraycopy( y, 0, im, 0, y.length );
 
-		// Compute product of FFT's of each column of data.
+		FFT.transform( re, im, work_re, work_im, n, false );	// compute FFT on both sequences at once.
 
-		Complex[] xx = new Complex[ Npadded ];
+		// Compute product of FFT's of each sequence; put it in the work arrays.
 
-		for ( int i = 0; i < Npadded; i++ )
+		for ( int i = 0; i < n; i++ )
 		{
-			// The FFT coefficient of the first column is (R1,I1), and 
+			// The FFT coefficient of the first sequence is (R1,I1), and 
 			// that of the second is (R2,-I2). This bit is taken from
 			// Brigham (1974), The Fast Fourier Transform, Figure 10-9.
 			
-			int i_reflect = (i == 0? 0: Npadded-i);
+			int i_reflect = (i == 0? 0: n-i);
+
+			double R1 = (re[i] + re[i_reflect])/2;
+			double I1 = (im[i] - im[i_reflect])/2;
+			double R2 = (im[i] + im[i_reflect])/2;
+			double I2 = (re[i] - re[i_reflect])/2;
+
+			work_re[i] = R1*R2 + I1*I2;
+			work_im[i] = -R1*I2 + I1*R2;
+		}
+
+		FFT.transform( work_re, work_im, re, im, n, true );	// inverse transform to obtain convolution.
+
+		double[] cxy = new double[N];
+		System.arraycopy( work_re, 0, cxy, 0, N );	// imaginary part is zero, up to rounding.
+
+		return cxy;
+	}
+
+	/** Compute the convolution of several sequences, <tt>x[0] * x[1] * ... * x[k-1]</tt>.
+	  * The length of the output array is the sum of the lengths less <tt>k-1</tt>.
+	  *
+	  * @see #convolve(double[][],double[])
+	  */
+	public static double[] convolve( double[][] x )
+	{
+		double[] log_scale = new double[1];
+		double[] cx = convolve( x, log_scale );
+
+		double scale = Math.exp( log_scale[0] );
+		for ( int i = 0; i < cx.length; i++ ) cx[i] *= scale;
+
+		return cx;
+	}
+
+	/** Compute the convolution of several sequences, scaled to avoid overflow.
+	  * Each sequence is divided by the sum of its absolute values before it is
+	  * convolved with the others, and the logarithm of the product of the divisors
+	  * is returned in <tt>log_scale[0]</tt>; the convolution is the returned array
+	  * times <tt>exp(log_scale[0])</tt>. If the sequences are nonnegative, the
+	  * returned array sums to 1.
+	  *
+	  * <p> With more than two sequences, each sequence is transformed once, at the
+	  * size of the final result (two at a time, as the real and imaginary parts),
+	  * the transforms are multiplied together, and the product is transformed back.
+	  * So the work is proportional to the number of sequences, instead of the
+	  * cost of <tt>k-1</tt> pairwise convolutions of ever longer sequences.
+	  * If the result is no longer than <tt>DIRECT_LENGTH</tt>, the sequences are instead
+	  * convolved one after another by direct summation, which is cheaper for short
+	  * sequences and doesn't introduce rounding noise (e.g. small negative values in
+	  * the convolution of nonnegative sequences).
+	  */
+	public static double[] convolve( double[][] x, double[] log_scale )
+	{
+		int k = x.length, N = 1;
+		double[][] y = new double[k][];
+		log_scale[0] = 0;
+
+		for ( int i = 0; i < k; i++ )
+		{
+			double sum = 0;
+			for ( int j = 0; j < x[i].length; j++ ) sum += Math.abs( x[i][j] );
+
+			y[i] = (double[]) x[i].clone();
+			if ( sum > 0 )
+			{
+				for ( int j = 0; j < y[i].length; j++ ) y[i][j] /= sum;
+				log_scale[0] += Math.log( sum );
+			}
+
+			N += x[i].length-1;
+		}
+
+		if ( k == 1 ) return y[0];
+		if ( k == 2 ) return convolve( y[0], y[1] );
+
+		if ( N <= DIRECT_LENGTH )
+		{
+			double[] cy = y[0];
+			for ( int i = 1; i < k; i++ ) cy = direct_convolve( cy, y[i] );
+			return cy;
+		}
+
+		int n = FFT.next_fast_size(N);
+
+		double[] prod_re = new double[n], prod_im = new double[n], re = new double[n], im = new double[n];
+		double[] work_re = new double[n], work_im = new double[n];
+		java.util.Arrays.fill( prod_re, 1 );
+
+		for ( int i = 0; i < k; i += 2 )
+		{
+			java.util.Arrays.fill( re, 0 );
+			java.util.Arrays.fill( im, 0 );
+			System.arraycopy( y[i], 0, re, 0, y[i].length );
+
+			if ( i+1 == k )
+			{
+				// Odd one out; transform it by itself.
+
+				FFT.transform( re, im, work_re, work_im, n, false );
+
+				for ( int f = 0; f < n; f++ )
+				{
+					double r = prod_re[f]*re[f] - prod_im[f]*im[f], s = prod_re[f]*im[f] + prod_im[f]*re[f];
+					prod_re[f] = r;
+					prod_im[f] = s;
+				}
+			}
+			else
+			{
+				System.arraycopy( y[i+1], 0, im, 0, y[i+1].length );
+				FFT.transform( re, im, work_re, work_im, n, false );
+
+				for ( int f = 0; f < n; f++ )
+				{
+					// Separate the transforms of the two sequences as in fft_convolve;
+					// multiply both into the product.
+
+					int f_reflect = (f == 0? 0: n-f);
 
-			double R1 = (xy[i].real + xy[i_reflect].real)/2;
-			double I1 = (xy[i].imag - xy[i_reflect].imag)/2;
-			double R2 = (xy[i].imag + xy[i_reflect].imag)/2;
-			double I2 = (xy[i].real - xy[i_reflect].real)/2;
+					double R1 = (re[f] + re[f_reflect])/2;
+					double I1 = (im[f] - im[f_reflect])/2;
+					double R2 = (im[f] + im[f_reflect])/2;
+					double I2 = (re[f] - re[f_reflect])/2;
 
-			// Multiply the coefficients to obtain the convolution.
+					double R12 = R1*R2 + I1*I2, I12 = -R1*I2 + I1*R2;
 
-			xx[i] = new Complex();
-			xx[i].real = R1*R2 + I1*I2;
-			xx[i].imag = -R1*I2 + I1*R2;
+					double r = prod_re[f]*R12 - prod_im[f]*I12, s = prod_re[f]*I12 + prod_im[f]*R12;
+					prod_re[f] = r;
+					prod_im[f] = s;
+				}
+			}
 		}
 
-		FFT.invfft(xx);	// inverse transform to obtain convolution.
+		FFT.transform( prod_re, prod_im, work_re, work_im, n, true );
+
+		double[] cx = new double[N];
+		System.arraycopy( prod_re, 0, cx, 0, N );
+
+		return cx;
+	}
+
+	/** Compute the convolution of a long sequence <tt>x</tt> and a short sequence <tt>h</tt> by
+	  * overlap-add. The transform of <tt>h</tt> is computed once; then blocks of <tt>x</tt> are
+	  * transformed two at a time, one as the real part and one as the imaginary part, multiplied
+	  * by the transform of <tt>h</tt>, and transformed back, which yields the convolution of each
+	  * block with <tt>h</tt> in the real and imaginary parts. These are added into the output.
+	  */
+	public static double[] overlap_add_convolve( double[] x, double[] h )
+	{
+		int N = x.length+h.length-1, m = h.length;
+		int n = FFT.next_fast_size( 4*m ), B = n-m+1;
+
+		double[] hre = new double[n], him = new double[n], re = new double[n], im = new double[n];
+		double[] work_re = new double[n], work_im = new double[n];
+
+		System.arraycopy( h, 0, hre, 0, m );
+		FFT.transform( hre, him, work_re, work_im, n, false );
 
 		double[] cxy = new double[N];
 
-		for ( int i = 0; i < cxy.length; i++ )
-			cxy[i] = xx[i].real;	// imaginary part is always zero.
+		for ( int b0 = 0; b0 < x.length; b0 += 2*B )
+		{
+			int b1 = b0+B, len0 = Math.min( B, x.length-b0 ), len1 = Math.max( 0, Math.min( B, x.length-b1 ) );
+
+			java.util.Arrays.fill( re, 0 );
+			java.util.Arrays.fill( im, 0 );
+			System.arraycopy( x, b0, re, 0, len0 );
+			if ( len1 > 0 ) System.arraycopy( x, b1, im, 0, len1 );
+
+			FFT.transform( re, im, work_re, work_im, n, false );
+
+			for ( int i = 0; i < n; i++ )
+			{
+				double r = re[i]*hre[i] - im[i]*him[i], s = re[i]*him[i] + im[i]*hre[i];
+				re[i] = r;
+				im[i] = s;
+			}
+
+			FFT.transform( re, im, work_re, work_im, n, true );
+
+			for ( int i = 0, i_end = Math.min( len0+m-1, N-b0 ); i < i_end; i++ ) cxy[b0+i] += re[i];
+			if ( len1 > 0 )
+				for ( int i = 0, i_end = Math.min( len1+m-1, N-b1 ); i < i_end; i++ ) cxy[b1+i] += im[i];
+		}
 
 		return cxy;
 	}
@@ -18,6 +18,7 @@
  */
 package riso.numerical;
 import java.io.*;
+import java.util.*;
 import riso.general.*;
 
 public class FFT
@@ -218,6 +219,295 @@ public class FFT
 		return pow;
 	}
 
+	/** Cosine and sine tables, <tt>cos(2 PI k/n)</tt> and <tt>sin(2 PI k/n)</tt> for
+	  * <tt>k = 0, ..., n-1</tt>, for each size <tt>n</tt> transformed so far, indexed by
+	  * <tt>Integer(n)</tt>. The tables are not modified after they are constructed.
+	  */
+	static Hashtable twiddle_tables = new Hashtable();
+
+	static double[][] get_twiddles( int n )
+	{
+		Integer key = Integer.valueOf(n);
+		double[][] t = (double[][]) twiddle_tables.get( key );
+
+		if ( t == null )
+		{
+			t = new double[2][n];
+			for ( int k = 0; k < n; k++ )
+			{
+				double a = 2*Math.PI*k/n;
+				t[0][k] = Math.cos(a);
+				t[1][k] = Math.sin(a);
+			}
+
+			twiddle_tables.put( key, t );
+		}
+
+		return t;
+	}
+
+	/** Returns the least integer not less than <tt>n</tt> which has no prime factors
+	  * other than 2, 3, and 5. Transforms of such sizes are computed by radix 2, 3, 4,
+	  * and 5 steps, and are about as fast as transforms of powers of 2.
+	  */
+	public static int next_fast_size( int n )
+	{
+		for ( int m = Math.max(n,1); ; m++ )
+		{
+			int r = m;
+			while ( r % 2 == 0 ) r /= 2;
+			while ( r % 3 == 0 ) r /= 3;
+			while ( r % 5 == 0 ) r /= 5;
+			if ( r == 1 ) return m;
+		}
+	}
+
+	/** Compute the complex discrete Fourier transform of the data <tt>(re[k],im[k])</tt>, 
+	  * <tt>k = 0, ..., n-1</tt>, in place. The forward transform is the same sum as computed
+	  * by <tt>fft</tt>, and the inverse is the same as computed by <tt>invfft</tt> (including the
+	  * factor <tt>1/n</tt>), but <tt>n</tt> need not be a power of 2. Work space is allocated
+	  * for each call; see the other form of <tt>transform</tt> to avoid that.
+	  */
+	public static void transform( double[] re, double[] im, int n, boolean inverse )
+	{
+		transform( re, im, new double[n], new double[n], n, inverse );
+	}
+
+	/** Compute the complex discrete Fourier transform of <tt>(re,im)</tt>, using
+	  * <tt>work_re</tt> and <tt>work_im</tt>, which must have at least <tt>n</tt> elements, as work space.
+	  * This is the self-sorting (Stockham) form of the mixed-radix Cooley-Tukey algorithm;
+	  * radix 4, 2, 3, and 5 steps are used when possible, and a general step otherwise,
+	  * so any <tt>n</tt> is allowed, but for speed, <tt>n</tt> should be a product of 2, 3, and 5.
+	  *
+	  * <p> After <tt>t</tt> steps, with radices <tt>p1, ..., pt</tt>, <tt>L = p1...pt</tt>, and
+	  * <tt>r = n/L</tt>, element <tt>f r + k</tt> of the current array is coefficient <tt>f</tt> of
+	  * the length <tt>L</tt> transform of the subsequence <tt>k, k+r, k+2r, ...</tt>. The next step,
+	  * with radix <tt>p</tt>, combines <tt>p</tt> such transforms into one of length <tt>L p</tt>.
+	  */
+	public static void transform( double[] re, double[] im, double[] work_re, double[] work_im, int n, boolean inverse )
+	{
+		if ( n <= 1 ) return;
+
+		double[][] tw = get_twiddles(n);
+		double[] c = tw[0], sn = tw[1];
+		double sign = inverse ? 1 : -1;
+
+		double[] are = re, aim = im, bre = work_re, bim = work_im;
+		int L = 1, r = n;
+
+		while ( r > 1 )
+		{
+			int p;
+			if ( r % 4 == 0 ) p = 4;
+			else if ( r % 2 == 0 ) p = 2;
+			else if ( r % 3 == 0 ) p = 3;
+			else if ( r % 5 == 0 ) p = 5;
+			else for ( p = 7; r % p != 0; p += 2 ) ;
+
+			int rp = r/p;
+
+			switch ( p )
+			{
+			case 2: radix2( are, aim, bre, bim, c, sn, sign, L, rp ); break;
+			case 3: radix3( are, aim, bre, bim, c, sn, sign, L, rp ); break;
+			case 4: radix4( are, aim, bre, bim, c, sn, sign, L, rp ); break;
+			case 5: radix5( are, aim, bre, bim, c, sn, sign, L, rp ); break;
+			default: radixp( are, aim, bre, bim, c, sn, sign, L, rp, p, n );
+			}
+
+			double[] t = are; are = bre; bre = t;
+			t = aim; aim = bim; bim = t;
+
+			L *= p;
+			r = rp;
+		}
+
+		if ( are != re )
+		{
+			System.arraycopy( are, 0, re, 0, n );
+			System.arraycopy( aim, 0, im, 0, n );
+		}
+
+		if ( inverse )
+		{
+			double scale = 1.0/n;
+			for ( int k = 0; k < n; k++ )
+			{
+				re[k] *= scale;
+				im[k] *= scale;
+			}
+		}
+	}
+
+	static void radix2( double[] are, double[] aim, double[] bre, double[] bim, double[] c, double[] sn, double sign, int L, int rp )
+	{
+		int r = 2*rp;
+		for ( int f = 0; f < L; f++ )
+		{
+			int in = f*r, out = f*rp, tw = f*rp;
+			double w1r = c[tw], w1i = sign*sn[tw];
+
+			for ( int k = 0; k < rp; k++ )
+			{
+				int i0 = in+k, i1 = i0+rp;
+				double x1r = are[i1]*w1r - aim[i1]*w1i, x1i = are[i1]*w1i + aim[i1]*w1r;
+
+				bre[out+k] = are[i0] + x1r;
+				bim[out+k] = aim[i0] + x1i;
+				bre[out+L*rp+k] = are[i0] - x1r;
+				bim[out+L*rp+k] = aim[i0] - x1i;
+			}
+		}
+	}
+
+	static void radix3( double[] are, double[] aim, double[] bre, double[] bim, double[] c, double[] sn, double sign, int L, int rp )
+	{
+		int r = 3*rp, stride = L*rp;
+		double h = sign*Math.sqrt(3)/2;
+
+		for ( int f = 0; f < L; f++ )
+		{
+			int in = f*r, out = f*rp, tw1 = f*rp, tw2 = 2*f*rp;
+			double w1r = c[tw1], w1i = sign*sn[tw1], w2r = c[tw2], w2i = sign*sn[tw2];
+
+			for ( int k = 0; k < rp; k++ )
+			{
+				int i0 = in+k, i1 = i0+rp, i2 = i1+rp;
+				double x0r = are[i0], x0i = aim[i0];
+				double x1r = are[i1]*w1r - aim[i1]*w1i, x1i = are[i1]*w1i + aim[i1]*w1r;
+				double x2r = are[i2]*w2r - aim[i2]*w2i, x2i = are[i2]*w2i + aim[i2]*w2r;
+
+				double tr = x1r + x2r, ti = x1i + x2i, ur = h*(x1r - x2r), ui = h*(x1i - x2i);
+				double mr = x0r - tr/2, mi = x0i - ti/2;
+
+				bre[out+k] = x0r + tr;
+				bim[out+k] = x0i + ti;
+				bre[out+stride+k] = mr - ui;
+				bim[out+stride+k] = mi + ur;
+				bre[out+2*stride+k] = mr + ui;
+				bim[out+2*stride+k] = mi - ur;
+			}
+		}
+	}
+
+	static void radix4( double[] are, double[] aim, double[] bre, double[] bim, double[] c, double[] sn, double sign, int L, int rp )
+	{
+		int r = 4*rp, stride = L*rp;
+
+		for ( int f = 0; f < L; f++ )
+		{
+			int in = f*r, out = f*rp, tw1 = f*rp, tw2 = 2*f*rp, tw3 = 3*f*rp;
+			double w1r = c[tw1], w1i = sign*sn[tw1], w2r = c[tw2], w2i = sign*sn[tw2], w3r = c[tw3], w3i = sign*sn[tw3];
+
+			for ( int k = 0; k < rp; k++ )
+			{
+				int i0 = in+k, i1 = i0+rp, i2 = i1+rp, i3 = i2+rp;
+				double x0r = are[i0], x0i = aim[i0];
+				double x1r = are[i1]*w1r - aim[i1]*w1i, x1i = are[i1]*w1i + aim[i1]*w1r;
+				double x2r = are[i2]*w2r - aim[i2]*w2i, x2i = are[i2]*w2i + aim[i2]*w2r;
+				double x3r = are[i3]*w3r - aim[i3]*w3i, x3i = are[i3]*w3i + aim[i3]*w3r;
+
+				double t0r = x0r + x2r, t0i = x0i + x2i, t1r = x0r - x2r, t1i = x0i - x2i;
+				double t2r = x1r + x3r, t2i = x1i + x3i, t3r = x1r - x3r, t3i = x1i - x3i;
+
+				// Multiply t3 by exp( sign i PI/2 ) == sign i.
+				double u3r = -sign*t3i, u3i = sign*t3r;
+
+				bre[out+k] = t0r + t2r;
+				bim[out+k] = t0i + t2i;
+				bre[out+stride+k] = t1r + u3r;
+				bim[out+stride+k] = t1i + u3i;
+				bre[out+2*stride+k] = t0r - t2r;
+				bim[out+2*stride+k] = t0i - t2i;
+				bre[out+3*stride+k] = t1r - u3r;
+				bim[out+3*stride+k] = t1i - u3i;
+			}
+		}
+	}
+
+	static void radix5( double[] are, double[] aim, double[] bre, double[] bim, double[] c, double[] sn, double sign, int L, int rp )
+	{
+		int r = 5*rp, stride = L*rp;
+		double c1 = Math.cos(2*Math.PI/5), c2 = Math.cos(4*Math.PI/5), s1 = sign*Math.sin(2*Math.PI/5), s2 = sign*Math.sin(4*Math.PI/5);
+
+		for ( int f = 0; f < L; f++ )
+		{
+			int in = f*r, out = f*rp, tw1 = f*rp, tw2 = 2*f*rp, tw3 = 3*f*rp, tw4 = 4*f*rp;
+			double w1r = c[tw1], w1i = sign*sn[tw1], w2r = c[tw2], w2i = sign*sn[tw2];
+			double w3r = c[tw3], w3i = sign*sn[tw3], w4r = c[tw4], w4i = sign*sn[tw4];
+
+			for ( int k = 0; k < rp; k++ )
+			{
+				int i0 = in+k, i1 = i0+rp, i2 = i1+rp, i3 = i2+rp, i4 = i3+rp;
+				double x0r = are[i0], x0i = aim[i0];
+				double x1r = are[i1]*w1r - aim[i1]*w1i, x1i = are[i1]*w1i + aim[i1]*w1r;
+				double x2r = are[i2]*w2r - aim[i2]*w2i, x2i = are[i2]*w2i + aim[i2]*w2r;
+				double x3r = are[i3]*w3r - aim[i3]*w3i, x3i = are[i3]*w3i + aim[i3]*w3r;
+				double x4r = are[i4]*w4r - aim[i4]*w4i, x4i = are[i4]*w4i + aim[i4]*w4r;
+
+				double t1r = x1r + x4r, t1i = x1i + x4i, t2r = x2r + x3r, t2i = x2i + x3i;
+				double t3r = x1r - x4r, t3i = x1i - x4i, t4r = x2r - x3r, t4i = x2i - x3i;
+
+				double a1r = x0r + c1*t1r + c2*t2r, a1i = x0i + c1*t1i + c2*t2i;
+				double a2r = x0r + c2*t1r + c1*t2r, a2i = x0i + c2*t1i + c1*t2i;
+				double b1r = s1*t3r + s2*t4r, b1i = s1*t3i + s2*t4i;
+				double b2r = s2*t3r - s1*t4r, b2i = s2*t3i - s1*t4i;
+
+				// Output g is a + i b for g = 1, 2, and a - i b for g = 4, 3.
+
+				bre[out+k] = x0r + t1r + t2r;
+				bim[out+k] = x0i + t1i + t2i;
+				bre[out+stride+k] = a1r - b1i;
+				bim[out+stride+k] = a1i + b1r;
+				bre[out+2*stride+k] = a2r - b2i;
+				bim[out+2*stride+k] = a2i + b2r;
+				bre[out+3*stride+k] = a2r + b2i;
+				bim[out+3*stride+k] = a2i - b2r;
+				bre[out+4*stride+k] = a1r + b1i;
+				bim[out+4*stride+k] = a1i - b1r;
+			}
+		}
+	}
+
+	/** General radix step; costs <tt>p^2</tt> complex multiplications per butterfly.
+	  */
+	static void radixp( double[] are, double[] aim, double[] bre, double[] bim, double[] c, double[] sn, double sign, int L, int rp, int p, int n )
+	{
+		int r = p*rp, stride = L*rp, np = n/p;
+		double[] xr = new double[p], xi = new double[p];
+
+		for ( int f = 0; f < L; f++ )
+		{
+			int in = f*r, out = f*rp;
+
+			for ( int k = 0; k < rp; k++ )
+			{
+				for ( int s = 0; s < p; s++ )
+				{
+					int i = in+s*rp+k, tw = s*f*rp;
+					double wr = c[tw], wi = sign*sn[tw];
+					xr[s] = are[i]*wr - aim[i]*wi;
+					xi[s] = are[i]*wi + aim[i]*wr;
+				}
+
+				for ( int g = 0; g < p; g++ )
+				{
+					double yr = 0, yi = 0;
+					for ( int s = 0; s < p; s++ )
+					{
+						int tw = ((s*g) % p)*np;
+						double wr = c[tw], wi = sign*sn[tw];
+						yr += xr[s]*wr - xi[s]*wi;
+						yi += xr[s]*wi + xi[s]*wr;
+					}
+
+					bre[out+g*stride+k] = yr;
+					bim[out+g*stride+k] = yi;
+				}
+			}
+		}
+	}
+
 	/** Read some data and apply the FFT or inverse FFT, as specified.
 	  */
 	public static void main( String[] args )
@@ -0,0 +1,91 @@
+package riso.numerical;
+
+/** Faure low-discrepancy sequence. This is the generator of <tt>LowDiscrepancy.infaur</tt>
+  * and <tt>LowDiscrepancy.gofaur</tt>, translated from <tt>http://www.netlib.org/toms/647</tt>:
+  * Bennett L. Fox, "Algorithm 647: Implementation and Relative Efficiency of Quasirandom Sequence Generators",
+  * ACM Transactions on Mathematical Software, vol. 12, no. 4 (December, 1986), pp 362--376,
+  * with the state kept in the instance instead of static variables. Point 0 of this sequence
+  * is the first point returned by <tt>gofaur</tt>; as in Algorithm 647, the first <tt>q^4-1</tt>
+  * points of the Faure sequence in base <tt>q</tt> are omitted.
+  *
+  * <p> The base is the smallest prime which is at least as large as the dimension,
+  * and 2 for a 1-dimensional sequence. The dimension can be at most 40, and the
+  * number of base <tt>q</tt> digits in the index of a point can be at most 20.
+  *
+  * <p> This file is distributed under the terms of the ACM Software Copyright and License Agreement.
+  * A copy of the license agreement, <tt>ACM-LICENSE.html</tt>, is included with the RISO distribution.
+  */
+public class FaureSequence extends LowDiscrepancySequence
+{
+	static final int MAX_DIGITS = 20;
+
+	/** Base of the sequence.
+	  */
+	int qs;
+
+	/** Index in the full Faure sequence of point 0 of this sequence.
+	  */
+	long offset;
+
+	double rqs;
+
+	/** Binomial coefficients modulo <tt>qs</tt>. Not modified after construction,
+	  * so copies of this generator share it.
+	  */
+	int[][] coef;
+
+	public FaureSequence( int dimension )
+	{
+		if ( dimension < 1 || dimension > 40 ) throw new IllegalArgumentException( "FaureSequence: "+dimension+" is a bad number of dimensions; must be 1 through 40." );
+
+		this.dimension = dimension;
+		qs = dimension == 1 ? 2 : LowDiscrepancy.primes[ dimension-1 ];
+		offset = (long)qs*qs*qs*qs - 1;
+		rqs = 1.0/qs;
+
+		coef = new int[ MAX_DIGITS ][ MAX_DIGITS ];
+		coef[0][0] = 1;
+		for ( int j = 1; j < MAX_DIGITS; j++ )
+		{
+			coef[j][0] = 1;
+			coef[j][j] = 1;
+		}
+		for ( int j = 1; j < MAX_DIGITS; j++ )
+			for ( int i = j+1; i < MAX_DIGITS; i++ )
+				coef[i][j] = (coef[i-1][j] + coef[i-1][j-1]) % qs;
+	}
+
+	protected void generate( long n, double[] quasi )
+	{
+		int[] ytemp = new int[ MAX_DIGITS ];
+		long ltemp = offset+n;
+
+		int hisum = -1;
+		while ( ltemp > 0 )
+		{
+			if ( ++hisum == MAX_DIGITS ) throw new IllegalStateException( "FaureSequence.generate: index "+n+" is too big for base "+qs+"." );
+			ytemp[hisum] = (int) (ltemp % qs);
+			ltemp /= qs;
+		}
+
+		double r = ytemp[hisum];
+		for ( int i = hisum-1; i >= 0; i-- )
+			r = ytemp[i] + rqs*r;
+		quasi[0] = r*rqs;
+
+		for ( int k = 1; k < dimension; k++ )
+		{
+			quasi[k] = 0;
+			r = rqs;
+			for ( int j = 0; j <= hisum; j++ )
+			{
+				int ztemp = 0;
+				for ( int i = j; i <= hisum; i++ )
+					ztemp += coef[i][j]*ytemp[i];
+				ytemp[j] = ztemp % qs;
+				quasi[k] += ytemp[j]*r;
+				r *= rqs;
+			}
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+
+/** Globally adaptive integration over a union of intervals.
+  * Each interval is split into <tt>npanels</tt> pieces, and the 21-point Gauss-Kronrod
+  * rule is applied to each piece. Then the piece with the largest error estimate, over
+  * all intervals, is bisected, and so on, until the sum of the error estimates is within
+  * the tolerance for the whole integral or the number of pieces reaches <tt>limit</tt>.
+  * Thus evaluations are spent where the error is, e.g. on a narrow peak, and not on
+  * pieces which are already integrated accurately, e.g. in the tails.
+  *
+  * <p> The pieces are kept in a heap ordered by error estimate. Unlike <tt>qags</tt>,
+  * no extrapolation is applied, so integrable singularities at the endpoints are
+  * handled poorly; the integrands in RISO (densities and products of densities) are
+  * bounded, so this is not a problem in practice.
+  *
+  * <p> The intervals should not overlap, e.g. intervals constructed by
+  * <tt>Intervals.union_merge_intervals</tt>. An instance of this class keeps its work
+  * space from one integration to the next, and it must not be used by more than one thread
+  * at a time; nested integrations must each have their own instance.
+  */
+public class GlobalAdaptiveQuadrature implements java.io.Serializable
+{
+	public double epsabs = 1e-6, epsrel = 1e-6;
+
+	/** Maximum number of pieces, over all intervals.
+	  */
+	public int limit = 300;
+
+	/** Number of pieces into which each interval is split before any bisection.
+	  */
+	public int npanels = 10;
+
+	public boolean verbose_errors = false;
+
+	/** Results of the most recent integration: the number of function evaluations,
+	  * the estimated absolute error, the number of pieces, and an error code.
+	  * <tt>ier</tt> is 0 for normal termination, 1 if the limit on the number of pieces
+	  * was reached, and 2 if a piece became too small to bisect.
+	  */
+	public int neval, npieces, ier;
+	public double abserr;
+
+	/** Endpoints, integral, and error estimate of each piece, and a heap of indexes
+	  * of pieces, with the largest error estimate at the top.
+	  */
+	transient double[] alist, blist, rlist, elist;
+	transient int[] heap;
+	transient int nheap;
+
+	transient qk21 rule;
+	transient double[] result1, abserr1, resabs1, resasc1, a1v, b1v;
+
+	/** Compute the integral of <tt>f</tt> over the single interval <tt>[a,b]</tt>.
+	  */
+	public double do_integral( Callback_1d f, double a, double b ) throws Exception
+	{
+		if ( a1v == null ) { a1v = new double[1]; b1v = new double[1]; }
+		a1v[0] = a;
+		b1v[0] = b;
+		return do_integral( f, a1v, b1v, 1 );
+	}
+
+	/** Compute the sum of the integrals of <tt>f</tt> over the intervals
+	  * <tt>[a[0],b[0]], ..., [a[n-1],b[n-1]]</tt>.
+	  */
+	public double do_integral( Callback_1d f, double[] a, double[] b, int n ) throws Exception
+	{
+		int ninitial = n*npanels, size = Math.max( limit, ninitial );
+		if ( alist == null || alist.length < size )
+		{
+			alist = new double[ size ];
+			blist = new double[ size ];
+			rlist = new double[ size ];
+			elist = new double[ size ];
+			heap = new int[ size ];
+		}
+
+		if ( rule == null )
+		{
+			rule = new qk21();
+			result1 = new double[1];
+			abserr1 = new double[1];
+			resabs1 = new double[1];
+			resasc1 = new double[1];
+		}
+
+		neval = 0;
+		npieces = 0;
+		nheap = 0;
+		ier = 0;
+
+		double result = 0, errsum = 0;
+
+		for ( int j = 0; j < n; j++ )
+		{
+			double h = (b[j]-a[j])/npanels;
+			for ( int i = 0; i < npanels; i++ )
+			{
+				double aa = a[j] + i*h, bb = (i == npanels-1 ? b[j] : aa + h);
+				add_piece( f, aa, bb );
+				result += rlist[ npieces-1 ];
+				errsum += elist[ npieces-1 ];
+			}
+		}
+
+		double epmach = qk21.D1MACH[4-1], uflow = qk21.D1MACH[1-1];
+
+		while ( errsum > Math.max( epsabs, epsrel*Math.abs(result) ) )
+		{
+			if ( npieces >= limit ) { ier = 1; break; }
+
+			int k = heap[0];
+			double a1 = alist[k], b2 = blist[k], a2 = 0.5*(a1+b2);
+
+			if ( Math.max( Math.abs(a1), Math.abs(b2) ) <= (1+100*epmach)*(Math.abs(a2)+1000*uflow) )
+			{
+				ier = 2;
+				break;
+			}
+
+			double r0 = rlist[k], e0 = elist[k];
+
+			// Replace the piece at the top of the heap by its left half,
+			// and put the right half in a new piece.
+
+			remove_top();
+			int nbefore = npieces;
+			apply_rule( f, a1, a2, k );
+			insert( k );
+			add_piece( f, a2, b2 );
+
+			result += rlist[k] + rlist[ nbefore ] - r0;
+			errsum += elist[k] + elist[ nbefore ] - e0;
+		}
+
+		// Recompute the sums to get rid of the rounding errors accumulated in the updates.
+
+		result = 0;
+		errsum = 0;
+		for ( int i = 0; i < npieces; i++ )
+		{
+			result += rlist[i];
+			errsum += elist[i];
+		}
+
+		abserr = errsum;
+
+		if ( ier != 0 && verbose_errors )
+			System.err.println( "GlobalAdaptiveQuadrature.do_integral: WARNING: ier: "+ier+"; result: "+result+", abserr: "+abserr+", #pieces: "+npieces );
+
+		return result;
+	}
+
+	void apply_rule( Callback_1d f, double a, double b, int k ) throws Exception
+	{
+		rule.apply_rule( f, a, b, result1, abserr1, resabs1, resasc1 );
+		alist[k] = a;
+		blist[k] = b;
+		rlist[k] = result1[0];
+		elist[k] = abserr1[0];
+		neval += 21;
+	}
+
+	void add_piece( Callback_1d f, double a, double b ) throws Exception
+	{
+		apply_rule( f, a, b, npieces );
+		insert( npieces );
+		++npieces;
+	}
+
+	/** Put piece <tt>k</tt>, which is not in the heap, into the heap.
+	  */
+	void insert( int k )
+	{
+		int i = nheap;
+		while ( i > 0 )
+		{
+			int parent = (i-1)/2;
+			if ( elist[ heap[parent] ] >= elist[k] ) break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = k;
+		++nheap;
+	}
+
+	/** Remove the piece at the top of the heap.
+	  */
+	void remove_top()
+	{
+		int last = heap[ --nheap ];
+		int i = 0;
+		while ( true )
+		{
+			int child = 2*i+1;
+			if ( child >= nheap ) break;
+			if ( child+1 < nheap && elist[ heap[child+1] ] > elist[ heap[child] ] ) ++child;
+			if ( elist[ heap[child] ] <= elist[last] ) break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+	}
+
+	static class GaussianPeaks implements Callback_1d
+	{
+		double[] mu, sigma;
+		GaussianPeaks( double[] mu, double[] sigma ) { this.mu = mu; this.sigma = sigma; }
+
+		public double f( double x )
+		{
+			double sum = 0;
+			for ( int i = 0; i < mu.length; i++ )
+			{
+				double z = (x-mu[i])/sigma[i];
+				sum += Math.exp( -z*z/2 )/(Math.sqrt(2*Math.PI)*sigma[i]);
+			}
+			return sum;
+		}
+	}
+
+	/** Integrate a sum of narrow and wide Gaussian bumps over <tt>[-20,20]</tt>,
+	  * and compare with splitting the interval into fixed panels which are integrated
+	  * separately by <tt>qags</tt>. The exact integral is the number of bumps.
+	  */
+	public static void main( String[] args )
+	{
+		try
+		{
+			Callback_1d f = new GaussianPeaks( new double[] { -3, 0.7, 8 }, new double[] { 2, 0.02, 0.05 } );
+			double a = -20, b = 20;
+
+			GlobalAdaptiveQuadrature g = new GlobalAdaptiveQuadrature();
+			double r = g.do_integral( f, a, b );
+			System.err.println( "global adaptive: result: "+r+", abserr: "+g.abserr+", ier: "+g.ier+", neval: "+g.neval+", #pieces: "+g.npieces );
+
+			qags q = new qags();
+			double[] result = new double[1], abserr = new double[1];
+			int[] ier = new int[1];
+			int npanels = 10, neval = 0;
+			double sum = 0, h = (b-a)/npanels;
+
+			for ( int i = 0; i < npanels; i++ )
+			{
+				q.do_qags( f, a+i*h, a+(i+1)*h, 1e-6/npanels, 1e-6, result, abserr, ier, 30 );
+				sum += result[0];
+				neval += q.neval[0];
+			}
+
+			System.err.println( "fixed panels:    result: "+sum+", neval: "+neval );
+		}
+		catch (Exception e) { e.printStackTrace(); }
+	}
+}
@@ -0,0 +1,109 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+import java.util.*;
+
+/** Halton low-discrepancy sequence. Component <tt>i</tt> of point <tt>n</tt> is the
+  * radical inverse of <tt>n+1</tt> in the base of the <tt>i</tt>'th prime, so point 0 is
+  * the same as the first point of <tt>LowDiscrepancy.inhalt</tt>. Each point is computed
+  * directly from its index, so skipping ahead costs nothing.
+  *
+  * <p> The randomized version permutes all of the digits in each base, including zero,
+  * by a random permutation (a random digit scrambling), and then applies a random shift
+  * modulo 1 to each component. Since the zero digit is permuted, the infinitely many
+  * leading zeros of the index become digits <tt>perm[0]</tt> after the radix point,
+  * which add <tt>perm[0]/(b-1)</tt> times the place value of the first of them.
+  * Every permutation of the digits is possible in every base, so that even the base 2
+  * component is scrambled, and the shift randomizes the components further.
+  */
+public class HaltonSequence extends LowDiscrepancySequence
+{
+	/** Base for each component.
+	  */
+	int[] base;
+
+	/** Digit permutation for each component; <tt>null</tt> if not randomized.
+	  */
+	int[][] permutation = null;
+
+	public HaltonSequence( int dimension )
+	{
+		if ( dimension < 1 ) throw new IllegalArgumentException( "HaltonSequence: "+dimension+" is a bad number of dimensions." );
+
+		this.dimension = dimension;
+		base = new int[ dimension ];
+
+		for ( int i = 0, p = 2; i < dimension; p++ )
+		{
+			boolean is_prime = true;
+			for ( int j = 0; j < i && base[j]*base[j] <= p; j++ )
+				if ( p % base[j] == 0 ) { is_prime = false; break; }
+			if ( is_prime ) base[i++] = p;
+		}
+	}
+
+	protected void generate( long n, double[] quasi )
+	{
+		for ( int i = 0; i < dimension; i++ )
+		{
+			int b = base[i];
+			int[] perm = permutation == null ? null : permutation[i];
+			double rb = 1.0/b, f = rb, r = 0;
+
+			for ( long m = n+1; m > 0; m /= b )
+			{
+				int d = (int) (m % b);
+				r += (perm == null ? d : perm[d]) * f;
+				f *= rb;
+			}
+
+			if ( perm != null )
+			{
+				// Account for the tail of permuted zero digits, f*perm[0]*(1 + 1/b + 1/b^2 + ...).
+				r += f*perm[0]*b/(b-1.0);
+				if ( r >= 1 ) r = Math.nextDown( 1.0 );
+			}
+
+			quasi[i] = r;
+		}
+	}
+
+	/** Randomize by scrambling the digits in each base and shifting each component
+	  * by a random amount modulo 1. The sequence is restarted at index 0.
+	  */
+	public void randomize( Random r )
+	{
+		super.randomize(r);
+
+		permutation = new int[ dimension ][];
+		for ( int i = 0; i < dimension; i++ )
+		{
+			int[] perm = new int[ base[i] ];
+			for ( int j = 0; j < perm.length; j++ ) perm[j] = j;
+
+			for ( int j = perm.length-1; j > 0; j-- )
+			{
+				int k = r.nextInt(j+1);
+				int t = perm[j]; perm[j] = perm[k]; perm[k] = t;
+			}
+
+			permutation[i] = perm;
+		}
+	}
+}
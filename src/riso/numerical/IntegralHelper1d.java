@@ -26,11 +26,11 @@ public class IntegralHelper1d implements java.io.Serializable
 
 	public double[] a, b;
 	public double epsabs = 1e-6, epsrel = 1e-6;
-	public int limit = 30;
-	public int npanels = 10;	// split each interval into this many pieces
+	public int limit = 30;		// average number of pieces per panel
+	public int npanels = 10;	// split each interval into this many pieces to start with
 	public int neval;
 
-	qags q = new qags();
+	GlobalAdaptiveQuadrature q = new GlobalAdaptiveQuadrature();
 
 	public IntegralHelper1d( Callback_1d f1, double[][] intervals, boolean is_discrete )
 	{
@@ -68,8 +68,13 @@ public class IntegralHelper1d implements java.io.Serializable
 				int i0 = (a[j] < b[j] ? (int)a[j] : (int)b[j]);
 				int i1 = (a[j] < b[j] ? (int)b[j] : (int)a[j]);
 
-				for ( int i = i0; i <= i1; i++ )
-					sum += f1.f( (double)i );
+				int n = i1-i0+1;
+				double[] xv = new double[n], fxv = new double[n];
+				for ( int i = 0; i < n; i++ ) xv[i] = i0+i;
+				BatchCallbacks.evaluate( f1, xv, fxv, n );
+
+				for ( int i = 0; i < n; i++ )
+					sum += fxv[i];
 
 				neval += i1-i0+1;
 			}
@@ -78,33 +83,19 @@ public class IntegralHelper1d implements java.io.Serializable
 		}
 		else
 		{
-			double[] result = new double[1], abserr = new double[1];
-			int[] ier = new int[1];
-			boolean some_ier = false;
-
-			double sum = 0;
-
-			for ( int j = 0; j < a.length; j++ )
-			{
-				double total_result = 0, h = (b[j]-a[j])/npanels, aa, bb;
+			// Refine the pieces of all intervals together, so that evaluations
+			// go to the pieces with the largest errors, wherever they are.
 
-				for ( int i = 0; i < npanels; i++ )
-				{
-					aa = a[j] + i*h;
-					bb = aa + h;
-					q.do_qags( f1, aa, bb, epsabs/npanels, epsrel, result, abserr, ier, limit );
-					total_result += result[0];
-					neval += q.neval[0];
+			q.epsabs = epsabs;
+			q.epsrel = epsrel;
+			q.npanels = npanels;
+			q.limit = limit*npanels*a.length;
 
-					if ( ier[0] != 0 ) 
-						some_ier = true;
-				}
+			double sum = q.do_integral( f1, a, b, a.length );
+			neval += q.neval;
 
-				if ( some_ier && q.verbose_errors )
-					System.err.println( "IntegralHelper1d.do_integral: WARNING: ier != 0 for at least one of "+npanels+" panels." );
-
-				sum += total_result;
-			}
+			if ( q.ier != 0 && q.verbose_errors )
+				System.err.println( "IntegralHelper1d.do_integral: WARNING: ier == "+q.ier+" for "+a.length+" intervals." );
 
 			return sum;
 		}
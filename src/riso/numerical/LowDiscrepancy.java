@@ -6,6 +6,10 @@ package riso.numerical;
   *
   * <p> Note that this scheme works only in 2 or more dimensions -- it cannot generate
   * a 1-dimensional sequence.
+  *
+  * <p> The generator state is kept in static variables, so only one thread at a time
+  * can use these methods. <tt>FaureSequence</tt> and <tt>HaltonSequence</tt> are
+  * generators with the state kept in the instance.
   * 
   * <p> This file is distributed under the terms of the ACM Software Copyright and License Agreement.
   * A copy of the license agreement, <tt>ACM-LICENSE.html</tt>, is included with the RISO distribution.
@@ -0,0 +1,172 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+import java.io.*;
+import java.util.*;
+
+/** Base class for low-discrepancy (quasi-random) sequence generators.
+  * Unlike the static methods in <tt>LowDiscrepancy</tt>, all of the state of
+  * a generator is contained in the instance, so different threads can use
+  * different generators at the same time. A single generator must not be
+  * used by more than one thread at a time; use <tt>copy</tt> to get another one.
+  *
+  * <p> Each point in the sequence is identified by its index, starting from 0.
+  * The point with a given index can be computed directly, so a sequence can be
+  * partitioned among several generators: e.g., one copy generates points 0 through
+  * 999 and another, after <tt>skip_to(1000)</tt>, generates points 1000 through 1999.
+  *
+  * <p> A generator can be randomized by <tt>randomize</tt>. The default randomization
+  * is a random shift modulo 1 (Cranley-Patterson rotation); subclasses may replace
+  * that by a scrambling which better preserves the structure of the sequence.
+  * Averages over independently randomized copies of a sequence yield an error estimate.
+  */
+public abstract class LowDiscrepancySequence implements Cloneable, Serializable
+{
+	/** Number of components in each point.
+	  */
+	protected int dimension;
+
+	/** Index of the point which will be returned by the next call to <tt>next</tt>.
+	  */
+	protected long index = 0;
+
+	/** Random shift applied to each component; <tt>null</tt> if this generator is not randomized.
+	  */
+	protected double[] shift = null;
+
+	/** Compute the point with index <tt>n</tt> and store it in <tt>quasi</tt>.
+	  * Components are in the interval [0,1). This method doesn't apply the randomization, if any.
+	  */
+	protected abstract void generate( long n, double[] quasi );
+
+	/** Return the number of components in each point.
+	  */
+	public int get_dimension() { return dimension; }
+
+	/** Return the index of the point which will be returned by the next call to <tt>next</tt>.
+	  */
+	public long get_index() { return index; }
+
+	/** Arrange for the next call to <tt>next</tt> to return the point with index <tt>n</tt>.
+	  */
+	public void skip_to( long n )
+	{
+		if ( n < 0 ) throw new IllegalArgumentException( "LowDiscrepancySequence.skip_to: index "+n+" is negative." );
+		index = n;
+	}
+
+	/** Skip over the next <tt>n</tt> points.
+	  */
+	public void skip( long n ) { skip_to( index+n ); }
+
+	/** Store the next point of the sequence in <tt>quasi</tt>, which must have at least
+	  * <tt>get_dimension()</tt> elements.
+	  */
+	public void next( double[] quasi )
+	{
+		generate( index++, quasi );
+		if ( shift != null ) apply_shift( quasi );
+	}
+
+	void apply_shift( double[] quasi )
+	{
+		for ( int i = 0; i < dimension; i++ )
+		{
+			quasi[i] += shift[i];
+			if ( quasi[i] >= 1 ) quasi[i] -= 1;
+		}
+	}
+
+	/** Randomize this generator by a random shift modulo 1, drawing the shift from <tt>r</tt>.
+	  * The sequence is restarted at index 0.
+	  */
+	public void randomize( Random r )
+	{
+		shift = new double[ dimension ];
+		for ( int i = 0; i < dimension; i++ ) shift[i] = r.nextDouble();
+		index = 0;
+	}
+
+	/** Return an independent generator in the same state as this one.
+	  * Subclasses which have mutable arrays must override this method to copy them.
+	  */
+	public LowDiscrepancySequence copy()
+	{
+		try { return (LowDiscrepancySequence) clone(); }
+		catch (CloneNotSupportedException e) { throw new RuntimeException( "LowDiscrepancySequence.copy: "+e ); }
+	}
+
+	/** Return a generator of the type named by <tt>type</tt> (<tt>"faure"</tt>, <tt>"halton"</tt>,
+	  * or <tt>"sobol"</tt>) for points of <tt>dimension</tt> components.
+	  */
+	public static LowDiscrepancySequence make_sequence( String type, int dimension )
+	{
+		if ( "faure".equals(type) ) return new FaureSequence( dimension );
+		else if ( "halton".equals(type) ) return new HaltonSequence( dimension );
+		else if ( "sobol".equals(type) ) return new SobolSequence( dimension );
+		else throw new IllegalArgumentException( "LowDiscrepancySequence.make_sequence: unknown type "+type );
+	}
+
+	/** Generate points from a sequence. Options: <tt>-t</tt> type, <tt>-m</tt> dimension,
+	  * <tt>-n</tt> number of points, <tt>-s</tt> starting index, <tt>-r</tt> random seed (randomize).
+	  */
+	public static void main( String[] args )
+	{
+		String type = "faure";
+		int m = 3, n = 20;
+		long start = 0, seed = 0;
+		boolean randomize = false;
+
+		for ( int i = 0; i < args.length; i++ )
+		{
+			switch (args[i].charAt(1))
+			{
+			case 't':
+				type = args[++i];
+				break;
+			case 'm':
+				m = Integer.parseInt( args[++i] );
+				break;
+			case 'n':
+				n = Integer.parseInt( args[++i] );
+				break;
+			case 's':
+				start = Long.parseLong( args[++i] );
+				break;
+			case 'r':
+				randomize = true;
+				seed = Long.parseLong( args[++i] );
+				break;
+			}
+		}
+
+		LowDiscrepancySequence q = make_sequence( type, m );
+		if ( randomize ) q.randomize( new Random(seed) );
+		q.skip_to( start );
+
+		double[] quasi = new double[m];
+		for ( int i = 0; i < n; i++ )
+		{
+			q.next( quasi );
+			System.out.print( (start+i)+":" );
+			for ( int j = 0; j < m; j++ ) System.out.print( " "+quasi[j] );
+			System.out.println("");
+		}
+	}
+}
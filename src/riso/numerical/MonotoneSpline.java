@@ -25,10 +25,12 @@ import riso.general.*;
   * Formulas are given in F.N. Fritsch and J. Butland,
   * "A method for constructing local monotone piecewise cubic interpolants",
   * SIAM J. Scientific and Statistical Computation, 5(2):300--304, 1984.
+  *
+  * <p> Evaluation doesn't modify the spline, so a spline can be evaluated by
+  * several threads at once.
   */
-public class MonotoneSpline implements Callback_1d, Serializable
+public class MonotoneSpline implements BatchCallback_1d, Serializable
 {
-	int icache = 0;
 	public double[] x, f, d, alpha2, alpha3;
 
 	public MonotoneSpline( double[] x, double[] f ) throws Exception
@@ -84,37 +86,75 @@ public class MonotoneSpline implements Callback_1d, Serializable
 
 	public double f( double x ) throws Exception
 	{
-		// See if x is within the most-recently accessed interval.
-		// If so, compute spline function. If not, search for interval,
-		// then compute spline function.
+		return compute_spline( x, find_interval(x) );
+	}
 
-		if ( this.x[icache] <= x && x <= this.x[icache+1] )
-			return compute_spline( x, icache );
-		else
+	/** Find the interval <tt>[x[i], x[i+1]]</tt> containing <tt>x</tt> by binary search,
+	  * and return <tt>i</tt>. If <tt>x</tt> is outside the knots, return the first or last interval.
+	  */
+	public int find_interval( double x )
+	{
+		return find_interval( x, 0, this.x.length-1 );
+	}
+
+	/** Binary search for the interval containing <tt>x</tt>, among
+	  * the intervals between knots <tt>ilow</tt> and <tt>ihigh</tt>.
+	  */
+	int find_interval( double x, int ilow, int ihigh )
+	{
+		while ( ihigh - ilow > 1 )
 		{
-			// Do binary search on intervals.
+			int i = (ilow+ihigh)/2;
+			if ( x < this.x[i] )
+				ihigh = i;
+			else
+				ilow = i;
+		}
+
+		return ilow;
+	}
 
-			int ilow = 0, ihigh = this.x.length-1;
-			while ( ihigh - ilow > 1 )
+	/** Evaluate the spline at <tt>x[0]</tt> through <tt>x[n-1]</tt>.
+	  * The interval containing each point is found by searching forward from the
+	  * interval of the previous point, taking steps of 1, 2, 4, ... intervals and then
+	  * bisecting the last step, so if the points are sorted, the cost of the search is
+	  * proportional to the log of the distance moved, and a run of points in one
+	  * interval costs just one comparison each. If a point is to the left of the
+	  * previous one, the search starts over from the first interval.
+	  */
+	public void f_batch( double[] x, double[] fx, int n ) throws Exception
+	{
+		int i = 0, nknots = this.x.length;
+
+		for ( int k = 0; k < n; k++ )
+		{
+			double xk = x[k];
+
+			if ( xk < this.x[i] )
+				i = find_interval( xk );
+			else if ( i+1 < nknots-1 && xk >= this.x[i+1] )
 			{
-				int i = (ilow+ihigh)/2;
-				if ( x < this.x[i] )
-					ihigh = i;
-				else if ( x > this.x[i] )
-					ilow = i;
-				else // x == this.x[i]
+				int ilow = i+1, step = 1;
+				while ( ilow+step < nknots-1 && xk >= this.x[ilow+step] )
 				{
-					ilow = i;
-					break;
+					ilow += step;
+					step *= 2;
 				}
+
+				i = find_interval( xk, ilow, Math.min( ilow+step, nknots-1 ) );
 			}
 
-			icache = ilow;
-// System.err.println( "MonotoneSpline.f: "+this.x[icache]+" = x["+icache+"] < x = "+x+" < x["+(icache+1)+"] = "+this.x[icache+1] );
-			return compute_spline( x, icache );
+			fx[k] = compute_spline( xk, i );
 		}
 	}
 
+	/** Evaluate the spline at each element of <tt>x</tt>.
+	  */
+	public void f( double[] x, double[] fx ) throws Exception
+	{
+		f_batch( x, fx, x.length );
+	}
+
 	public static void main( String[] args )
 	{
 		int N = 0;
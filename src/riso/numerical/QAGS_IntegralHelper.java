@@ -30,9 +30,9 @@ public class QAGS_IntegralHelper implements IntegralHelper, Callback_1d, Seriali
 	public double epsabs = 1e-6, epsrel = 1e-6;
 	public int limit;
 	public int[] neval;			// counts function evaluations in each dimension
-	public int npanels = 10;	// split each interval into this many pieces
+	public int npanels = 10;	// split each interval into this many pieces to start with
 
-	qags[] q;					// one context for each level; don't share work variables!
+	GlobalAdaptiveQuadrature[] q;	// one context for each level; don't share work variables!
 
 	public QAGS_IntegralHelper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration )
 	{
@@ -79,8 +79,8 @@ System.err.println( "QAGS_IntegralHelper: #integrations: "+nintegration+"; #disc
 			limit = 1;
 		}
 
-		q = new qags[n];
-		for ( i = 0; i < n; i++ ) q[i] = new qags();
+		q = new GlobalAdaptiveQuadrature[n];
+		for ( i = 0; i < n; i++ ) q[i] = new GlobalAdaptiveQuadrature();
 
 		--n;	// now n == next dimension to integrate over
 	}
@@ -153,25 +153,20 @@ System.err.println( "QAGS_IntegralHelper: #integrations: "+nintegration+"; #disc
 		}
 		else
 		{
-			double total_result = 0, h = (b[n]-a[n])/npanels, aa, bb;
-			double[] result = new double[1], abserr = new double[1];
-			int[] ier = new int[1];
-			boolean some_ier = false;
+			// Refine the pieces of all panels together; the limit is the
+			// same total number of pieces as <limit> for each panel.
 
-			for ( int i = 0; i < npanels; i++ )
-			{
-				aa = a[n] + i*h;
-				bb = aa + h;
-				q[n].do_qags( this, aa, bb, epsabs/npanels, epsrel, result, abserr, ier, limit );
-				total_result += result[0];
-				neval[n] += q[n].neval[0];
-
-				if ( ier[0] != 0 ) 
-					some_ier = true;
-			}
+			GlobalAdaptiveQuadrature g = q[n];
+			g.epsabs = epsabs;
+			g.epsrel = epsrel;
+			g.npanels = npanels;
+			g.limit = limit*npanels;
+
+			double total_result = g.do_integral( this, a[n], b[n] );
+			neval[n] += g.neval;
 
-			if ( some_ier && q[n].verbose_errors )
-				System.err.println( "QAGS_IntegralHelper.do_integral: integrate over variable "+n+". WARNING: ier != 0 for at least one of "+npanels+" panels." );
+			if ( g.ier != 0 && g.verbose_errors )
+				System.err.println( "QAGS_IntegralHelper.do_integral: integrate over variable "+n+". WARNING: ier == "+g.ier );
 
 			return total_result;
 		}
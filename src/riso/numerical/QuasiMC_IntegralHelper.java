@@ -18,6 +18,8 @@
  */
 package riso.numerical;
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class QuasiMC_IntegralHelper implements IntegralHelper, Serializable
 {
@@ -30,6 +32,39 @@ public class QuasiMC_IntegralHelper implements IntegralHelper, Serializable
 	public int neval, N;
 	static public int EVAL_PER_DIMENSION = 500;
 
+	/** Type of low-discrepancy sequence used by helpers created from now on;
+	  * see <tt>LowDiscrepancySequence.make_sequence</tt>.
+	  */
+	static public String SEQUENCE_TYPE = "faure";
+
+	/** Generator for the points at which the integrand is evaluated. It belongs to
+	  * this helper, so different helpers can carry out integrations at the same time.
+	  */
+	LowDiscrepancySequence sequence;
+
+	/** Number of threads used to evaluate the integrand. If greater than 1 and the
+	  * integrand is a <tt>ReplicableCallback_nd</tt>, the discrete configurations and the
+	  * points of the low-discrepancy sequence are divided among the threads of a
+	  * fork-join pool; otherwise the integral is computed serially in the calling thread.
+	  */
+	static public int PARALLELISM = 1;
+
+	/** Number of consecutive points of the sequence handled by one parallel task.
+	  * The partial sums are added up in order of configuration and chunk, so the result of
+	  * a parallel integration does not depend on the number of threads or on timing.
+	  */
+	static public int CHUNK_SIZE = 1024;
+
+	/** Number of points passed to the integrand at once, if it is a <tt>BatchCallback_nd</tt>.
+	  */
+	static public int BATCH_SIZE = 64;
+
+	/** Fork-join pools for parallel integration, keyed by parallelism. A pool is never shut down,
+	  * since another thread may still be using it when <tt>PARALLELISM</tt> changes; its threads
+	  * are daemon threads which exit after a while without work.
+	  */
+	static Hashtable pools = new Hashtable();
+
 	public QuasiMC_IntegralHelper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration )
 	{
 		this.fn = fn;
@@ -70,6 +105,8 @@ System.err.println( "IntegralHelper: #integrations: "+nintegration+"; #discrete
 		// the number of dimensions. THAT'S NOT AT ALL SCIENTIFIC !!!
 
 		N = nintegration * nintegration * EVAL_PER_DIMENSION;
+
+		if ( nintegration > 0 ) sequence = LowDiscrepancySequence.make_sequence( SEQUENCE_TYPE, nintegration );
 	}
 
 	public double do_integral( double[] x_in ) throws Exception
@@ -86,7 +123,10 @@ System.err.println( "IntegralHelper: #integrations: "+nintegration+"; #discrete
 			volume *= (b[ integration_index[i] ]-a[ integration_index[i] ]);
 
 		total_sum = 0;
-		do_integral_recursion(0);
+		if ( parallel_enabled() )
+			total_sum = do_parallel_integral();
+		else
+			do_integral_recursion(0);
 // System.err.println( "do_integral: total_sum: "+total_sum );
 		return total_sum;
 	}
@@ -105,11 +145,8 @@ System.err.println( "IntegralHelper: #integrations: "+nintegration+"; #discrete
 			if ( integration_index.length == 0 )
 				// There are no variables to integrate over.
 				total_sum += fn.f(x);
-			else if ( integration_index.length == 1 )
-				// There is exactly one variable to integrate over; can't handle by QMC !!!
-				throw new Exception( "QuasiMC_IntegralHelper.do_integral_recursion: can't handle 1-dimensional integration." );
 			else
-				// General case -- integrate over two or more dimensions.
+				// General case -- integrate over one or more dimensions.
 				total_sum += do_qmc_integral();
 		}
 		else
@@ -139,27 +176,168 @@ System.err.println( "IntegralHelper: #integrations: "+nintegration+"; #discrete
 	  */
 	public double do_qmc_integral() throws Exception
 	{
+		sequence.skip_to(0);
+		double sum = sum_points( fn, sequence, x, N );
+
+		neval += N;
+		return (sum/N)*volume;
+	}
+
+	/** Tells whether <tt>do_integral</tt> should use <tt>do_parallel_integral</tt>.
+	  */
+	boolean parallel_enabled()
+	{
+		return PARALLELISM > 1 && fn instanceof ReplicableCallback_nd;
+	}
+
+	/** Carry out the same computation as <tt>do_integral_recursion(0)</tt>, in parallel.
+	  * The discrete configurations are enumerated first; then there is one task for each
+	  * chunk of <tt>CHUNK_SIZE</tt> points for each configuration. Each task has its own
+	  * replica of the integrand, copy of the sequence, and argument array.
+	  */
+	double do_parallel_integral() throws Exception
+	{
+		Vector configurations = new Vector();
+		enumerate_configurations( 0, (double[]) x.clone(), configurations );
+
+		final int nchunks = integration_index.length == 0 ? 1 : (N+CHUNK_SIZE-1)/CHUNK_SIZE;
+		final int ntasks = configurations.size()*nchunks;
+		final double[] partial_sums = new double[ ntasks ];
+		final Exception[] failures = new Exception[ ntasks ];
+		final Vector tasks = new Vector( ntasks );
+
+		// Replicate the integrand here, not in the tasks: the replica reflects the
+		// state of the integrand now, which the caller may change after we return.
+
+		for ( int c = 0; c < configurations.size(); c++ )
+			for ( int k = 0; k < nchunks; k++ )
+			{
+				final int itask = c*nchunks + k;
+				final double[] xc = (double[]) ((double[]) configurations.elementAt(c)).clone();
+				final Callback_nd fc = ((ReplicableCallback_nd)fn).replicate();
+				final LowDiscrepancySequence qc = integration_index.length == 0 ? null : sequence.copy();
+				final long first = (long)k*CHUNK_SIZE;
+
+				tasks.addElement( ForkJoinTask.adapt( new Runnable() {
+					public void run()
+					{
+						try
+						{
+							if ( qc == null ) partial_sums[itask] = fc.f(xc);
+							else partial_sums[itask] = chunk_sum( fc, qc, xc, first, Math.min( CHUNK_SIZE, N-first ) );
+						}
+						catch (Exception e) { failures[itask] = e; }
+					}
+				} ) );
+			}
+
+		ForkJoinPool p = get_pool();
+		if ( ntasks == 1 )
+			((ForkJoinTask) tasks.elementAt(0)).invoke();
+		else if ( ForkJoinTask.getPool() == p )
+			ForkJoinTask.invokeAll( tasks );
+		else
+			p.invoke( ForkJoinTask.adapt( new Runnable() { public void run() { ForkJoinTask.invokeAll( tasks ); } } ) );
+
+		for ( int i = 0; i < ntasks; i++ )
+			if ( failures[i] != null ) throw failures[i];
+
+		double sum = 0;
+		for ( int c = 0; c < configurations.size(); c++ )
+		{
+			if ( integration_index.length == 0 )
+				sum += partial_sums[c];
+			else
+			{
+				double config_sum = 0;
+				for ( int k = 0; k < nchunks; k++ )
+					config_sum += partial_sums[ c*nchunks + k ];
+				sum += (config_sum/N)*volume;
+				neval += N;
+			}
+		}
+
+		return sum;
+	}
+
+	/** Append to <tt>configurations</tt> a copy of <tt>xc</tt> for each assignment of
+	  * values to the discrete variables from the <tt>n</tt>'th on, in the order in which
+	  * <tt>do_integral_recursion</tt> visits them.
+	  */
+	void enumerate_configurations( int n, double[] xc, Vector configurations )
+	{
+		if ( n == xc.length )
+			configurations.addElement( xc.clone() );
+		else if ( is_discrete[n] )
+		{
+			int i0 = (a[n] < b[n] ? (int)a[n] : (int)b[n]);
+			int i1 = (a[n] < b[n] ? (int)b[n] : (int)a[n]);
+
+			for ( int i = i0; i <= i1; i++ )
+			{
+				xc[n] = i;
+				enumerate_configurations( n+1, xc, configurations );
+			}
+		}
+		else
+			enumerate_configurations( n+1, xc, configurations );
+	}
+
+	/** Return the sum of <tt>f</tt> over <tt>npoints</tt> points of the sequence <tt>q</tt>,
+	  * starting from the point with index <tt>first</tt>.
+	  */
+	double chunk_sum( Callback_nd f, LowDiscrepancySequence q, double[] xc, long first, long npoints ) throws Exception
+	{
+		q.skip_to( first );
+		return sum_points( f, q, xc, npoints );
+	}
+
+	/** Return the sum of <tt>f</tt> over the next <tt>npoints</tt> points of the sequence <tt>q</tt>.
+	  * The discrete and skipped variables are taken from <tt>xc</tt>, and the others are
+	  * mapped from the sequence onto the limits of integration. The points are passed to
+	  * <tt>f</tt> in batches of <tt>BATCH_SIZE</tt>, and the values are added up in order.
+	  */
+	double sum_points( Callback_nd f, LowDiscrepancySequence q, double[] xc, long npoints ) throws Exception
+	{
+		int nbatch = (int) Math.min( BATCH_SIZE, npoints );
+		double[][] points = new double[ nbatch ][];
+		double[] fx = new double[ nbatch ];
+		for ( int k = 0; k < nbatch; k++ ) points[k] = (double[]) xc.clone();
+
 		double sum = 0;
 		double[] quasi = new double[ integration_index.length ];
-		boolean[] flag = new boolean[2];
-		LowDiscrepancy.infaur( flag, quasi.length, N );
-		if ( !flag[0] ) throw new Exception( "QuasiMC_IntegralHelper: "+quasi.length+" is a bad number of dimensions for CACM 659 low-discrepancy sequence." );
-		if ( !flag[1] ) throw new Exception( "QuasiMC_IntegralHelper: sequence length "+N+" is apparently too big for CACM 659 low-discrepancy sequence." );
-		
-		for ( int i = 0; i < N; i++ )
+
+		for ( long i = 0; i < npoints; i += nbatch )
 		{
-			LowDiscrepancy.gofaur( quasi );
-			for ( int j = 0; j < quasi.length; j++ )
+			int m = (int) Math.min( nbatch, npoints-i );
+			for ( int k = 0; k < m; k++ )
 			{
-				int ii = integration_index[j];
-				x[ii] = a[ii] + (b[ii]-a[ii])*quasi[j];
+				q.next( quasi );
+				double[] xk = points[k];
+				for ( int j = 0; j < quasi.length; j++ )
+				{
+					int ii = integration_index[j];
+					xk[ii] = a[ii] + (b[ii]-a[ii])*quasi[j];
+				}
 			}
 
-			sum += fn.f(x);
+			BatchCallbacks.evaluate( f, points, fx, m );
+			for ( int k = 0; k < m; k++ ) sum += fx[k];
 		}
 
-		neval += N;
-		return (sum/N)*volume;
+		return sum;
+	}
+
+	static synchronized ForkJoinPool get_pool()
+	{
+		Integer key = Integer.valueOf( PARALLELISM );
+		ForkJoinPool pool = (ForkJoinPool) pools.get( key );
+		if ( pool == null )
+		{
+			pool = new ForkJoinPool( PARALLELISM );
+			pools.put( key, pool );
+		}
+		return pool;
 	}
 
 	public static void main( String[] args )
@@ -0,0 +1,181 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+import java.io.*;
+import java.util.*;
+
+/** Quasi Monte Carlo integration with an error estimate. The integral is estimated
+  * from <tt>nrandomizations</tt> independently randomized copies of a low-discrepancy
+  * sequence (a Sobol' sequence with random digital shifts, or a scrambled Halton sequence
+  * in more dimensions than the Sobol' generator supports). The spread of the estimates
+  * from the copies gives the standard error of their average.
+  *
+  * <p> Each copy starts with <tt>initial_points</tt> points, and the number of points
+  * is doubled until the standard error is no more than <tt>epsabs</tt> or <tt>epsrel</tt>
+  * times the magnitude of the integral, or until doubling would exceed <tt>max_evaluations</tt>.
+  * The error estimate is available in <tt>abserr</tt> after the integration, and
+  * <tt>converged</tt> tells whether the tolerance was met. If the integrand is summed
+  * over discrete variables, these apply to the whole sum.
+  *
+  * <p> The randomizations are drawn once, from <tt>seed</tt>, when the helper is created,
+  * so repeated integrations with different values of the skipped variables use the same
+  * points; the result is then a smooth function of those variables.
+  */
+public class RandomizedQMC_IntegralHelper extends QuasiMC_IntegralHelper
+{
+	public double epsabs = 1e-6, epsrel = 1e-3;
+	public int nrandomizations = 8, initial_points = 64;
+
+	/** Maximum number of function evaluations for each assignment of the discrete variables.
+	  */
+	public int max_evaluations;
+
+	/** Estimated absolute error of the most recent integral.
+	  */
+	public double abserr;
+
+	/** Tells whether the tolerance was met in the most recent integral.
+	  */
+	public boolean converged;
+
+	public boolean verbose_errors = false;
+
+	public long seed = 1L;
+
+	LowDiscrepancySequence[] randomized;
+
+	public RandomizedQMC_IntegralHelper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration )
+	{
+		super( fn, a, b, is_discrete, skip_integration );
+
+		int nintegration = integration_index.length;
+		if ( nintegration > 0 )
+		{
+			String type = nintegration <= SobolSequence.MAX_DIMENSION ? "sobol" : "halton";
+			sequence = LowDiscrepancySequence.make_sequence( type, nintegration );
+		}
+
+		max_evaluations = 16*N;
+	}
+
+	public double do_integral() throws Exception
+	{
+		abserr = 0;
+		converged = true;
+		return super.do_integral();
+	}
+
+	/** The parallel integration doesn't produce an error estimate, so it isn't used.
+	  */
+	boolean parallel_enabled() { return false; }
+
+	/** Integrate over the continuous variables, assuming the discrete and skipped variables
+	  * have been assigned values. The number of points is doubled until the tolerance is met
+	  * or the budget is exhausted. The error estimate is added to <tt>abserr</tt>.
+	  */
+	public double do_qmc_integral() throws Exception
+	{
+		if ( randomized == null || randomized.length != nrandomizations )
+		{
+			Random r = new Random( seed );
+			randomized = new LowDiscrepancySequence[ nrandomizations ];
+			for ( int i = 0; i < nrandomizations; i++ )
+			{
+				randomized[i] = sequence.copy();
+				randomized[i].randomize(r);
+			}
+		}
+
+		double[] sums = new double[ nrandomizations ];
+		for ( int i = 0; i < nrandomizations; i++ ) randomized[i].skip_to(0);
+
+		long npoints = 0, nnext = initial_points;
+		double mean, stderr;
+
+		for (;;)
+		{
+			for ( int i = 0; i < nrandomizations; i++ )
+				sums[i] += sum_points( fn, randomized[i], x, nnext-npoints );
+
+			neval += (nnext-npoints)*nrandomizations;
+			npoints = nnext;
+
+			// Estimates from each randomization are independent, so the variance of
+			// their mean is the sample variance divided by the number of estimates.
+
+			mean = 0;
+			for ( int i = 0; i < nrandomizations; i++ ) mean += sums[i]/npoints;
+			mean /= nrandomizations;
+
+			double ss = 0;
+			for ( int i = 0; i < nrandomizations; i++ )
+			{
+				double d = sums[i]/npoints - mean;
+				ss += d*d;
+			}
+			stderr = nrandomizations > 1 ? Math.sqrt( ss/(nrandomizations-1)/nrandomizations ) : Double.POSITIVE_INFINITY;
+
+			mean *= volume;
+			stderr *= volume;
+
+			if ( stderr <= Math.max( epsabs, epsrel*Math.abs(mean) ) )
+				break;
+
+			if ( 2*npoints*nrandomizations > max_evaluations )
+			{
+				converged = false;
+				if ( verbose_errors )
+					System.err.println( "RandomizedQMC_IntegralHelper.do_qmc_integral: WARNING: tolerance not met after "+npoints*nrandomizations+" evaluations; integral: "+mean+", error estimate: "+stderr );
+				break;
+			}
+
+			nnext = 2*npoints;
+		}
+
+		abserr += stderr;
+		return mean;
+	}
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			double[] a = new double[3], b = new double[3];
+			for ( int i = 0; i < 3; i++ )
+			{
+				a[i] = Double.parseDouble( args[i] );
+				b[i] = Double.parseDouble( args[3+i] );
+			}
+
+			RandomizedQMC_IntegralHelper ih = new RandomizedQMC_IntegralHelper( new ThreeD(), a, b, new boolean[3], new boolean[3] );
+			if ( args.length > 6 ) ih.epsrel = Double.parseDouble( args[6] );
+
+			double exact = 1;
+			for ( int i = 0; i < 3; i++ ) exact *= (b[i]*b[i] - a[i]*a[i])/2;
+
+			double result = ih.do_integral();
+			System.err.println( "ih.do_integral: "+result+", abserr: "+ih.abserr+", converged: "+ih.converged+", exact: "+exact );
+			System.err.println( "neval: "+ih.neval );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+
+/** A callback which can be copied so that the copies can be evaluated in
+  * different threads at the same time. Integral helpers evaluate a callback
+  * in parallel only if it implements this interface.
+  */
+public interface ReplicableCallback_nd extends Callback_nd
+{
+	/** Return a callback which computes the same function as this one, and which
+	  * can be evaluated at the same time as this one and other replicas. The replica
+	  * need only reflect the state of this callback at the time of the call.
+	  */
+	public Callback_nd replicate() throws Exception;
+}
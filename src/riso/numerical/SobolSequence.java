@@ -0,0 +1,175 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+import java.util.*;
+
+/** Sobol' low-discrepancy sequence in base 2, generated in Gray code order
+  * (Antonov and Saleev). The primitive polynomials and initial direction numbers
+  * for the first 21 dimensions are those of S. Joe and F. Y. Kuo, "Constructing
+  * Sobol sequences with better two-dimensional projections", SIAM J. Sci. Comput.,
+  * vol. 30 (2008), pp 2635--2654. The origin, which is the first point of the
+  * Sobol' sequence, is omitted, so point <tt>n</tt> of this sequence is point <tt>n+1</tt>
+  * of the Sobol' sequence. Up to <tt>2^32-1</tt> points can be generated.
+  *
+  * <p> Consecutive points are generated by updating the previous point, at a cost
+  * of one exclusive-or per component; a point out of order is computed from its index.
+  *
+  * <p> The randomized version applies a random digital shift (an exclusive-or with a random
+  * bit string for each component), which preserves the net structure of the sequence.
+  */
+public class SobolSequence extends LowDiscrepancySequence
+{
+	static final int NBITS = 32;
+	static final double SCALE = 1.0/4294967296.0;
+
+	/** Degree, coefficients, and initial direction numbers <tt>m[1], m[2], ...</tt>
+	  * for dimensions 2, 3, ...; the first dimension is the van der Corput sequence.
+	  */
+	static final int[][] DIRECTIONS =
+	{
+		{ 1, 0, 1 },
+		{ 2, 1, 1, 3 },
+		{ 3, 1, 1, 3, 1 },
+		{ 3, 2, 1, 1, 1 },
+		{ 4, 1, 1, 1, 3, 3 },
+		{ 4, 4, 1, 3, 5, 13 },
+		{ 5, 2, 1, 1, 5, 5, 17 },
+		{ 5, 4, 1, 1, 5, 5, 5 },
+		{ 5, 7, 1, 1, 7, 11, 19 },
+		{ 5, 11, 1, 1, 5, 1, 1 },
+		{ 5, 13, 1, 1, 1, 3, 11 },
+		{ 5, 14, 1, 3, 5, 5, 31 },
+		{ 6, 1, 1, 3, 3, 9, 7, 49 },
+		{ 6, 13, 1, 1, 1, 15, 21, 21 },
+		{ 6, 16, 1, 3, 1, 13, 27, 49 },
+		{ 6, 19, 1, 1, 1, 15, 7, 5 },
+		{ 6, 22, 1, 3, 1, 15, 13, 25 },
+		{ 6, 25, 1, 1, 5, 5, 19, 61 },
+		{ 7, 1, 1, 3, 7, 11, 23, 15, 103 },
+		{ 7, 4, 1, 3, 7, 13, 13, 15, 69 }
+	};
+
+	public static final int MAX_DIMENSION = DIRECTIONS.length+1;
+
+	/** Direction numbers, <tt>v[i][k]</tt> for component <tt>i</tt> and bit <tt>k</tt>.
+	  * Not modified after construction, so copies of this generator share it.
+	  */
+	int[][] v;
+
+	/** Components of the most recently generated point, as unshifted bit strings,
+	  * and the index of that point; used to generate the next point cheaply.
+	  */
+	int[] last_x;
+	long last_index = -1;
+
+	/** Digital shift for each component; <tt>null</tt> if not randomized.
+	  */
+	int[] digital_shift = null;
+
+	public SobolSequence( int dimension )
+	{
+		if ( dimension < 1 || dimension > MAX_DIMENSION ) throw new IllegalArgumentException( "SobolSequence: "+dimension+" is a bad number of dimensions; must be 1 through "+MAX_DIMENSION+"." );
+
+		this.dimension = dimension;
+		v = new int[ dimension ][ NBITS ];
+		last_x = new int[ dimension ];
+
+		for ( int k = 0; k < NBITS; k++ )
+			v[0][k] = 1 << (NBITS-1-k);
+
+		for ( int i = 1; i < dimension; i++ )
+		{
+			int[] d = DIRECTIONS[i-1];
+			int s = d[0], a = d[1];
+
+			for ( int k = 0; k < s; k++ )
+				v[i][k] = d[2+k] << (NBITS-1-k);
+
+			for ( int k = s; k < NBITS; k++ )
+			{
+				int vk = v[i][k-s] ^ (v[i][k-s] >>> s);
+				for ( int j = 1; j < s; j++ )
+					if ( ((a >>> (s-1-j)) & 1) != 0 )
+						vk ^= v[i][k-j];
+				v[i][k] = vk;
+			}
+		}
+	}
+
+	/** Compute the unshifted bit strings of point <tt>n</tt> into <tt>last_x</tt>.
+	  */
+	void generate_bits( long n )
+	{
+		long m = n+1;
+		if ( m >= (1L << NBITS) ) throw new IllegalStateException( "SobolSequence.generate: index "+n+" is too big." );
+
+		if ( n == last_index+1 && last_index >= 0 )
+		{
+			int c = Long.numberOfTrailingZeros(m);
+			for ( int i = 0; i < dimension; i++ )
+				last_x[i] ^= v[i][c];
+		}
+		else
+		{
+			long gray = m ^ (m >>> 1);
+			for ( int i = 0; i < dimension; i++ )
+			{
+				int x = 0;
+				for ( int k = 0; gray >>> k != 0; k++ )
+					if ( ((gray >>> k) & 1) != 0 ) x ^= v[i][k];
+				last_x[i] = x;
+			}
+		}
+
+		last_index = n;
+	}
+
+	protected void generate( long n, double[] quasi )
+	{
+		generate_bits(n);
+		for ( int i = 0; i < dimension; i++ )
+			quasi[i] = (last_x[i] & 0xffffffffL) * SCALE;
+	}
+
+	public void next( double[] quasi )
+	{
+		generate_bits( index++ );
+		for ( int i = 0; i < dimension; i++ )
+		{
+			int x = digital_shift == null ? last_x[i] : last_x[i] ^ digital_shift[i];
+			quasi[i] = (x & 0xffffffffL) * SCALE;
+		}
+	}
+
+	/** Randomize by a random digital shift. The sequence is restarted at index 0.
+	  */
+	public void randomize( Random r )
+	{
+		digital_shift = new int[ dimension ];
+		for ( int i = 0; i < dimension; i++ ) digital_shift[i] = r.nextInt();
+		index = 0;
+	}
+
+	public LowDiscrepancySequence copy()
+	{
+		SobolSequence copy = (SobolSequence) super.copy();
+		copy.last_x = (int[]) last_x.clone();
+		return copy;
+	}
+}
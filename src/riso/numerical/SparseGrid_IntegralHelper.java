@@ -0,0 +1,466 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.numerical;
+import java.io.*;
+import java.util.*;
+
+/** Integration over a few continuous variables by a Smolyak sparse grid.
+  * The one-dimensional rules are Gauss-Legendre rules with 1, 3, 5, ... points on
+  * the limits of integration, or, for a variable which has been given a Gaussian
+  * weight by <tt>set_gaussian_weight</tt>, Gauss-Hermite rules centered on the
+  * mean and scaled by the standard deviation. A Gauss-Hermite rule ignores the limits
+  * of integration; it integrates exactly a polynomial times the Gaussian weight over
+  * the whole line, which is a good approximation to an integrand which contains the
+  * density of a Gaussian pi message as a factor.
+  *
+  * <p> The sparse grid of level <tt>L</tt> in <tt>d</tt> dimensions is the combination
+  * <pre>
+  *   sum_{L <= |l| <= L+d-1} (-1)^(L+d-1-|l|) binomial(d-1, L+d-1-|l|) U(l_1) x ... x U(l_d)
+  * </pre>
+  * where <tt>U(l)</tt> is the one-dimensional rule with <tt>2l-1</tt> points. The rules
+  * are not nested, so the tensor grids are merged by summing the weights of coinciding
+  * points. The one-dimensional rules are computed once and kept in tables shared by all helpers;
+  * the grid for a helper is computed on its first integration.
+  *
+  * <p> Discrete variables are summed over, and skipped variables are held fixed,
+  * as in <tt>QuasiMC_IntegralHelper</tt>.
+  */
+public class SparseGrid_IntegralHelper implements IntegralHelper, Serializable
+{
+	/** Level of the sparse grid for helpers created from now on.
+	  */
+	static public int LEVEL = 4;
+
+	/** Tables of one-dimensional rules, indexed by number of points. Each entry is
+	  * <tt>{ nodes, weights }</tt>. Gauss-Legendre rules are for the interval [-1,1];
+	  * Gauss-Hermite rules are for the standard Gaussian density.
+	  */
+	static Hashtable legendre_rules = new Hashtable(), hermite_rules = new Hashtable();
+
+	Callback_nd fn;
+	boolean[] is_discrete, skip_integration;
+	int[] integration_index;
+	int level;
+
+	/** Mean and standard deviation of the Gaussian weight for each variable;
+	  * a standard deviation of zero means the variable has no Gaussian weight.
+	  */
+	double[] gaussian_mu, gaussian_sigma;
+
+	/** Sparse grid in standard coordinates: one row of <tt>nodes</tt> for each point,
+	  * with one element for each variable of integration. <tt>null</tt> until needed.
+	  */
+	double[][] nodes;
+	double[] weights;
+
+	public double[] x, a, b;
+	public int neval;
+	double total_sum;
+
+	public SparseGrid_IntegralHelper( Callback_nd fn, double[] a, double[] b, boolean[] is_discrete, boolean[] skip_integration )
+	{
+		this.fn = fn;
+
+		// If the limits of integration are not yet established,
+		// the caller must do so before calling do_integral().
+
+		this.a = (a == null ? null : (double[]) a.clone());
+		this.b = (b == null ? null : (double[]) b.clone());
+
+		int n = a.length;
+		x = new double[n];
+		gaussian_mu = new double[n];
+		gaussian_sigma = new double[n];
+
+		this.is_discrete = (boolean[]) is_discrete.clone();
+		this.skip_integration = (boolean[]) skip_integration.clone();
+
+		integration_index = make_integration_index( is_discrete, skip_integration );
+		level = LEVEL;
+	}
+
+	static int[] make_integration_index( boolean[] is_discrete, boolean[] skip_integration )
+	{
+		int nintegration = 0;
+		for ( int i = 0; i < is_discrete.length; i++ )
+			if ( ! is_discrete[i] && ! skip_integration[i] )
+				++nintegration;
+
+		int[] integration_index = new int[nintegration];
+		for ( int i = 0, j = 0; i < is_discrete.length; i++ )
+			if ( ! is_discrete[i] && ! skip_integration[i] )
+				integration_index[j++] = i;
+
+		return integration_index;
+	}
+
+	/** Integrate over variable <tt>i</tt> by Gauss-Hermite rules for a Gaussian
+	  * weight with mean <tt>mu</tt> and standard deviation <tt>sigma</tt>.
+	  */
+	public void set_gaussian_weight( int i, double mu, double sigma )
+	{
+		if ( sigma <= 0 ) throw new IllegalArgumentException( "SparseGrid_IntegralHelper.set_gaussian_weight: sigma must be positive; not "+sigma );
+		gaussian_mu[i] = mu;
+		gaussian_sigma[i] = sigma;
+		nodes = null;
+		weights = null;
+	}
+
+	/** Return the number of integrand evaluations for each assignment of the discrete
+	  * variables made by a sparse grid of level <tt>level</tt> in <tt>d</tt> dimensions,
+	  * before coinciding points are merged.
+	  */
+	public static long count_points( int d, int level )
+	{
+		if ( d == 0 ) return 1;
+
+		long count = 0;
+		int q = level+d-1;
+		int[] l = new int[d];
+		Arrays.fill( l, 1 );
+
+		do
+		{
+			int norm = 0;
+			for ( int i = 0; i < d; i++ ) norm += l[i];
+			if ( norm >= level )
+			{
+				long m = 1;
+				for ( int i = 0; i < d; i++ ) m *= 2*l[i]-1;
+				count += m;
+			}
+		}
+		while ( next_multi_index( l, q ) );
+
+		return count;
+	}
+
+	/** Step to the next multi-index <tt>l</tt> with <tt>l[i] >= 1</tt> and <tt>|l| <= q</tt>.
+	  * Returns <tt>false</tt> if there are no more.
+	  */
+	static boolean next_multi_index( int[] l, int q )
+	{
+		int norm = 0;
+		for ( int i = 0; i < l.length; i++ ) norm += l[i];
+
+		for ( int i = 0; i < l.length; i++ )
+		{
+			if ( norm < q )
+			{
+				++l[i];
+				return true;
+			}
+
+			norm -= l[i]-1;
+			l[i] = 1;
+		}
+
+		return false;
+	}
+
+	/** Compute the sparse grid in standard coordinates.
+	  */
+	void make_grid()
+	{
+		int d = integration_index.length;
+		int q = level+d-1;
+		LinkedHashMap grid = new LinkedHashMap();
+
+		int[] l = new int[d];
+		Arrays.fill( l, 1 );
+
+		do
+		{
+			int norm = 0;
+			for ( int i = 0; i < d; i++ ) norm += l[i];
+			if ( norm < level ) continue;
+
+			double c = binomial( d-1, q-norm );
+			if ( (q-norm) % 2 == 1 ) c = -c;
+
+			double[][][] rules = new double[d][][];
+			for ( int i = 0; i < d; i++ )
+				rules[i] = gaussian_sigma[ integration_index[i] ] > 0 ? hermite_rule( 2*l[i]-1 ) : legendre_rule( 2*l[i]-1 );
+
+			// Run through the tensor grid, adding the weight of each point into the merged grid.
+
+			int[] k = new int[d];
+			for (;;)
+			{
+				double[] z = new double[d];
+				double w = c;
+				for ( int i = 0; i < d; i++ )
+				{
+					z[i] = rules[i][0][ k[i] ];
+					w *= rules[i][1][ k[i] ];
+				}
+
+				List key = new ArrayList(d);
+				for ( int i = 0; i < d; i++ ) key.add( Double.valueOf( z[i] ) );
+
+				double[][] entry = (double[][]) grid.get( key );
+				if ( entry == null ) grid.put( key, new double[][] { z, { w } } );
+				else entry[1][0] += w;
+
+				int i = 0;
+				while ( i < d && ++k[i] == rules[i][0].length ) k[i++] = 0;
+				if ( i == d ) break;
+			}
+		}
+		while ( next_multi_index( l, q ) );
+
+		nodes = new double[ grid.size() ][];
+		weights = new double[ grid.size() ];
+		int j = 0;
+		for ( Iterator it = grid.values().iterator(); it.hasNext(); j++ )
+		{
+			double[][] entry = (double[][]) it.next();
+			nodes[j] = entry[0];
+			weights[j] = entry[1][0];
+		}
+	}
+
+	static double binomial( int n, int k )
+	{
+		double c = 1;
+		for ( int i = 1; i <= k; i++ ) c = c*(n-k+i)/i;
+		return c;
+	}
+
+	public double do_integral( double[] x_in ) throws Exception
+	{
+		System.arraycopy( x_in, 0, x, 0, x.length );
+		return do_integral();
+	}
+
+	public double do_integral() throws Exception
+	{
+		neval = 0;
+		total_sum = 0;
+		do_integral_recursion(0);
+		return total_sum;
+	}
+
+	void do_integral_recursion( int n ) throws Exception
+	{
+		if ( n == x.length )
+		{
+			if ( integration_index.length == 0 )
+			{
+				total_sum += fn.f(x);
+				++neval;
+			}
+			else
+				total_sum += do_grid_integral();
+		}
+		else if ( is_discrete[n] )
+		{
+			int i0 = (a[n] < b[n] ? (int)a[n] : (int)b[n]);
+			int i1 = (a[n] < b[n] ? (int)b[n] : (int)a[n]);
+
+			for ( int i = i0; i <= i1; i++ )
+			{
+				x[n] = i;
+				do_integral_recursion(n+1);
+			}
+		}
+		else
+			do_integral_recursion(n+1);
+	}
+
+	/** Assume all discrete and skipped variables have been assigned values, and
+	  * integrate over the remaining variables by the sparse grid. The points are
+	  * passed to the integrand in one batch.
+	  */
+	public double do_grid_integral() throws Exception
+	{
+		if ( nodes == null ) make_grid();
+
+		int npoints = nodes.length, d = integration_index.length;
+		double[][] points = new double[ npoints ][];
+		double[] w = new double[ npoints ], fx = new double[ npoints ];
+
+		for ( int j = 0; j < npoints; j++ )
+		{
+			double[] xj = (double[]) x.clone();
+			w[j] = weights[j];
+
+			for ( int i = 0; i < d; i++ )
+			{
+				int ii = integration_index[i];
+				double z = nodes[j][i];
+
+				if ( gaussian_sigma[ii] > 0 )
+				{
+					// Change of variables x = mu + sigma*z, and divide out the standard Gaussian density.
+					xj[ii] = gaussian_mu[ii] + gaussian_sigma[ii]*z;
+					w[j] *= gaussian_sigma[ii] * Math.sqrt(2*Math.PI) * Math.exp( z*z/2 );
+				}
+				else
+				{
+					double h = (b[ii]-a[ii])/2;
+					xj[ii] = a[ii] + h*(1+z);
+					w[j] *= h;
+				}
+			}
+
+			points[j] = xj;
+		}
+
+		BatchCallbacks.evaluate( fn, points, fx, npoints );
+		neval += npoints;
+
+		double sum = 0;
+		for ( int j = 0; j < npoints; j++ ) sum += w[j]*fx[j];
+		return sum;
+	}
+
+	/** Return the Gauss-Legendre rule with <tt>m</tt> points on [-1,1], as <tt>{ nodes, weights }</tt>.
+	  */
+	public static double[][] legendre_rule( int m )
+	{
+		synchronized (legendre_rules)
+		{
+			Integer key = Integer.valueOf(m);
+			double[][] rule = (double[][]) legendre_rules.get( key );
+			if ( rule != null ) return rule;
+
+			double[] z = new double[m], w = new double[m];
+
+			for ( int i = 0; i < (m+1)/2; i++ )
+			{
+				double zi = Math.cos( Math.PI*(i+0.75)/(m+0.5) ), pp;
+
+				for (;;)
+				{
+					double p1 = 1, p2 = 0;
+					for ( int j = 1; j <= m; j++ )
+					{
+						double p3 = p2;
+						p2 = p1;
+						p1 = ((2*j-1)*zi*p2 - (j-1)*p3)/j;
+					}
+					pp = m*(zi*p1-p2)/(zi*zi-1);
+
+					double z1 = zi;
+					zi = z1 - p1/pp;
+					if ( Math.abs(zi-z1) <= 1e-15 ) break;
+				}
+
+				z[i] = -zi;
+				z[m-1-i] = zi;
+				w[i] = w[m-1-i] = 2/((1-zi*zi)*pp*pp);
+			}
+
+			if ( m % 2 == 1 ) z[m/2] = 0;
+
+			rule = new double[][] { z, w };
+			legendre_rules.put( key, rule );
+			return rule;
+		}
+	}
+
+	/** Return the Gauss-Hermite rule with <tt>m</tt> points for the standard Gaussian density,
+	  * as <tt>{ nodes, weights }</tt>. The weights add up to 1.
+	  */
+	public static double[][] hermite_rule( int m )
+	{
+		synchronized (hermite_rules)
+		{
+			Integer key = Integer.valueOf(m);
+			double[][] rule = (double[][]) hermite_rules.get( key );
+			if ( rule != null ) return rule;
+
+			// Compute the rule for the weight exp(-t^2) by Newton's method on the
+			// orthonormal Hermite polynomials (Numerical Recipes, gauher), then rescale.
+
+			double[] t = new double[m], wt = new double[m];
+			double pim4 = Math.pow( Math.PI, -0.25 ), zi = 0;
+
+			for ( int i = 0; i < (m+1)/2; i++ )
+			{
+				if ( i == 0 ) zi = Math.sqrt(2*m+1) - 1.85575*Math.pow( 2*m+1, -1/6.0 );
+				else if ( i == 1 ) zi -= 1.14*Math.pow( m, 0.426 )/zi;
+				else if ( i == 2 ) zi = 1.86*zi - 0.86*t[0];
+				else if ( i == 3 ) zi = 1.91*zi - 0.91*t[1];
+				else zi = 2*zi - t[i-2];
+
+				double pp;
+				for ( int iter = 0; ; iter++ )
+				{
+					double p1 = pim4, p2 = 0;
+					for ( int j = 1; j <= m; j++ )
+					{
+						double p3 = p2;
+						p2 = p1;
+						p1 = zi*Math.sqrt(2.0/j)*p2 - Math.sqrt((j-1.0)/j)*p3;
+					}
+					pp = Math.sqrt(2.0*m)*p2;
+
+					double z1 = zi;
+					zi = z1 - p1/pp;
+					if ( Math.abs(zi-z1) <= 1e-14 || iter > 100 ) break;
+				}
+
+				t[i] = zi;
+				t[m-1-i] = -zi;
+				wt[i] = wt[m-1-i] = 2/(pp*pp);
+			}
+
+			if ( m % 2 == 1 ) t[m/2] = 0;
+
+			double[] z = new double[m], w = new double[m];
+			for ( int i = 0; i < m; i++ )
+			{
+				z[i] = -Math.sqrt(2.0)*t[i];
+				w[i] = wt[i]/Math.sqrt(Math.PI);
+			}
+
+			rule = new double[][] { z, w };
+			hermite_rules.put( key, rule );
+			return rule;
+		}
+	}
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			double[] a = new double[3], b = new double[3];
+			for ( int i = 0; i < 3; i++ )
+			{
+				a[i] = Double.parseDouble( args[i] );
+				b[i] = Double.parseDouble( args[3+i] );
+			}
+			if ( args.length > 6 ) SparseGrid_IntegralHelper.LEVEL = Integer.parseInt( args[6] );
+
+			SparseGrid_IntegralHelper ih = new SparseGrid_IntegralHelper( new ThreeD(), a, b, new boolean[3], new boolean[3] );
+
+			double exact = 1;
+			for ( int i = 0; i < 3; i++ ) exact *= (b[i]*b[i] - a[i]*a[i])/2;
+
+			System.err.println( "ih.do_integral: "+ih.do_integral()+", exact: "+exact );
+			System.err.println( "neval: "+ih.neval+", before merging: "+count_points( 3, ih.level ) );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -29,6 +29,13 @@ public class qags implements java.io.Serializable
 
 	public boolean verbose_errors = false;
 
+	/** Work arrays for <tt>qagse</tt>, sized to the most recent <tt>limit</tt>.
+	  * They are kept from one call to the next, so that an integration with the same
+	  * <tt>limit</tt> as the previous one doesn't allocate any memory.
+	  */
+	double[] alist, blist, rlist, elist;
+	qagse integrator = new qagse();
+
 	public void do_qags ( Callback_1d f,double a,double b,double epsabs,double epsrel,double [ ] result,double [ ] abserr, int [ ] ier, int limit ) throws Exception
 	{
 		int lenw = 4*limit;
@@ -48,12 +55,15 @@ public class qags implements java.io.Serializable
 			l2 = limit+l1;
 			l3 = limit+l2;
 
-			double[] alist = new double[ limit ];
-			double[] blist = new double[ limit ];
-			double[] rlist = new double[ limit ];
-			double[] elist = new double[ limit ];
+			if ( alist == null || alist.length != limit )
+			{
+				alist = new double[ limit ];
+				blist = new double[ limit ];
+				rlist = new double[ limit ];
+				elist = new double[ limit ];
+			}
 
-			qagse.do_qagse ( f , a , b , epsabs , epsrel , limit , result , abserr , neval , ier , alist , blist , rlist , elist , iwork , last );
+			integrator.integrate ( f , a , b , epsabs , epsrel , limit , result , abserr , neval , ier , alist , blist , rlist , elist , iwork , last );
 
 			System.arraycopy( alist, 0, work, 0, limit );
 			System.arraycopy( blist, 0, work, limit, limit );
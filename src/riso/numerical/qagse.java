@@ -23,19 +23,34 @@ package riso.numerical;
   */
 public class qagse implements java.io.Serializable
 {
-	public static void do_qagse ( Callback_1d f , double a , double b , double epsabs , double epsrel , int limit , double[] result , double[] abserr , int[] neval , int[] ier , double[] alist , double[] blist , double[] rlist , double[] elist , int[] iord , int[] last ) throws Exception // SHOULD USE ier EXCLUSIVELY OR EXCEPTIONS EXCLUSIVELY, NOT BOTH !!!
+	/** Work space for one integration. An instance of <tt>qagse</tt> can be used over and
+	  * over without allocating any memory, but only by one thread at a time.
+	  */
+	double[] res3la = new double [ 3 ], rlist2 = new double [ 52 ];
+	double[] defabs = new double[1], resabs = new double[1];
+	double[] area1 = new double[1], area2 = new double[1];
+	double[] error1 = new double[1], error2 = new double[1];
+	double[] defab1 = new double[1], defab2 = new double[1];
+	double[] reseps = new double[1], abseps = new double[1];
+	double[] errmax = new double[1];
+	int[] maxerr = new int[1], nrmax = new int[1], numrl2 = new int[1], nres = new int[1];
+	qk21 rule = new qk21();
+
+	/** Carry out an integration using a temporary work space. Callers which integrate
+	  * many times should create an instance and call <tt>integrate</tt> instead.
+	  */
+	public static void do_qagse ( Callback_1d f , double a , double b , double epsabs , double epsrel , int limit , double[] result , double[] abserr , int[] neval , int[] ier , double[] alist , double[] blist , double[] rlist , double[] elist , int[] iord , int[] last ) throws Exception
+	{
+		new qagse().integrate( f, a, b, epsabs, epsrel, limit, result, abserr, neval, ier, alist, blist, rlist, elist, iord, last );
+	}
+
+	public void integrate ( Callback_1d f , double a , double b , double epsabs , double epsrel , int limit , double[] result , double[] abserr , int[] neval , int[] ier , double[] alist , double[] blist , double[] rlist , double[] elist , int[] iord , int[] last ) throws Exception // SHOULD USE ier EXCLUSIVELY OR EXCEPTIONS EXCLUSIVELY, NOT BOTH !!!
 	{
 		double area, area12, a1, a2, b1, b2, correc = -999, dres, epmach, erlarg = -999, erlast, errbnd, erro12, errsum, ertest = -999, oflow, small = -999, uflow;
-		double[] res3la = new double [ 3 ], rlist2 = new double [ 52 ];
-		double[] defabs = new double[1], resabs = new double[1];
-		double[] area1 = new double[1], area2 = new double[1];
-		double[] error1 = new double[1], error2 = new double[1];
-		double[] defab1 = new double[1], defab2 = new double[1];
-		double[] reseps = new double[1], abseps = new double[1];
-		double[] errmax = new double[1];
 		int id, ierro, iroff1, iroff2, iroff3, jupbnd, k, ksgn, ktmin;
-		int[] maxerr = new int[1], nrmax = new int[1], numrl2 = new int[1], nres = new int[1];
 		boolean extrap,noext;
+		java.util.Arrays.fill( res3la, 0 );
+		java.util.Arrays.fill( rlist2, 0 );
 		epmach = qk21.D1MACH [ 4-1 ];
 		ier[0] = 0;
 		neval[0] = 0;
@@ -51,7 +66,7 @@ public class qagse implements java.io.Serializable
 		uflow = qk21.D1MACH [ 1-1 ];
 		oflow = qk21.D1MACH [ 2-1 ];
 		ierro = 0;
-		qk21.do_qk21 ( f , a , b , result , abserr , defabs , resabs );
+		rule.apply_rule ( f , a , b , result , abserr , defabs , resabs );
 		dres = Math.abs ( result[0] );
 		errbnd = Math.max ( epsabs , epsrel * dres );
 		last[0] = 1;
@@ -90,8 +105,8 @@ public class qagse implements java.io.Serializable
 			a2 = b1;
 			b2 = blist [ maxerr[0] -1 ];
 			erlast = errmax[0];
-			qk21.do_qk21 ( f , a1 , b1 , area1 , error1 , resabs , defab1 );
-			qk21.do_qk21 ( f , a2 , b2 , area2 , error2 , resabs , defab2 );
+			rule.apply_rule ( f , a1 , b1 , area1 , error1 , resabs , defab1 );
+			rule.apply_rule ( f , a2 , b2 , area2 , error2 , resabs , defab2 );
 			area12 = area1[0]+area2[0];
 			erro12 = error1[0]+error2[0];
 			errsum = errsum+erro12-errmax[0];
@@ -30,56 +30,83 @@ public class qk21 implements java.io.Serializable
 		Math.log ( 2 ) /Math.log ( 10 )
 	};
 
+	static final double [ ] wg =
+	{
+		0.066671344308688137593568809893332, 0.149451349150580593145776339657697,
+		0.219086362515982043995534934228163, 0.269266719309996355091226921569469,
+		0.295524224714752870173892994651338
+	};
+	static final double [ ] xgk =
+	{
+		0.995657163025808080735527280689003, 0.973906528517171720077964012084452,
+		0.930157491355708226001207180059508, 0.865063366688984510732096688423493,
+		0.780817726586416897063717578345042, 0.679409568299024406234327365114874,
+		0.562757134668604683339000099272694, 0.433395394129247190799265943165784,
+		0.294392862701460198131126603103866, 0.148874338981631210884826001129720,
+		0.000000000000000000000000000000000
+	};
+	static final double [ ] wgk =
+	{
+		0.011694638867371874278064396062192, 0.032558162307964727478818972459390,
+		0.054755896574351996031381300244580, 0.075039674810919952767043140916190,
+		0.093125454583697605535065465083366, 0.109387158802297641899210590325805,
+		0.123491976262065851077958109831074, 0.134709217311473325928054001771707,
+		0.142775938577060080797094273138717, 0.147739104901338491374841515972068,
+		0.149445554002916905664936468389821
+	};
+
+	/** Work arrays for one application of the rule; an instance of <tt>qk21</tt>
+	  * can be used over and over without allocating any memory, but only by one thread at a time.
+	  */
+	double [ ] fv1 = new double [ 10 ], fv2 = new double [ 10 ], xv = new double [ 21 ], fxv = new double [ 21 ];
+
+	/** Apply the rule using a temporary work space. Callers which apply the rule
+	  * many times should create an instance and call <tt>apply_rule</tt> instead.
+	  */
 	public static void do_qk21 ( Callback_1d integrand, double a, double b, double[] result, double[] abserr, double[] resabs, double[] resasc ) throws Exception
+	{
+		new qk21().apply_rule( integrand, a, b, result, abserr, resabs, resasc );
+	}
+
+	public void apply_rule ( Callback_1d integrand, double a, double b, double[] result, double[] abserr, double[] resabs, double[] resasc ) throws Exception
 	{
 // System.err.println( "do_qk21: a: "+a+"  b: "+b );
 		double absc,centr,dhlgth,dmax1,dmin1;
 		double epmach,fc,fsum,fval1,fval2,hlgth,resg,resk,reskh,uflow;
 		int j,jtw,jtwm1;
-		double [ ] fv1 = new double [ 10 ];
-		double [ ] fv2 = new double [ 10 ];
-		double [ ] wg =
-		{
-			0.066671344308688137593568809893332, 0.149451349150580593145776339657697,
-			0.219086362515982043995534934228163, 0.269266719309996355091226921569469,
-			0.295524224714752870173892994651338
-		};
-		double [ ] xgk =
-		{
-			0.995657163025808080735527280689003, 0.973906528517171720077964012084452,
-			0.930157491355708226001207180059508, 0.865063366688984510732096688423493,
-			0.780817726586416897063717578345042, 0.679409568299024406234327365114874,
-			0.562757134668604683339000099272694, 0.433395394129247190799265943165784,
-			0.294392862701460198131126603103866, 0.148874338981631210884826001129720,
-			0.000000000000000000000000000000000
-		};
-		double [ ] wgk =
-		{
-			0.011694638867371874278064396062192, 0.032558162307964727478818972459390,
-			0.054755896574351996031381300244580, 0.075039674810919952767043140916190,
-			0.093125454583697605535065465083366, 0.109387158802297641899210590325805,
-			0.123491976262065851077958109831074, 0.134709217311473325928054001771707,
-			0.142775938577060080797094273138717, 0.147739104901338491374841515972068,
-			0.149445554002916905664936468389821
-		};
 		epmach = D1MACH [ 4-1 ];
 		uflow = D1MACH [ 1-1 ];
 		centr = 0.5* ( a+b );
 		hlgth = 0.5* ( b-a );
 		dhlgth = Math.abs ( hlgth );
 		resg = 0;
-		fc = integrand.f ( centr );
-// double max_fx = fc;
+
+		// Evaluate the integrand at all 21 abscissae in one batch: the center first,
+		// then the Gauss points, then the remaining Kronrod points, each pair as (left, right).
+
+		xv [ 0 ] = centr;
+		for ( j = 1 ; j <= 5 ; j++ )
+		{
+			absc = hlgth*xgk [ 2*j-1 ];
+			xv [ 2*j-1 ] = centr-absc;
+			xv [ 2*j ] = centr+absc;
+		}
+		for ( j = 1 ; j <= 5 ; j++ )
+		{
+			absc = hlgth*xgk [ 2*j-2 ];
+			xv [ 9+2*j ] = centr-absc;
+			xv [ 10+2*j ] = centr+absc;
+		}
+		BatchCallbacks.evaluate( integrand, xv, fxv, 21 );
+
+		fc = fxv [ 0 ];
 		resk = wgk [ 11-1 ] *fc;
 		resabs[0] = Math.abs ( resk );
 		for ( j = 1 ; j <= 5 ; j++ )
 		{
 			jtw = 2*j;
-			absc = hlgth*xgk [ jtw-1 ];
-			fval1 = integrand.f ( centr-absc );
-// if ( fval1 > max_fx ) max_fx = fval1;
-			fval2 = integrand.f ( centr+absc );
-// if ( fval2 > max_fx ) max_fx = fval2;
+			fval1 = fxv [ 2*j-1 ];
+			fval2 = fxv [ 2*j ];
 			fv1 [ jtw-1 ] = fval1;
 			fv2 [ jtw-1 ] = fval2;
 			fsum = fval1+fval2;
@@ -90,11 +117,8 @@ public class qk21 implements java.io.Serializable
 		for ( j = 1 ; j <= 5 ; j++ )
 		{
 			jtwm1 = 2*j-1;
-			absc = hlgth*xgk [ jtwm1-1 ];
-			fval1 = integrand.f ( centr-absc );
-// if ( fval1 > max_fx ) max_fx = fval1;
-			fval2 = integrand.f ( centr+absc );
-// if ( fval2 > max_fx ) max_fx = fval2;
+			fval1 = fxv [ 9+2*j ];
+			fval2 = fxv [ 10+2*j ];
 			fv1 [ jtwm1-1 ] = fval1;
 			fv2 [ jtwm1-1 ] = fval2;
 			fsum = fval1+fval2;
@@ -126,7 +150,7 @@ public class qk21 implements java.io.Serializable
 		b = Double.parseDouble( args[1] );
 		System.err.println( "a: "+a+"  b: "+b );
 		Callback_1d integrand = new GaussBump();
-		try { q.do_qk21( integrand, a, b, result, abserr, resabs, resasc ); }
+		try { q.apply_rule( integrand, a, b, result, abserr, resabs, resasc ); }
 		catch (Exception e) { e.printStackTrace(); return; }
 
 		System.err.println( "result: "+result[0] );
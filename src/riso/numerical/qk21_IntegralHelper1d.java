@@ -27,6 +27,12 @@ public class qk21_IntegralHelper1d implements java.io.Serializable
 	public double[] a, b;
 	public int neval;
 
+	/** Quadrature rule and its outputs, kept from one call to the next to avoid
+	  * allocating work space for each integration.
+	  */
+	transient qk21 rule;
+	transient double[] result, abserr, resabs, resasc;
+
 	public qk21_IntegralHelper1d( Callback_1d f1, double[][] intervals, boolean is_discrete )
 	{
 		// If the limits of integration are not yet established,
@@ -65,8 +71,13 @@ public class qk21_IntegralHelper1d implements java.io.Serializable
 				int i0 = (a[j] < b[j] ? (int)a[j] : (int)b[j]);
 				int i1 = (a[j] < b[j] ? (int)b[j] : (int)a[j]);
 
-				for ( int i = i0; i <= i1; i++ )
-					sum += f1.f( (double)i );
+				int n = i1-i0+1;
+				double[] xv = new double[n], fxv = new double[n];
+				for ( int i = 0; i < n; i++ ) xv[i] = i0+i;
+				BatchCallbacks.evaluate( f1, xv, fxv, n );
+
+				for ( int i = 0; i < n; i++ )
+					sum += fxv[i];
 
 				neval += i1-i0+1;
 			}
@@ -75,13 +86,21 @@ public class qk21_IntegralHelper1d implements java.io.Serializable
 		}
 		else
 		{
-			double[] result = new double[1];
+			if ( rule == null )
+			{
+				rule = new qk21();
+				result = new double[1];
+				abserr = new double[1];
+				resabs = new double[1];
+				resasc = new double[1];
+			}
+
 			double sum = 0;
 
 			for ( int j = 0; j < a.length; j++ )
 			{
 				// Last three arguments are don't-cares for us.
-				qk21.do_qk21( f1, a[j], b[j], result, new double[1], new double[1], new double[1] );
+				rule.apply_rule( f1, a[j], b[j], result, abserr, resabs, resasc );
 
 				neval += 21;
 				sum += result[0];
@@ -0,0 +1,148 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import java.util.*;
+import riso.belief_nets.*;
+import riso.distributions.*;
+
+/** Compute the posteriors of the variables in a small belief network of discrete
+  * variables by summing the joint distribution over all configurations.
+  * Used by tests to check the results of the inference algorithms.
+  */
+public class BruteForcePosteriors
+{
+	AbstractVariable[] variables;
+	int[][] parent_index;
+	int[] nstates;
+
+	public BruteForcePosteriors( AbstractBeliefNetwork bn ) throws Exception
+	{
+		variables = bn.get_variables();
+		int n = variables.length;
+
+		Hashtable index = new Hashtable();
+		for ( int i = 0; i < n; i++ ) index.put( variables[i].get_name(), Integer.valueOf(i) );
+
+		parent_index = new int[n][];
+		nstates = new int[n];
+
+		for ( int i = 0; i < n; i++ )
+		{
+			String[] parents = variables[i].get_parents_names();
+			parent_index[i] = new int[ parents.length ];
+			for ( int j = 0; j < parents.length; j++ )
+				parent_index[i][j] = ((Integer) index.get( parents[j] )).intValue();
+
+			ConditionalDistribution d = variables[i].get_distribution();
+			if ( d instanceof Discrete )
+				nstates[i] = ((Discrete)d).probabilities.length;
+			else
+				nstates[i] = ((ConditionalDiscrete)d).dimensions_child[0];
+		}
+	}
+
+	/** Return the posterior of each variable, given that variable <tt>i</tt> is
+	  * in state <tt>evidence[i]</tt>, or is unobserved if <tt>evidence[i]</tt> is negative.
+	  * <tt>result[i][k]</tt> is the posterior probability that variable <tt>i</tt> is in state <tt>k</tt>.
+	  */
+	public double[][] posteriors( int[] evidence ) throws Exception
+	{
+		int n = variables.length;
+		double[][] result = new double[n][];
+		for ( int i = 0; i < n; i++ ) result[i] = new double[ nstates[i] ];
+
+		ConditionalDistribution[] d = new ConditionalDistribution[n];
+		for ( int i = 0; i < n; i++ ) d[i] = variables[i].get_distribution();
+
+		int[] state = new int[n];
+		double[] x = new double[1];
+		double total = 0;
+
+		while ( true )
+		{
+			boolean consistent = true;
+			for ( int i = 0; i < n; i++ )
+				if ( evidence[i] >= 0 && state[i] != evidence[i] ) consistent = false;
+
+			if ( consistent )
+			{
+				double p = 1;
+				for ( int i = 0; i < n; i++ )
+				{
+					x[0] = state[i];
+					if ( parent_index[i].length == 0 )
+						p *= ((Discrete)d[i]).p(x);
+					else
+					{
+						double[] c = new double[ parent_index[i].length ];
+						for ( int j = 0; j < c.length; j++ ) c[j] = state[ parent_index[i][j] ];
+						p *= d[i].p( x, c );
+					}
+				}
+
+				total += p;
+				for ( int i = 0; i < n; i++ ) result[i][ state[i] ] += p;
+			}
+
+			// Go on to the next configuration.
+
+			int i = 0;
+			while ( i < n && ++state[i] == nstates[i] ) state[i++] = 0;
+			if ( i == n ) break;
+		}
+
+		for ( int i = 0; i < n; i++ )
+			for ( int k = 0; k < nstates[i]; k++ )
+				result[i][k] /= total;
+
+		return result;
+	}
+
+	/** Return the largest difference between the posteriors computed by <tt>bn</tt> and
+	  * the brute force posteriors <tt>expected</tt>.
+	  */
+	public double max_difference( AbstractBeliefNetwork bn, double[][] expected ) throws Exception
+	{
+		double maxdiff = 0;
+
+		for ( int i = 0; i < variables.length; i++ )
+		{
+			AbstractVariable x = (AbstractVariable) bn.name_lookup( variables[i].get_name() );
+			Distribution p = bn.get_posterior(x);
+			double[] xx = new double[1];
+
+			for ( int k = 0; k < nstates[i]; k++ )
+			{
+				xx[0] = k;
+				maxdiff = Math.max( maxdiff, Math.abs( p.p(xx) - expected[i][k] ) );
+			}
+		}
+
+		return maxdiff;
+	}
+
+	/** Return the index of the variable named <tt>name</tt>.
+	  */
+	public int index_of( String name ) throws Exception
+	{
+		for ( int i = 0; i < variables.length; i++ )
+			if ( variables[i].get_name().equals( name ) ) return i;
+		return -1;
+	}
+}
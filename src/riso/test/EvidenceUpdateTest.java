@@ -0,0 +1,131 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import riso.belief_nets.*;
+import riso.distributions.*;
+
+/** Assign evidence to a small discrete polytree within groups of evidence
+  * changes (<tt>begin_evidence_update</tt> and <tt>end_evidence_update</tt>),
+  * and compare the posteriors with brute-force enumeration. Also check that
+  * evidence assigned in a group, after a <tt>get_posterior</tt> within the group
+  * and within a nested group, doesn't invalidate any messages until the outermost
+  * group ends. Prints "OK" or "FAILED" for each check.
+  */
+public class EvidenceUpdateTest
+{
+	public static String POLYTREE =
+		"riso.belief_nets.BeliefNetwork polytree\n"+
+		"{\n"+
+		"	riso.belief_nets.Variable a { type discrete { \"0\" \"1\" } distribution riso.distributions.Discrete { dimensions { 2 } probabilities { 0.3 0.7 } } }\n"+
+		"	riso.belief_nets.Variable b { type discrete { \"0\" \"1\" \"2\" } distribution riso.distributions.Discrete { dimensions { 3 } probabilities { 0.2 0.5 0.3 } } }\n"+
+		"	riso.belief_nets.Variable c\n"+
+		"	{\n"+
+		"		type discrete { \"0\" \"1\" }\n"+
+		"		parents { a b }\n"+
+		"		distribution riso.distributions.ConditionalDiscrete\n"+
+		"		{\n"+
+		"			dimensions-child { 2 }\n"+
+		"			ndimensions-parents 2\n"+
+		"			dimensions-parents { 2 3 }\n"+
+		"			probabilities { 0.9 0.1  0.6 0.4  0.3 0.7  0.8 0.2  0.4 0.6  0.05 0.95 }\n"+
+		"		}\n"+
+		"	}\n"+
+		"	riso.belief_nets.Variable d { type discrete { \"0\" \"1\" } parents { c } distribution riso.distributions.ConditionalDiscrete { dimensions-child { 2 } dimensions-parents { 2 } probabilities { 0.7 0.3  0.2 0.8 } } }\n"+
+		"	riso.belief_nets.Variable e { type discrete { \"0\" \"1\" \"2\" } parents { c } distribution riso.distributions.ConditionalDiscrete { dimensions-child { 3 } dimensions-parents { 2 } probabilities { 0.5 0.3 0.2  0.1 0.3 0.6 } } }\n"+
+		"}\n";
+
+	public static double TOLERANCE = 1e-10;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			BeliefNetworkContext bnc = new BeliefNetworkContext( null );
+			PiHelperLoader.bnc = bnc;
+			BeliefNetwork bn = (BeliefNetwork) bnc.parse_network( POLYTREE );
+			BruteForcePosteriors brute_force = new BruteForcePosteriors( bn );
+
+			AbstractVariable b = (AbstractVariable) bn.name_lookup( "b" );
+			AbstractVariable d = (AbstractVariable) bn.name_lookup( "d" );
+			AbstractVariable e = (AbstractVariable) bn.name_lookup( "e" );
+			int ib = brute_force.index_of( "b" ), id = brute_force.index_of( "d" ), ie = brute_force.index_of( "e" );
+
+			int[] evidence = { -1, -1, -1, -1, -1 };
+			check( "no evidence", brute_force.max_difference( bn, brute_force.posteriors( evidence ) ) );
+
+			// Assign d and e in a group; ask for a posterior in the group,
+			// then assign b in a nested group.
+
+			bn.begin_evidence_update();
+			bn.assign_evidence( d, 1 );
+			bn.assign_evidence( e, 2 );
+			evidence[id] = 1;
+			evidence[ie] = 2;
+			check( "get_posterior within a group", brute_force.max_difference( bn, brute_force.posteriors( evidence ) ) );
+
+			long ninvalidated = bn.nmessages_invalidated.get();
+			bn.begin_evidence_update();
+			bn.assign_evidence( b, 0 );
+			bn.end_evidence_update();
+			check_deferred( "evidence after get_posterior and in a nested group", ninvalidated, bn.nmessages_invalidated.get() );
+
+			bn.end_evidence_update();
+			check_flushed( "end of outermost group", ninvalidated, bn.nmessages_invalidated.get() );
+			evidence[ib] = 0;
+			check( "after the group", brute_force.max_difference( bn, brute_force.posteriors( evidence ) ) );
+
+			// Clear and reassign some evidence in a group; assigning the same evidence
+			// again mustn't change anything.
+
+			bn.begin_evidence_update();
+			bn.clear_posterior( e );
+			bn.assign_evidence( d, 0 );
+			bn.assign_evidence( e, 2 );
+			bn.end_evidence_update();
+			evidence[id] = 0;
+			check( "clear and reassign", brute_force.max_difference( bn, brute_force.posteriors( evidence ) ) );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
+	static void check( String what, double maxdiff )
+	{
+		System.err.println( what+": max difference from brute force: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+	}
+
+	/** Check that the number of invalidated messages before, <tt>n0</tt>, is the
+	  * same as the number after, <tt>n1</tt>.
+	  */
+	static void check_deferred( String what, long n0, long n1 )
+	{
+		System.err.println( what+": #invalidated messages before: "+n0+", after: "+n1+"; "+(n0 == n1 ? "OK" : "FAILED") );
+	}
+
+	/** Check that some messages were invalidated.
+	  */
+	static void check_flushed( String what, long n0, long n1 )
+	{
+		System.err.println( what+": #invalidated messages before: "+n0+", after: "+n1+"; "+(n1 > n0 ? "OK" : "FAILED") );
+	}
+}
@@ -0,0 +1,167 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import riso.belief_nets.*;
+import riso.distributions.*;
+
+/** Compute posteriors in small discrete networks by <tt>JunctionTreeBeliefNetwork</tt>,
+  * with and without evidence, and compare them with brute-force enumeration.
+  * One network is singly connected, so the posteriors are also compared with
+  * those computed by message passing in <tt>BeliefNetwork</tt>; the other has loops,
+  * for which message passing isn't exact, so only brute force is used.
+  * Prints "OK" or "FAILED" for each check.
+  */
+public class JunctionTreeTest
+{
+	public static String LOOPY =
+		"riso.belief_nets.JunctionTreeBeliefNetwork loopy\n"+
+		"{\n"+
+		"	riso.belief_nets.Variable a { type discrete { \"0\" \"1\" } distribution riso.distributions.Discrete { dimensions { 2 } probabilities { 0.7 0.3 } } }\n"+
+		"	riso.belief_nets.Variable b { type discrete { \"0\" \"1\" \"2\" } parents { a } distribution riso.distributions.ConditionalDiscrete { dimensions-child { 3 } dimensions-parents { 2 } probabilities { 0.4 0.5 0.1  0.1 0.2 0.7 } } }\n"+
+		"	riso.belief_nets.Variable c { type discrete { \"0\" \"1\" } parents { a } distribution riso.distributions.ConditionalDiscrete { dimensions-child { 2 } dimensions-parents { 2 } probabilities { 0.8 0.2  0.3 0.7 } } }\n"+
+		"	riso.belief_nets.Variable d\n"+
+		"	{\n"+
+		"		type discrete { \"0\" \"1\" }\n"+
+		"		parents { b c }\n"+
+		"		distribution riso.distributions.ConditionalDiscrete\n"+
+		"		{\n"+
+		"			dimensions-child { 2 }\n"+
+		"			ndimensions-parents 2\n"+
+		"			dimensions-parents { 3 2 }\n"+
+		"			probabilities { 0.9 0.1  0.5 0.5  0.4 0.6  0.05 0.95  0.7 0.3  0.2 0.8 }\n"+
+		"		}\n"+
+		"	}\n"+
+		"	riso.belief_nets.Variable e { type discrete { \"0\" \"1\" } parents { d } distribution riso.distributions.ConditionalDiscrete { dimensions-child { 2 } dimensions-parents { 2 } probabilities { 0.6 0.4  0.1 0.9 } } }\n"+
+		"	riso.belief_nets.Variable f { type discrete { \"0\" \"1\" \"2\" } parents { c } distribution riso.distributions.ConditionalDiscrete { dimensions-child { 3 } dimensions-parents { 2 } probabilities { 0.2 0.3 0.5  0.6 0.3 0.1 } } }\n"+
+		"	riso.belief_nets.Variable g\n"+
+		"	{\n"+
+		"		type discrete { \"0\" \"1\" }\n"+
+		"		parents { e f }\n"+
+		"		distribution riso.distributions.ConditionalDiscrete\n"+
+		"		{\n"+
+		"			dimensions-child { 2 }\n"+
+		"			ndimensions-parents 2\n"+
+		"			dimensions-parents { 2 3 }\n"+
+		"			probabilities { 0.3 0.7  0.6 0.4  0.9 0.1  0.25 0.75  0.5 0.5  0.85 0.15 }\n"+
+		"		}\n"+
+		"	}\n"+
+		"}\n";
+
+	public static double TOLERANCE = 1e-10;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			BeliefNetworkContext bnc = new BeliefNetworkContext( null );
+			PiHelperLoader.bnc = bnc;
+
+			// Network with loops: compare with brute force only.
+
+			JunctionTreeBeliefNetwork loopy = (JunctionTreeBeliefNetwork) bnc.parse_network( LOOPY );
+			check_compiled( "loopy", loopy.compile() );
+			BruteForcePosteriors loopy_brute_force = new BruteForcePosteriors( loopy );
+
+			int[] evidence = new int[7];
+			java.util.Arrays.fill( evidence, -1 );
+			check( "loopy, no evidence", loopy_brute_force.max_difference( loopy, loopy_brute_force.posteriors( evidence ) ) );
+
+			assign( loopy, loopy_brute_force, evidence, "g", 1 );
+			check( "loopy, g observed", loopy_brute_force.max_difference( loopy, loopy_brute_force.posteriors( evidence ) ) );
+
+			assign( loopy, loopy_brute_force, evidence, "b", 2 );
+			assign( loopy, loopy_brute_force, evidence, "f", 0 );
+			check( "loopy, g, b, f observed", loopy_brute_force.max_difference( loopy, loopy_brute_force.posteriors( evidence ) ) );
+
+			loopy.clear_posterior( (AbstractVariable) loopy.name_lookup( "g" ) );
+			evidence[ loopy_brute_force.index_of( "g" ) ] = -1;
+			check( "loopy, g cleared", loopy_brute_force.max_difference( loopy, loopy_brute_force.posteriors( evidence ) ) );
+
+			// Singly connected network: compare with brute force and with message passing.
+
+			String tree_description = EvidenceUpdateTest.POLYTREE.replaceFirst( "riso.belief_nets.BeliefNetwork polytree", "riso.belief_nets.JunctionTreeBeliefNetwork tree" );
+			JunctionTreeBeliefNetwork tree = (JunctionTreeBeliefNetwork) bnc.parse_network( tree_description );
+			BeliefNetwork polytree = (BeliefNetwork) bnc.parse_network( EvidenceUpdateTest.POLYTREE );
+			check_compiled( "tree", tree.compile() );
+			BruteForcePosteriors tree_brute_force = new BruteForcePosteriors( tree );
+
+			evidence = new int[5];
+			java.util.Arrays.fill( evidence, -1 );
+			compare( "tree, no evidence", tree, polytree, tree_brute_force, evidence );
+
+			assign( tree, tree_brute_force, evidence, "e", 2 );
+			polytree.assign_evidence( (AbstractVariable) polytree.name_lookup( "e" ), 2 );
+			compare( "tree, e observed", tree, polytree, tree_brute_force, evidence );
+
+			assign( tree, tree_brute_force, evidence, "a", 1 );
+			polytree.assign_evidence( (AbstractVariable) polytree.name_lookup( "a" ), 1 );
+			compare( "tree, e, a observed", tree, polytree, tree_brute_force, evidence );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
+	/** Assign evidence to the variable named <tt>name</tt> in <tt>bn</tt>, and record it in <tt>evidence</tt>.
+	  */
+	static void assign( AbstractBeliefNetwork bn, BruteForcePosteriors brute_force, int[] evidence, String name, int value ) throws Exception
+	{
+		bn.assign_evidence( (AbstractVariable) bn.name_lookup( name ), value );
+		evidence[ brute_force.index_of( name ) ] = value;
+	}
+
+	/** Compare the posteriors of <tt>tree</tt> with brute force, and with the posteriors of <tt>polytree</tt>.
+	  */
+	static void compare( String what, JunctionTreeBeliefNetwork tree, BeliefNetwork polytree, BruteForcePosteriors brute_force, int[] evidence ) throws Exception
+	{
+		check( what+", brute force", brute_force.max_difference( tree, brute_force.posteriors( evidence ) ) );
+
+		double maxdiff = 0;
+		double[] x = new double[1];
+		AbstractVariable[] variables = tree.get_variables();
+
+		for ( int i = 0; i < variables.length; i++ )
+		{
+			String name = variables[i].get_name();
+			Distribution p_tree = tree.get_posterior( (AbstractVariable) tree.name_lookup( name ) );
+			Distribution p_polytree = polytree.get_posterior( (AbstractVariable) polytree.name_lookup( name ) );
+
+			for ( int k = 0; k < brute_force.nstates[ brute_force.index_of( name ) ]; k++ )
+			{
+				x[0] = k;
+				maxdiff = Math.max( maxdiff, Math.abs( p_tree.p(x) - p_polytree.p(x) ) );
+			}
+		}
+
+		System.err.println( what+", message passing: max difference: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+	}
+
+	static void check( String what, double maxdiff )
+	{
+		System.err.println( what+": max difference from brute force: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+	}
+
+	static void check_compiled( String what, boolean compiled )
+	{
+		System.err.println( what+": compiled into junction tree: "+compiled+"; "+(compiled ? "OK" : "FAILED") );
+	}
+}
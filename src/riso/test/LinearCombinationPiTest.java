@@ -0,0 +1,83 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import riso.distributions.*;
+import riso.distributions.computes_pi.*;
+
+/** Compute the pi message for <tt>y = a x + offset</tt>, where <tt>x</tt> has an
+  * exponential distribution, by <tt>LinearCombination_AbstractDistribution</tt>, and
+  * compare its cumulative distribution function with the exact one. Checks a single
+  * parent with no offset (nothing to convolve), with an offset, and with a negative
+  * coefficient, and checks that the result is of a public class in each case.
+  * Prints "OK" or "FAILED" for each check.
+  */
+public class LinearCombinationPiTest
+{
+	/** The exponential density jumps at zero, which a spline on a grid can't follow exactly,
+	  * so the result is only accurate to within a fraction of a percent.
+	  */
+	public static double TOLERANCE = 1e-2;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			check( "y = 2 x", 2, 0 );
+			check( "y = 2 x + 3", 2, 3 );
+			check( "y = -x", -1, 0 );
+			check( "y = -0.5 x - 1", -0.5, -1 );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
+	static void check( String what, double a, double offset ) throws Exception
+	{
+		Exponential px = new Exponential( 1.5 );
+
+		LinearCombination py = new LinearCombination();
+		py.a = new double[] { a };
+		py.offset = offset;
+
+		Distribution pi = (new LinearCombination_AbstractDistribution()).compute_pi( py, new Distribution[] { px } );
+
+		boolean is_public = java.lang.reflect.Modifier.isPublic( pi.getClass().getModifiers() );
+		System.err.println( what+": pi message is a "+pi.getClass().getName()+"; "+(is_public ? "OK" : "FAILED") );
+
+		// Compare the cdf at the quartiles of y.
+
+		double maxdiff = 0;
+		double[] u = { 0.25, 0.5, 0.75 };
+		for ( int i = 0; i < u.length; i++ )
+		{
+			double x = -1.5*Math.log( 1-u[i] ), y = a*x + offset;
+			double F = (a > 0 ? u[i] : 1-u[i]);
+			maxdiff = Math.max( maxdiff, Math.abs( pi.cdf(y) - F ) );
+		}
+
+		System.err.println( what+": max difference of cdf from exact: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+
+		double mean = a*px.expected_value() + offset, diff = Math.abs( pi.expected_value() - mean );
+		System.err.println( what+": mean: "+pi.expected_value()+", exact: "+mean+"; "+(diff < TOLERANCE*Math.abs(a)*px.sqrt_variance() ? "OK" : "FAILED") );
+	}
+}
@@ -0,0 +1,166 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import riso.belief_nets.*;
+import riso.distributions.*;
+
+/** Run loopy belief propagation by <tt>LoopyBeliefNetwork.run_loopy_propagation</tt>
+  * with each schedule (flooding, also in parallel and damped; residual; tree).
+  * On the singly connected network of <tt>EvidenceUpdateTest</tt>, loopy propagation is
+  * exact, so the posteriors are compared with those of <tt>BeliefNetwork</tt>. On the network
+  * with loops of <tt>JunctionTreeTest</tt>, the posteriors are only approximate, so they are
+  * compared with brute-force enumeration to within <tt>LOOPY_TOLERANCE</tt>.
+  * Prints "OK" or "FAILED" for each check.
+  */
+public class LoopyPropagationTest
+{
+	public static double TOLERANCE = 1e-6;
+
+	/** Loopy propagation on the network with loops is expected to be accurate to about this much.
+	  */
+	public static double LOOPY_TOLERANCE = 0.01;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			BeliefNetworkContext bnc = new BeliefNetworkContext( null );
+			PiHelperLoader.bnc = bnc;
+
+			// Singly connected network: compare with message passing in BeliefNetwork.
+
+			BeliefNetwork polytree = (BeliefNetwork) bnc.parse_network( EvidenceUpdateTest.POLYTREE );
+			polytree.assign_evidence( (AbstractVariable) polytree.name_lookup( "d" ), 1 );
+			polytree.assign_evidence( (AbstractVariable) polytree.name_lookup( "b" ), 0 );
+			double[][] expected = posteriors( polytree );
+
+			String description = EvidenceUpdateTest.POLYTREE.replaceFirst( "riso.belief_nets.BeliefNetwork polytree", "riso.belief_nets.LoopyBeliefNetwork loopy_polytree" );
+
+			for ( int schedule = 0; schedule < 5; schedule++ )
+			{
+				LoopyBeliefNetwork bn = (LoopyBeliefNetwork) bnc.parse_network( description );
+				bn.assign_evidence( (AbstractVariable) bn.name_lookup( "d" ), 1 );
+				bn.assign_evidence( (AbstractVariable) bn.name_lookup( "b" ), 0 );
+				String what = "polytree, "+set_schedule( bn, schedule );
+
+				bn.run_loopy_propagation();
+				check_converged( what, bn );
+
+				double maxdiff = max_difference( posteriors( bn ), expected );
+				System.err.println( what+": max difference from BeliefNetwork: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+			}
+
+			// Network with loops: compare with brute force.
+
+			String loopy_description = JunctionTreeTest.LOOPY.replaceFirst( "riso.belief_nets.JunctionTreeBeliefNetwork loopy", "riso.belief_nets.LoopyBeliefNetwork loopy" );
+
+			for ( int schedule = 0; schedule < 5; schedule++ )
+			{
+				LoopyBeliefNetwork bn = (LoopyBeliefNetwork) bnc.parse_network( loopy_description );
+				bn.assign_evidence( (AbstractVariable) bn.name_lookup( "g" ), 1 );
+				bn.assign_evidence( (AbstractVariable) bn.name_lookup( "b" ), 2 );
+				String what = "loopy, "+set_schedule( bn, schedule );
+
+				BruteForcePosteriors brute_force = new BruteForcePosteriors( bn );
+				int[] evidence = new int[7];
+				java.util.Arrays.fill( evidence, -1 );
+				evidence[ brute_force.index_of( "g" ) ] = 1;
+				evidence[ brute_force.index_of( "b" ) ] = 2;
+
+				bn.run_loopy_propagation();
+				check_converged( what, bn );
+
+				double maxdiff = brute_force.max_difference( bn, brute_force.posteriors( evidence ) );
+				System.err.println( what+": max difference from brute force: "+maxdiff+"; "+(maxdiff < LOOPY_TOLERANCE ? "OK" : "FAILED") );
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
+	/** Set the schedule of <tt>bn</tt> to one of the five variations tried here, and return its name.
+	  */
+	static String set_schedule( LoopyBeliefNetwork bn, int i )
+	{
+		switch (i)
+		{
+		case 0:
+			bn.schedule = LoopyBeliefNetwork.SCHEDULE_FLOODING;
+			return "flooding";
+		case 1:
+			bn.schedule = LoopyBeliefNetwork.SCHEDULE_FLOODING;
+			bn.parallel_flooding = true;
+			return "parallel flooding";
+		case 2:
+			bn.schedule = LoopyBeliefNetwork.SCHEDULE_FLOODING;
+			bn.damping = 0.5;
+			bn.max_iterations = 200;
+			return "damped flooding";
+		case 3:
+			bn.schedule = LoopyBeliefNetwork.SCHEDULE_RESIDUAL;
+			return "residual";
+		default:
+			bn.schedule = LoopyBeliefNetwork.SCHEDULE_TREE;
+			return "tree";
+		}
+	}
+
+	static void check_converged( String what, LoopyBeliefNetwork bn )
+	{
+		System.err.println( what+": converged: "+bn.loopy_converged+" after "+bn.loopy_iterations+" iterations; "+(bn.loopy_converged ? "OK" : "FAILED") );
+	}
+
+	/** Return the posterior probabilities of the variables of <tt>bn</tt>, in order.
+	  */
+	static double[][] posteriors( AbstractBeliefNetwork bn ) throws Exception
+	{
+		AbstractVariable[] variables = bn.get_variables();
+		double[][] p = new double[ variables.length ][];
+		double[] x = new double[1];
+
+		for ( int i = 0; i < variables.length; i++ )
+		{
+			Distribution posterior = bn.get_posterior( variables[i] );
+			ConditionalDistribution d = variables[i].get_distribution();
+			int n = d instanceof Discrete ? ((Discrete)d).probabilities.length : ((ConditionalDiscrete)d).dimensions_child[0];
+
+			p[i] = new double[n];
+			for ( int k = 0; k < n; k++ )
+			{
+				x[0] = k;
+				p[i][k] = posterior.p(x);
+			}
+		}
+
+		return p;
+	}
+
+	static double max_difference( double[][] p, double[][] q )
+	{
+		double maxdiff = 0;
+		for ( int i = 0; i < p.length; i++ )
+			for ( int k = 0; k < p[i].length; k++ )
+				maxdiff = Math.max( maxdiff, Math.abs( p[i][k] - q[i][k] ) );
+		return maxdiff;
+	}
+}
@@ -0,0 +1,183 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import riso.distributions.*;
+import riso.distributions.computes_lambda_message.*;
+
+/** Compute lambda messages in closed form for <tt>LinearCombination</tt>,
+  * <tt>ConditionalGaussian</tt>, and <tt>Sum</tt> children with Gaussian mixture
+  * lambda and pi messages, and compare them with brute-force integration of
+  * <pre>
+  *   lambda(u[k]) = \int lambda_x(x) p(x | u) \prod_{l \neq k} pi_l(u[l]) dx du[l]
+  * </pre>
+  * by the trapezoidal rule over a wide interval, which is very accurate for Gaussian integrands.
+  * A lambda message is a likelihood, defined only up to a constant factor, so the
+  * ratio of the two is compared at several points. Prints "OK" or "FAILED" for each check.
+  */
+public class MixGaussiansLambdaMessageTest
+{
+	public static double TOLERANCE = 1e-6;
+
+	/** Number of points in each dimension of the brute-force integration.
+	  */
+	public static int NPOINTS = 801;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			Distribution lambda = mixture( new double[] { 0.6, 0.4 }, new double[] { 1, 4 }, new double[] { 0.8, 1.5 } );
+			Distribution pi0 = mixture( new double[] { 0.3, 0.7 }, new double[] { -2, 1 }, new double[] { 1, 0.5 } );
+			Distribution pi1 = mixture( new double[] { 0.5, 0.25, 0.25 }, new double[] { 0, 2, 5 }, new double[] { 0.7, 1, 0.6 } );
+
+			// x = 2 u0 - u1 + 1; message to u0.
+
+			final LinearCombination lc = new LinearCombination();
+			lc.a = new double[] { 2, -1 };
+			lc.offset = 1;
+
+			Distribution message = (new LinearCombination_MixGaussians_MixGaussians()).compute_lambda_message( lc, lambda, new Distribution[] { null, pi1 } );
+			Integrand lc_integrand = new Integrand() {
+				public double f( double u, double[] v, Distribution lambda ) throws Exception
+				{
+					return lambda.p( new double[] { lc.F( new double[] { u, v[0] } ) } );
+				}
+			};
+			check( "LinearCombination", message, lambda, lc_integrand, new Distribution[] { pi1 } );
+
+			// x = 1.5 u0 - 0.5 u1 + 0.3 + e, e ~ N(0, 0.49); message to u1.
+			// The child is integrated over too, so it is treated like another parent with a flat pi message.
+
+			final ConditionalGaussian cg = new ConditionalGaussian();
+			cg.a_mu_1c2 = new double[][] { { 1.5, -0.5 } };
+			cg.b_mu_1c2 = new double[] { 0.3 };
+			cg.Sigma_1c2 = new double[][] { { 0.49 } };
+
+			message = (new ConditionalGaussian_MixGaussians_MixGaussians()).compute_lambda_message( cg, lambda, new Distribution[] { pi0, null } );
+			Integrand cg_integrand = new Integrand() {
+				public double f( double u, double[] v, Distribution lambda ) throws Exception
+				{
+					return lambda.p( new double[] { v[1] } ) * cg.p( new double[] { v[1] }, new double[] { v[0], u } );
+				}
+			};
+			Distribution flat = new Gaussian( 2.5, 4 );
+			check( "ConditionalGaussian", message, lambda, cg_integrand, new Distribution[] { pi0, flat } );
+
+			// x = u0 + u1 + u2; message to u2.
+
+			message = (new Sum_MixGaussians_MixGaussians()).compute_lambda_message( new Sum(3), lambda, new Distribution[] { pi0, pi1, null } );
+			Integrand sum_integrand = new Integrand() {
+				public double f( double u, double[] v, Distribution lambda ) throws Exception
+				{
+					return lambda.p( new double[] { v[0] + v[1] + u } );
+				}
+			};
+			check( "Sum", message, lambda, sum_integrand, new Distribution[] { pi0, pi1 } );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
+	/** The integrand, apart from the pi messages, as a function of the variable <tt>u</tt>
+	  * to which the message is sent and the variables <tt>v</tt> which are integrated over.
+	  */
+	interface Integrand
+	{
+		double f( double u, double[] v, Distribution lambda ) throws Exception;
+	}
+
+	/** Compare <tt>message</tt> with the brute-force integral at points spread over
+	  * the bulk of the message. The variables of integration have the densities <tt>weights</tt>.
+	  * For the <tt>ConditionalGaussian</tt>, the child is one of the variables of integration;
+	  * its weight is flat over the region of interest, and its density is divided out again.
+	  */
+	static void check( String what, Distribution message, Distribution lambda, Integrand integrand, Distribution[] weights ) throws Exception
+	{
+		double m = message.expected_value(), s = message.sqrt_variance();
+		double[] u = { m-2*s, m-s, m-0.5*s, m, m+0.5*s, m+s, m+2*s };
+		double[] ratio = new double[ u.length ];
+
+		for ( int i = 0; i < u.length; i++ )
+			ratio[i] = message.p( new double[] { u[i] } ) / integrate( u[i], lambda, integrand, weights );
+
+		double maxdiff = 0;
+		for ( int i = 0; i < u.length; i++ )
+			maxdiff = Math.max( maxdiff, Math.abs( ratio[i]/ratio[ u.length/2 ] - 1 ) );
+
+		System.err.println( what+": message is a "+message.getClass().getName()+"; max relative difference from brute force: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+	}
+
+	/** Integrate <tt>integrand(u,v) weights[0](v[0]) ... weights[n-1](v[n-1])</tt> over <tt>v</tt>
+	  * by the trapezoidal rule. A weight which is a <tt>Gaussian</tt> (not a mixture) stands
+	  * for a flat weight over its effective support.
+	  */
+	static double integrate( double u, Distribution lambda, Integrand integrand, Distribution[] weights ) throws Exception
+	{
+		int n = weights.length;
+		double[][] grid = new double[n][ NPOINTS ], w = new double[n][ NPOINTS ];
+
+		for ( int j = 0; j < n; j++ )
+		{
+			double[] support = weights[j].effective_support( 1e-14 );
+			double dv = (support[1]-support[0])/(NPOINTS-1);
+			for ( int k = 0; k < NPOINTS; k++ )
+			{
+				grid[j][k] = support[0] + k*dv;
+				double trapezoid = (k == 0 || k == NPOINTS-1 ? dv/2 : dv);
+				w[j][k] = trapezoid * (weights[j] instanceof MixGaussians ? weights[j].p( new double[] { grid[j][k] } ) : 1);
+			}
+		}
+
+		double sum = 0;
+		int[] k = new int[n];
+		double[] v = new double[n];
+
+		while ( true )
+		{
+			double wk = 1;
+			for ( int j = 0; j < n; j++ )
+			{
+				v[j] = grid[j][ k[j] ];
+				wk *= w[j][ k[j] ];
+			}
+			sum += wk * integrand.f( u, v, lambda );
+
+			int j = 0;
+			while ( j < n && ++k[j] == NPOINTS ) k[j++] = 0;
+			if ( j == n ) break;
+		}
+
+		return sum;
+	}
+
+	static MixGaussians mixture( double[] alpha, double[] mu, double[] sigma )
+	{
+		MixGaussians mix = new MixGaussians( 1, alpha.length );
+		for ( int i = 0; i < alpha.length; i++ )
+		{
+			mix.mix_proportions[i] = alpha[i];
+			mix.components[i] = new Gaussian( mu[i], sigma[i] );
+		}
+		return mix;
+	}
+}
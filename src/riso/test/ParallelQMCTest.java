@@ -0,0 +1,102 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import java.io.*;
+import riso.distributions.*;
+import riso.distributions.computes_lambda_message.*;
+import riso.numerical.*;
+import riso.general.*;
+
+/** Time the evaluation of a lambda message through a linear Gaussian variable
+  * with several continuous parents, computed serially and in parallel by
+  * <tt>QuasiMC_IntegralHelper</tt>. Command line: number of parents (default 4),
+  * number of threads (default: number of processors), number of evaluations (default 10).
+  */
+public class ParallelQMCTest
+{
+	public static void main( String[] args )
+	{
+		try
+		{
+			int nparents = args.length > 0 ? Integer.parseInt( args[0] ) : 4;
+			int nthreads = args.length > 1 ? Integer.parseInt( args[1] ) : Runtime.getRuntime().availableProcessors();
+			int nu = args.length > 2 ? Integer.parseInt( args[2] ) : 10;
+
+			double[] u_values = new double[nu];
+			for ( int i = 0; i < nu; i++ ) u_values[i] = -3 + 6.0*i/(nu-1);
+
+			// Run once beforehand so that both timings are made with compiled code.
+			QuasiMC_IntegralHelper.PARALLELISM = 1;
+			evaluate_lambda( nparents, u_values );
+
+			long t0 = System.currentTimeMillis();
+			double[] serial = evaluate_lambda( nparents, u_values );
+			long t_serial = System.currentTimeMillis()-t0;
+
+			QuasiMC_IntegralHelper.PARALLELISM = nthreads;
+			t0 = System.currentTimeMillis();
+			double[] parallel = evaluate_lambda( nparents, u_values );
+			long t_parallel = System.currentTimeMillis()-t0;
+
+			double maxdiff = 0;
+			for ( int i = 0; i < nu; i++ )
+			{
+				System.out.println( "u: "+u_values[i]+"  serial: "+serial[i]+"  parallel: "+parallel[i] );
+				maxdiff = Math.max( maxdiff, Math.abs( serial[i]-parallel[i] ) );
+			}
+
+			System.out.println( nparents+" parents; serial: "+t_serial+" ms, "+nthreads+" threads: "+t_parallel+" ms; speedup: "+((double)t_serial/t_parallel)+"; max difference: "+maxdiff );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
+	/** Construct a lambda message to the first parent of a linear Gaussian variable
+	  * and evaluate it at each of <tt>u_values</tt>.
+	  */
+	static double[] evaluate_lambda( int nparents, double[] u_values ) throws Exception
+	{
+		String multiplier = "";
+		for ( int i = 0; i < nparents; i++ ) multiplier += (1.0/nparents)+" ";
+
+		String description = "{ conditional-mean-multiplier { "+multiplier+"} conditional-mean-offset { 0 } conditional-variance { 1 } }";
+		ConditionalGaussian pxuuu = new ConditionalGaussian();
+		pxuuu.pretty_input( new SmarterTokenizer( new StringReader( description ) ) );
+		pxuuu.check_matrices();
+
+		Distribution[] pi_messages = new Distribution[ nparents ];
+		for ( int i = 1; i < nparents; i++ ) pi_messages[i] = new Gaussian( i, 1 );
+		Distribution lambda = new Gaussian( 1, 2 );
+
+		Distribution lambda_message = new AbstractConditionalDistribution_AbstractDistribution_AbstractDistribution().compute_lambda_message( pxuuu, lambda, pi_messages );
+
+		double[] p = new double[ u_values.length ], u = new double[1];
+		for ( int i = 0; i < u_values.length; i++ )
+		{
+			u[0] = u_values[i];
+			p[i] = lambda_message.p(u);
+		}
+
+		return p;
+	}
+}
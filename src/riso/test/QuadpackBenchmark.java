@@ -0,0 +1,85 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import java.lang.management.*;
+import riso.numerical.*;
+
+/** Measure the speed and memory allocation of QUADPACK integrations, as carried
+  * out by <tt>QAGS_IntegralHelper</tt> and <tt>IntegralHelper1d</tt>: one <tt>qags</tt>
+  * context is reused for many integrations of a cheap integrand, so the cost of the
+  * integrator itself dominates. Command line: <tt>limit</tt> (default 30), number of
+  * integrations (default 200000), number of repetitions (default 5).
+  * Reports integrand evaluations per second and bytes allocated per integration;
+  * the allocation count is available only on JVMs which support
+  * <tt>com.sun.management.ThreadMXBean</tt>.
+  */
+public class QuadpackBenchmark
+{
+	static class Bump implements Callback_1d
+	{
+		double center;
+		public double f( double x ) { double z = x-center; return Math.exp( -z*z/2 ); }
+	}
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			int limit = args.length > 0 ? Integer.parseInt( args[0] ) : 30;
+			int nintegrations = args.length > 1 ? Integer.parseInt( args[1] ) : 200000;
+			int nrepetitions = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+			ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+			boolean count_bytes = tmx instanceof com.sun.management.ThreadMXBean;
+			long thread_id = Thread.currentThread().getId();
+
+			qags q = new qags();
+			Bump bump = new Bump();
+			double[] result = new double[1], abserr = new double[1];
+			int[] ier = new int[1];
+
+			for ( int r = 0; r < nrepetitions; r++ )
+			{
+				long neval = 0, bytes0 = count_bytes ? ((com.sun.management.ThreadMXBean)tmx).getThreadAllocatedBytes(thread_id) : 0;
+				long t0 = System.nanoTime();
+				double sum = 0;
+
+				for ( int i = 0; i < nintegrations; i++ )
+				{
+					bump.center = (i % 100)/100.0;
+					q.do_qags( bump, -6, 6, 1e-10, 1e-10, result, abserr, ier, limit );
+					sum += result[0];
+					neval += q.neval[0];
+				}
+
+				long t1 = System.nanoTime();
+				long bytes1 = count_bytes ? ((com.sun.management.ThreadMXBean)tmx).getThreadAllocatedBytes(thread_id) : 0;
+
+				System.out.println( "repetition "+r+": "+(neval*1e9/(t1-t0))+" evaluations/s, "+((double)(t1-t0)/nintegrations)+" ns/integration, "
+					+(count_bytes ? ((double)(bytes1-bytes0)/nintegrations)+" bytes/integration" : "allocation not measured")+"; mean result "+(sum/nintegrations) );
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+}
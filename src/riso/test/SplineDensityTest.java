@@ -0,0 +1,82 @@
+/* RISO: an implementation of distributed belief networks.
+ * Copyright (C) 1999, Robert Dodier.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA, 02111-1307, USA,
+ * or visit the GNU web site, www.gnu.org.
+ */
+package riso.test;
+import riso.distributions.*;
+
+/** Construct a <tt>SplineDensity</tt> for a skewed mixture of two Gaussians,
+  * and check that <tt>cdf(inverse_cdf(u))</tt> returns <tt>u</tt>, that the cdf is close
+  * to the exact one, and that the mean of a sample drawn by <tt>random</tt> is
+  * close to <tt>expected_value</tt>. Prints "OK" or "FAILED" for each check.
+  */
+public class SplineDensityTest
+{
+	public static double TOLERANCE = 1e-10;
+
+	/** The spline interpolates the density on a grid, so its cdf is only accurate to about this much.
+	  */
+	public static double CDF_TOLERANCE = 1e-4;
+
+	public static int NSAMPLES = 100000;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			MixGaussians mix = MixGaussiansLambdaMessageTest.mixture( new double[] { 0.7, 0.3 }, new double[] { 0, 3 }, new double[] { 1, 2 } );
+
+			int n = 301;
+			double[] x = new double[n], px = new double[n];
+			for ( int i = 0; i < n; i++ )
+			{
+				x[i] = -10 + 25.0*i/(n-1);
+				px[i] = mix.p( new double[] { x[i] } );
+			}
+
+			SplineDensity p = new SplineDensity( x, px );
+
+			double[] u = { 1e-4, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1-1e-4 };
+			double maxdiff = 0, maxdiff_exact = 0;
+
+			for ( int i = 0; i < u.length; i++ )
+			{
+				double xi = p.inverse_cdf( u[i] );
+				maxdiff = Math.max( maxdiff, Math.abs( p.cdf(xi) - u[i] ) );
+				maxdiff_exact = Math.max( maxdiff_exact, Math.abs( p.cdf(xi) - mix.cdf(xi) ) );
+			}
+
+			System.err.println( "cdf(inverse_cdf(u)): max difference from u: "+maxdiff+"; "+(maxdiff < TOLERANCE ? "OK" : "FAILED") );
+			System.err.println( "cdf: max difference from exact: "+maxdiff_exact+"; "+(maxdiff_exact < CDF_TOLERANCE ? "OK" : "FAILED") );
+
+			// The sample mean is within 5 standard errors of the mean, except with probability about 6e-7.
+
+			double sum = 0;
+			for ( int i = 0; i < NSAMPLES; i++ ) sum += p.random()[0];
+
+			double mean = sum/NSAMPLES, stderr = p.sqrt_variance()/Math.sqrt( NSAMPLES );
+			double diff = Math.abs( mean - p.expected_value() );
+			System.err.println( "random: sample mean: "+mean+", expected value: "+p.expected_value()+"; "+(diff < 5*stderr ? "OK" : "FAILED") );
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+}